@@ -0,0 +1,432 @@
+package com.huaxia.xlib.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制对象编解码器。
+ * <p>基本类型及其包装类、String、基本类型数组和常用集合直接写成带标签的二进制，整数用
+ * ZigZag 变长编码；注册过 {@link CacheCodec} 的类交给对应的编解码器；其他对象退回
+ * Java 序列化。解码时也能读取 {@link ObjectOutputStream} 写出的旧数据。</p>
+ *
+ * @author xzy
+ */
+final class BinaryCodec implements CacheCodec<Object> {
+
+    private static final byte MAGIC = (byte) 0xB1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_BYTE = 3;
+    private static final byte TAG_SHORT = 4;
+    private static final byte TAG_CHAR = 5;
+    private static final byte TAG_INT = 6;
+    private static final byte TAG_LONG = 7;
+    private static final byte TAG_FLOAT = 8;
+    private static final byte TAG_DOUBLE = 9;
+    private static final byte TAG_STRING = 10;
+    private static final byte TAG_BYTES = 11;
+    private static final byte TAG_INTS = 12;
+    private static final byte TAG_LONGS = 13;
+    private static final byte TAG_ARRAY_LIST = 14;
+    private static final byte TAG_HASH_MAP = 15;
+    private static final byte TAG_LINKED_HASH_MAP = 16;
+    private static final byte TAG_HASH_SET = 17;
+    private static final byte TAG_LINKED_HASH_SET = 18;
+    private static final byte TAG_CUSTOM = 19;
+    private static final byte TAG_JAVA = 20;
+
+    private final Map<String, CacheCodec<?>> mCodecs = new ConcurrentHashMap<>();
+
+    <T> void register(@NonNull final Class<T> clazz, @NonNull final CacheCodec<T> codec) {
+        mCodecs.put(clazz.getName(), codec);
+    }
+
+    @Override
+    public byte[] encode(@NonNull final Object value) {
+        Output out = new Output();
+        out.writeByte(MAGIC);
+        try {
+            write(out, value);
+        } catch (IOException e) {
+            Log.e("CacheDiskUtils", "can't encode " + value.getClass().getName(), e);
+            return null;
+        } catch (RuntimeException e) {
+            // a collection modified while written
+            return writeJava(value);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the whole value written by {@link ObjectOutputStream}, which {@link #decode}
+     * reads as well, or null if it isn't serializable.
+     */
+    private static byte[] writeJava(final Object value) {
+        if (!(value instanceof Serializable)) return null;
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(value);
+            oos.close();
+            return baos.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            Log.e("CacheDiskUtils", "can't encode " + value.getClass().getName(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public Object decode(@NonNull final byte[] bytes) {
+        if (bytes.length >= 2 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+            return readJava(bytes, 0, bytes.length);
+        }
+        if (bytes.length < 2 || bytes[0] != MAGIC) return null;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            in.get();
+            return read(in);
+        } catch (IOException | RuntimeException e) {
+            // BufferUnderflowException, ClassCastException of a codec and so on
+            Log.e("CacheDiskUtils", "can't decode object", e);
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // write
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void write(final Output out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeFixed(Double.doubleToRawLongBits((Double) value), 8);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFixed(Float.floatToRawIntBits((Float) value), 4);
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeVarLong((Short) value);
+        } else if (value instanceof Character) {
+            out.writeByte(TAG_CHAR);
+            out.writeVarLong((Character) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(TAG_BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof int[]) {
+            final int[] ints = (int[]) value;
+            out.writeByte(TAG_INTS);
+            out.writeVarLong(ints.length);
+            for (int i : ints) {
+                out.writeVarLong(i);
+            }
+        } else if (value instanceof long[]) {
+            final long[] longs = (long[]) value;
+            out.writeByte(TAG_LONGS);
+            out.writeVarLong(longs.length);
+            for (long l : longs) {
+                out.writeVarLong(l);
+            }
+        } else if (value.getClass() == ArrayList.class) {
+            writeCollection(out, TAG_ARRAY_LIST, (Collection<?>) value);
+        } else if (value.getClass() == HashSet.class) {
+            writeCollection(out, TAG_HASH_SET, (Collection<?>) value);
+        } else if (value.getClass() == LinkedHashSet.class) {
+            writeCollection(out, TAG_LINKED_HASH_SET, (Collection<?>) value);
+        } else if (value.getClass() == HashMap.class) {
+            writeMap(out, TAG_HASH_MAP, (Map<?, ?>) value);
+        } else if (value.getClass() == LinkedHashMap.class) {
+            writeMap(out, TAG_LINKED_HASH_MAP, (Map<?, ?>) value);
+        } else {
+            writeOther(out, value);
+        }
+    }
+
+    private void writeCollection(final Output out,
+                                 final byte tag,
+                                 final Collection<?> collection) throws IOException {
+        out.enter(collection);
+        out.writeByte(tag);
+        out.writeVarLong(collection.size());
+        for (Object element : collection) {
+            write(out, element);
+        }
+        out.exit(collection);
+    }
+
+    private void writeMap(final Output out, final byte tag, final Map<?, ?> map)
+            throws IOException {
+        out.enter(map);
+        out.writeByte(tag);
+        out.writeVarLong(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write(out, entry.getKey());
+            write(out, entry.getValue());
+        }
+        out.exit(map);
+    }
+
+    private void writeOther(final Output out, final Object value) throws IOException {
+        final String name = value.getClass().getName();
+        //noinspection unchecked
+        final CacheCodec<Object> codec = (CacheCodec<Object>) mCodecs.get(name);
+        if (codec != null) {
+            final byte[] bytes = codec.encode(value);
+            if (bytes == null) throw new IOException("codec of " + name + " returned null");
+            out.writeByte(TAG_CUSTOM);
+            out.writeBytes(name.getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(bytes);
+            return;
+        }
+        if (!(value instanceof Serializable)) {
+            throw new IOException(name + " is neither registered nor serializable");
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(value);
+        oos.close();
+        out.writeByte(TAG_JAVA);
+        out.writeBytes(baos.toByteArray());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // read
+    ///////////////////////////////////////////////////////////////////////////
+
+    private Object read(final ByteBuffer in) throws IOException {
+        final byte tag = in.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_BYTE:
+                return in.get();
+            case TAG_SHORT:
+                return (short) readVarLong(in);
+            case TAG_CHAR:
+                return (char) readVarLong(in);
+            case TAG_INT:
+                return (int) readVarLong(in);
+            case TAG_LONG:
+                return readVarLong(in);
+            case TAG_FLOAT:
+                return in.getFloat();
+            case TAG_DOUBLE:
+                return in.getDouble();
+            case TAG_STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case TAG_BYTES:
+                return readBytes(in);
+            case TAG_INTS: {
+                final int[] ints = new int[readLength(in)];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = (int) readVarLong(in);
+                }
+                return ints;
+            }
+            case TAG_LONGS: {
+                final long[] longs = new long[readLength(in)];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = readVarLong(in);
+                }
+                return longs;
+            }
+            case TAG_ARRAY_LIST:
+                return readCollection(in, new ArrayList<>());
+            case TAG_HASH_SET:
+                return readCollection(in, new HashSet<>());
+            case TAG_LINKED_HASH_SET:
+                return readCollection(in, new LinkedHashSet<>());
+            case TAG_HASH_MAP:
+                return readMap(in, new HashMap<>());
+            case TAG_LINKED_HASH_MAP:
+                return readMap(in, new LinkedHashMap<>());
+            case TAG_CUSTOM: {
+                final String name = new String(readBytes(in), StandardCharsets.UTF_8);
+                final CacheCodec<?> codec = mCodecs.get(name);
+                if (codec == null) throw new IOException("no codec of " + name);
+                final Object value = codec.decode(readBytes(in));
+                if (value == null) throw new IOException("codec of " + name + " returned null");
+                return value;
+            }
+            case TAG_JAVA: {
+                final int length = readLength(in);
+                final Object value = readJava(in.array(), in.position(), length);
+                if (value == null) throw new IOException("can't read serializable");
+                in.position(in.position() + length);
+                return value;
+            }
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private Collection<Object> readCollection(final ByteBuffer in,
+                                              final Collection<Object> collection)
+            throws IOException {
+        final int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            collection.add(read(in));
+        }
+        return collection;
+    }
+
+    private Map<Object, Object> readMap(final ByteBuffer in, final Map<Object, Object> map)
+            throws IOException {
+        final int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            map.put(read(in), read(in));
+        }
+        return map;
+    }
+
+    private static byte[] readBytes(final ByteBuffer in) throws IOException {
+        final byte[] bytes = new byte[readLength(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read a length, which can't be more than the remaining bytes for any of the tags.
+     */
+    private static int readLength(final ByteBuffer in) throws IOException {
+        final long length = readVarLong(in);
+        if (length < 0 || length > in.remaining()) throw new IOException("bad length " + length);
+        return (int) length;
+    }
+
+    private static long readVarLong(final ByteBuffer in) {
+        long raw = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.get();
+            raw |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return (raw >>> 1) ^ -(raw & 1);
+        }
+        throw new BufferUnderflowException();
+    }
+
+    private static Object readJava(final byte[] bytes, final int offset, final int length) {
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length));
+            return ois.readObject();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            try {
+                if (ois != null) {
+                    ois.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A growable byte array without the synchronization of {@link ByteArrayOutputStream}.
+     */
+    private static final class Output {
+        private byte[] buf = new byte[64];
+        private int count;
+        /**
+         * The containers being written, by identity, a container met again inside itself is
+         * a cycle the format can't express.
+         */
+        private final Set<Object> containers =
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        void enter(final Object container) throws IOException {
+            if (!containers.add(container)) {
+                throw new IOException(container.getClass().getName() + " contains itself");
+            }
+        }
+
+        void exit(final Object container) {
+            containers.remove(container);
+        }
+
+        void writeByte(final int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        void writeFixed(final long value, final int size) {
+            ensure(size);
+            for (int i = size - 1; i >= 0; i--) {
+                buf[count++] = (byte) (value >>> (i << 3));
+            }
+        }
+
+        void writeVarLong(final long value) {
+            ensure(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buf[count++] = (byte) zigzag;
+        }
+
+        void writeBytes(final byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensure(final int size) {
+            if (count + size > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + size));
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.huaxia.xlib.cache;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 缓存值和字节之间的编解码器。
+ * 通过 {@link CacheCodecs} 为每个 {@link CacheDiskUtils} 实例选择。
+ *
+ * @param <T> The value type.
+ * @author xzy
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * Return the bytes of value.
+     *
+     * @param value The value.
+     * @return the bytes of value, null if it can't be encoded
+     */
+    byte[] encode(@NonNull T value);
+
+    /**
+     * Return the value of bytes.
+     *
+     * @param bytes The bytes.
+     * @return the value of bytes, null if they can't be decoded
+     */
+    T decode(@NonNull byte[] bytes);
+}
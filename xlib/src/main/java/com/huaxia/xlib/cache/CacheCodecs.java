@@ -0,0 +1,449 @@
+package com.huaxia.xlib.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link CacheDiskUtils} 的编解码配置。
+ * <p>为 Bitmap（Drawable 同样）和 Serializable 值选择编解码器，并可对超过阈值的数据做
+ * Deflate 压缩。字符串和 JSON 固定使用 UTF-8。</p>
+ * <p>解码不依赖当前配置：Bitmap 按数据内容识别格式，压缩记录在缓存头里，所以修改配置后
+ * 已有的缓存仍然可读。</p>
+ *
+ * @author xzy
+ */
+public final class CacheCodecs {
+
+    private static final byte[] RAW_MAGIC = {'R', 'P', 'X', '1'};
+    private static final Bitmap.Config[] RAW_CONFIGS = {
+            Bitmap.Config.ALPHA_8,
+            Bitmap.Config.RGB_565,
+            Bitmap.Config.ARGB_4444,
+            Bitmap.Config.ARGB_8888,
+            Bitmap.Config.RGBA_F16
+    };
+
+    private final BinaryCodec mBinaryCodec = new BinaryCodec();
+    private CacheCodec<Bitmap> mBitmapCodec = png();
+    private CacheCodec<Object> mObjectCodec = javaSerialization();
+    private int mCompressThreshold = -1;
+    private int mCompressLevel = Deflater.BEST_SPEED;
+
+    /**
+     * PNG bitmaps, Java serialization for serializable values and no compression.
+     */
+    public CacheCodecs() {
+    }
+
+    /**
+     * Set the codec of bitmaps and drawables.
+     *
+     * @param codec The codec, such as {@link #png()}, {@link #webp(int)} or
+     *              {@link #rawPixels()}.
+     * @return the codecs
+     */
+    public CacheCodecs setBitmapCodec(@NonNull final CacheCodec<Bitmap> codec) {
+        mBitmapCodec = codec;
+        return this;
+    }
+
+    /**
+     * Set the codec of serializable values.
+     *
+     * @param codec The codec, {@link #javaSerialization()} for the stream of
+     *              {@link ObjectOutputStream}.
+     * @return the codecs
+     */
+    public CacheCodecs setSerializableCodec(@NonNull final CacheCodec<Object> codec) {
+        mObjectCodec = codec;
+        return this;
+    }
+
+    /**
+     * Use the binary codec for serializable values, with the codecs of
+     * {@link #register(Class, CacheCodec)}.
+     * <p>Primitives, strings, primitive arrays and the common collections are written
+     * compactly, anything else by Java serialization. Unlike {@link #javaSerialization()} the
+     * collections are written as trees, so values referenced twice are read back as two
+     * copies. Entries of either codec stay readable after switching, except the values
+     * of registered codecs.</p>
+     *
+     * @return the codecs
+     */
+    public CacheCodecs useBinaryCodec() {
+        mObjectCodec = mBinaryCodec;
+        return this;
+    }
+
+    /**
+     * Register the codec of a class for the binary codec of {@link #useBinaryCodec()}, the
+     * class doesn't have to implement {@link java.io.Serializable}.
+     *
+     * @param clazz The class, subclasses are not matched.
+     * @param codec The codec of class.
+     * @param <T>   The value type.
+     * @return the codecs
+     */
+    public <T> CacheCodecs register(@NonNull final Class<T> clazz,
+                                    @NonNull final CacheCodec<T> codec) {
+        mBinaryCodec.register(clazz, codec);
+        return this;
+    }
+
+    /**
+     * Deflate the values of at least {@code threshold} bytes, kept only if they get
+     * smaller.
+     *
+     * @param threshold The threshold in bytes, negative to never compress.
+     * @return the codecs
+     */
+    public CacheCodecs setCompressThreshold(final int threshold) {
+        mCompressThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Set the level of compression.
+     *
+     * @param level The level from {@link Deflater#BEST_SPEED} to
+     *              {@link Deflater#BEST_COMPRESSION}.
+     * @return the codecs
+     */
+    public CacheCodecs setCompressLevel(final int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level out of range: " + level);
+        }
+        mCompressLevel = level;
+        return this;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // built-in codecs
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the lossless PNG codec of bitmaps.
+     *
+     * @return the lossless PNG codec of bitmaps
+     */
+    public static CacheCodec<Bitmap> png() {
+        return new CompressCodec(Bitmap.CompressFormat.PNG, 100);
+    }
+
+    /**
+     * Return the WebP codec of bitmaps, smaller and faster to write than PNG.
+     *
+     * @param quality The quality from 0 to 100, 100 for lossless.
+     * @return the WebP codec of bitmaps
+     */
+    @SuppressWarnings("deprecation")
+    public static CacheCodec<Bitmap> webp(final int quality) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            // WEBP at quality 100 is lossless before R
+            return new CompressCodec(Bitmap.CompressFormat.WEBP, quality);
+        }
+        return new CompressCodec(quality == 100
+                ? Bitmap.CompressFormat.WEBP_LOSSLESS
+                : Bitmap.CompressFormat.WEBP_LOSSY, quality);
+    }
+
+    /**
+     * Return the codec storing the pixels of bitmaps as they are.
+     * <p>No compression work at all, use with {@link #setCompressThreshold(int)} if the
+     * size matters. Hardware bitmaps fall back to PNG.</p>
+     *
+     * @return the codec storing the pixels of bitmaps as they are
+     */
+    public static CacheCodec<Bitmap> rawPixels() {
+        return new RawPixelsCodec();
+    }
+
+    /**
+     * Return the codec of {@link ObjectOutputStream}, the default serializable codec.
+     *
+     * @return the codec of {@link ObjectOutputStream}
+     */
+    public static CacheCodec<Object> javaSerialization() {
+        return new JavaCodec();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // used by CacheDiskUtils
+    ///////////////////////////////////////////////////////////////////////////
+
+    static byte[] string2Bytes(final String string) {
+        if (string == null) return null;
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String bytes2String(final byte[] bytes) {
+        if (bytes == null) return null;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte[] jsonObject2Bytes(final JSONObject jsonObject) {
+        if (jsonObject == null) return null;
+        return string2Bytes(jsonObject.toString());
+    }
+
+    static JSONObject bytes2JSONObject(final byte[] bytes) {
+        if (bytes == null) return null;
+        try {
+            return new JSONObject(bytes2String(bytes));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static byte[] jsonArray2Bytes(final JSONArray jsonArray) {
+        if (jsonArray == null) return null;
+        return string2Bytes(jsonArray.toString());
+    }
+
+    static JSONArray bytes2JSONArray(final byte[] bytes) {
+        if (bytes == null) return null;
+        try {
+            return new JSONArray(bytes2String(bytes));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    byte[] bitmap2Bytes(final Bitmap bitmap) {
+        if (bitmap == null) return null;
+        return mBitmapCodec.encode(bitmap);
+    }
+
+    Bitmap bytes2Bitmap(final byte[] bytes) {
+        if (bytes == null || bytes.length <= 0) return null;
+        return mBitmapCodec.decode(bytes);
+    }
+
+    /**
+     * Decode by the content rather than the codec set, so a changed built-in codec still
+     * reads the cache written before.
+     */
+    private static Bitmap decodeBitmap(final byte[] bytes) {
+        if (bytes == null || bytes.length <= 0) return null;
+        if (RawPixelsCodec.matches(bytes)) return RawPixelsCodec.decodeRaw(bytes);
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+
+    byte[] object2Bytes(final Object object) {
+        if (object == null) return null;
+        return mObjectCodec.encode(object);
+    }
+
+    Object bytes2Object(final byte[] bytes) {
+        if (bytes == null) return null;
+        return mObjectCodec.decode(bytes);
+    }
+
+    /**
+     * Return the deflated data, or null if the data is under the threshold or doesn't get
+     * smaller.
+     * <p>The deflated data starts with the length of data, so it inflates into an exactly
+     * sized array.</p>
+     */
+    byte[] deflate(final byte[] data) {
+        // tiny data never gets smaller than its length prefix
+        if (mCompressThreshold < 0 || data.length < Math.max(mCompressThreshold, 16)) {
+            return null;
+        }
+        final Deflater deflater = new Deflater(mCompressLevel, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final byte[] out = new byte[data.length];
+            ByteBuffer.wrap(out).putInt(data.length);
+            int length = 4;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (!deflater.finished()) return null;
+            final byte[] deflated = new byte[length];
+            System.arraycopy(out, 0, deflated, 0, length);
+            return deflated;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Return the inflated data, or null if the data is corrupt.
+     */
+    static ByteBuffer inflate(final ByteBuffer deflated) {
+        if (deflated.remaining() < 4) return null;
+        final ByteBuffer in = deflated.duplicate();
+        final int length = in.getInt();
+        if (length < 0) return null;
+        final byte[] input = new byte[in.remaining()];
+        in.get(input);
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            final byte[] out = new byte[length];
+            int n = 0;
+            while (n < length) {
+                final int remaining = inflater.getRemaining();
+                final int read = inflater.inflate(out, n, length - n);
+                // neither output nor input moved: truncated, finished early or stuck
+                if (read == 0 && (inflater.finished() || inflater.needsInput()
+                        || inflater.needsDictionary() || inflater.getRemaining() == remaining)) {
+                    return null;
+                }
+                n += read;
+            }
+            return ByteBuffer.wrap(out).asReadOnlyBuffer();
+        } catch (DataFormatException e) {
+            Log.e("CacheDiskUtils", "can't inflate cache", e);
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class CompressCodec implements CacheCodec<Bitmap> {
+        private final Bitmap.CompressFormat format;
+        private final int quality;
+
+        CompressCodec(Bitmap.CompressFormat format, int quality) {
+            this.format = format;
+            this.quality = quality;
+        }
+
+        @Override
+        public byte[] encode(@NonNull Bitmap value) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            if (!value.compress(format, quality, baos)) return null;
+            return baos.toByteArray();
+        }
+
+        @Override
+        public Bitmap decode(@NonNull byte[] bytes) {
+            return decodeBitmap(bytes);
+        }
+    }
+
+    /**
+     * magic(4) width(4) height(4) config(1) pixels
+     */
+    private static final class RawPixelsCodec implements CacheCodec<Bitmap> {
+        private static final int HEADER_LEN = 13;
+
+        @Override
+        public byte[] encode(@NonNull Bitmap value) {
+            int config = -1;
+            for (int i = 0; i < RAW_CONFIGS.length; i++) {
+                if (RAW_CONFIGS[i] == value.getConfig()) config = i;
+            }
+            if (config < 0) return png().encode(value);
+            final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LEN + value.getByteCount());
+            buffer.put(RAW_MAGIC)
+                    .putInt(value.getWidth())
+                    .putInt(value.getHeight())
+                    .put((byte) config);
+            value.copyPixelsToBuffer(buffer);
+            return buffer.array();
+        }
+
+        @Override
+        public Bitmap decode(@NonNull byte[] bytes) {
+            return decodeBitmap(bytes);
+        }
+
+        static boolean matches(final byte[] bytes) {
+            if (bytes.length < HEADER_LEN) return false;
+            for (int i = 0; i < RAW_MAGIC.length; i++) {
+                if (bytes[i] != RAW_MAGIC[i]) return false;
+            }
+            return true;
+        }
+
+        static Bitmap decodeRaw(final byte[] bytes) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.position(RAW_MAGIC.length);
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            final int config = buffer.get();
+            if (width <= 0 || height <= 0 || config < 0 || config >= RAW_CONFIGS.length) {
+                return null;
+            }
+            final Bitmap bitmap = Bitmap.createBitmap(width, height, RAW_CONFIGS[config]);
+            if (bitmap.getByteCount() != buffer.remaining()) return null;
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        }
+    }
+
+    private static final class JavaCodec implements CacheCodec<Object> {
+
+        /**
+         * Reads the data written by the binary codec, shared since decoding keeps no state.
+         */
+        private static final BinaryCodec BINARY_FALLBACK = new BinaryCodec();
+
+        @Override
+        public byte[] encode(@NonNull Object value) {
+            ObjectOutputStream oos = null;
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                oos = new ObjectOutputStream(baos);
+                oos.writeObject(value);
+                oos.flush();
+                return baos.toByteArray();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                try {
+                    if (oos != null) {
+                        oos.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public Object decode(@NonNull byte[] bytes) {
+            ObjectInputStream ois = null;
+            try {
+                ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                return ois.readObject();
+            } catch (Exception e) {
+                // may be the format of the binary codec, which reads both
+                return BINARY_FALLBACK.decode(bytes);
+            } finally {
+                try {
+                    if (ois != null) {
+                        ois.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
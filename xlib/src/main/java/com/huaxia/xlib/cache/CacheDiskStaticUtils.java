@@ -10,6 +10,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * 磁盘缓存相关。
@@ -74,6 +75,16 @@ public final class CacheDiskStaticUtils {
         return getBytes(key, defaultValue, getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Return the bytes in cache as a read-only buffer, without copying them.
+     *
+     * @param key The key of cache.
+     * @return the buffer if cache exists or null otherwise
+     */
+    public static ByteBuffer getByteBuffer(@NonNull final String key) {
+        return getByteBuffer(key, getDefaultCacheDiskUtils());
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about String
     ///////////////////////////////////////////////////////////////////////////
@@ -425,6 +436,15 @@ public final class CacheDiskStaticUtils {
         return getCacheCount(getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats() {
+        return getStats(getDefaultCacheDiskUtils());
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -502,6 +522,18 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getBytes(key, defaultValue);
     }
 
+    /**
+     * Return the bytes in cache as a read-only buffer, without copying them.
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the buffer if cache exists or null otherwise
+     */
+    public static ByteBuffer getByteBuffer(@NonNull final String key,
+                                           @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getByteBuffer(key);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about String
     ///////////////////////////////////////////////////////////////////////////
@@ -936,6 +968,16 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getCacheCount();
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats(@NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getStats();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -1,7 +1,6 @@
 package com.huaxia.xlib.cache;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.drawable.BitmapDrawable;
@@ -21,24 +20,31 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
 
 /**
@@ -54,6 +60,19 @@ public final class CacheDiskUtils implements CacheConstants {
     private static final long DEFAULT_MAX_SIZE = Long.MAX_VALUE;
     private static final int DEFAULT_MAX_COUNT = Integer.MAX_VALUE;
     private static final String CACHE_PREFIX = "cdu_";
+    private static final String TMP_PREFIX = "tmp_";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+    private static final long MAP_THRESHOLD = 64 * 1024;
     private static final String TYPE_BYTE = "by_";
     private static final String TYPE_STRING = "st_";
     private static final String TYPE_JSON_OBJECT = "jo_";
@@ -64,12 +83,33 @@ public final class CacheDiskUtils implements CacheConstants {
     private static final String TYPE_SERIALIZABLE = "se_";
 
     private static final Map<String, CacheDiskUtils> CACHE_MAP = new HashMap<>();
+    /**
+     * The engines by canonical directory, and how each directory is stored. Instances of a
+     * directory share its engine, two engines on one directory would overwrite each other.
+     * Guarded by {@code CacheDiskUtils.class}.
+     */
+    private static final Map<String, DiskCacheEngine> ENGINE_MAP = new HashMap<>();
+    private static final Map<String, String> STORAGE_MAP = new HashMap<>();
+
+    static final ScheduledExecutorService DISK_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "cache-disk");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     private final String mCacheKey;
+    private final String mDirKey;
     private final File mCacheDir;
     private final long mMaxSize;
     private final int mMaxCount;
-    private DiskCacheManager mDiskCacheManager;
+    private final Durability mDurability;
+    private final CacheCodecs mCodecs;
+    private final CacheStats mStats;
+    private volatile DiskCacheEngine mDiskCacheEngine;
 
     /**
      * Return the single {@link CacheDiskUtils} instance.
@@ -147,43 +187,149 @@ public final class CacheDiskUtils implements CacheConstants {
     public static CacheDiskUtils getInstance(@NonNull final File cacheDir,
                                              final long maxSize,
                                              final int maxCount) {
-        final String cacheKey = cacheDir.getAbsoluteFile() + "_" + maxSize + "_" + maxCount;
+        return getInstance(cacheDir, maxSize, maxCount, null);
+    }
+
+    /**
+     * Return the single {@link CacheDiskUtils} instance.
+     * <p>With a non-null durability all entries are appended to a single journal file
+     * instead of one file per entry.</p>
+     *
+     * @param cacheDir   The directory of cache.
+     * @param maxSize    The max size of cache, in bytes.
+     * @param maxCount   The max count of cache.
+     * @param durability The durability of journal, null to store one file per entry.
+     * @return the single {@link CacheDiskUtils} instance
+     */
+    public static CacheDiskUtils getInstance(@NonNull final File cacheDir,
+                                             final long maxSize,
+                                             final int maxCount,
+                                             final Durability durability) {
+        return getInstance(cacheDir, maxSize, maxCount, durability, null);
+    }
+
+    /**
+     * Return the single {@link CacheDiskUtils} instance.
+     * <p>The codecs are not part of the identity of the instance, the codecs of the call
+     * creating it are kept. Reading doesn't depend on them, so any codecs read the
+     * entries.</p>
+     * <p>Instances of one directory share its storage, the limits of the first one opening
+     * it apply.</p>
+     *
+     * @param cacheDir   The directory of cache.
+     * @param maxSize    The max size of cache, in bytes.
+     * @param maxCount   The max count of cache.
+     * @param durability The durability of journal, null to store one file per entry.
+     * @param codecs     The codecs of values, null for the default {@link CacheCodecs}.
+     * @return the single {@link CacheDiskUtils} instance
+     * @throws IllegalStateException if the directory is open with another durability
+     */
+    public static CacheDiskUtils getInstance(@NonNull final File cacheDir,
+                                             final long maxSize,
+                                             final int maxCount,
+                                             final Durability durability,
+                                             final CacheCodecs codecs) {
+        final String dirKey = getDirKey(cacheDir);
+        final String storage = durability == null ? "files" : "journal_" + durability;
+        final String cacheKey = dirKey + "_" + maxSize + "_" + maxCount + "_" + storage;
         CacheDiskUtils cache = CACHE_MAP.get(cacheKey);
         if (cache == null) {
             synchronized (CacheDiskUtils.class) {
                 cache = CACHE_MAP.get(cacheKey);
                 if (cache == null) {
-                    cache = new CacheDiskUtils(cacheKey, cacheDir, maxSize, maxCount);
+                    final String open = STORAGE_MAP.get(dirKey);
+                    if (open != null && !open.equals(storage)) {
+                        throw new IllegalStateException(
+                                dirKey + " is open as " + open + ", not " + storage);
+                    }
+                    STORAGE_MAP.put(dirKey, storage);
+                    cache = new CacheDiskUtils(cacheKey, dirKey, cacheDir, maxSize, maxCount,
+                            durability, codecs == null ? new CacheCodecs() : codecs);
                     CACHE_MAP.put(cacheKey, cache);
                 }
             }
         }
+        if (codecs != null && codecs != cache.mCodecs) {
+            Log.w("CacheDiskUtils", cacheKey + " is open already, its codecs are kept");
+        }
         return cache;
     }
 
+    private static String getDirKey(final File cacheDir) {
+        try {
+            return cacheDir.getCanonicalPath();
+        } catch (IOException e) {
+            return cacheDir.getAbsolutePath();
+        }
+    }
+
     private CacheDiskUtils(final String cacheKey,
+                           final String dirKey,
                            final File cacheDir,
                            final long maxSize,
-                           final int maxCount) {
+                           final int maxCount,
+                           final Durability durability,
+                           final CacheCodecs codecs) {
         mCacheKey = cacheKey;
+        mDirKey = dirKey;
         mCacheDir = cacheDir;
         mMaxSize = maxSize;
         mMaxCount = maxCount;
-    }
+        mDurability = durability;
+        mCodecs = codecs;
+        mStats = new CacheStats("disk_" + this, new CacheStats.Source() {
+            @Override
+            public long getEvictionCount() {
+                DiskCacheEngine diskCacheEngine = mDiskCacheEngine;
+                return diskCacheEngine == null ? 0 : diskCacheEngine.getEvictionCount();
+            }
 
-    private DiskCacheManager getDiskCacheManager() {
-        if (mCacheDir.exists()) {
-            if (mDiskCacheManager == null) {
-                mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount);
+            @Override
+            public long getExpiredCount() {
+                return 0;
             }
-        } else {
-            if (mCacheDir.mkdirs()) {
-                mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount);
-            } else {
-                Log.e("CacheDiskUtils", "can't make dirs in " + mCacheDir.getAbsolutePath());
+
+            @Override
+            public int getCacheCount() {
+                DiskCacheEngine diskCacheEngine = mDiskCacheEngine;
+                return diskCacheEngine == null ? 0 : diskCacheEngine.getCacheCount();
+            }
+
+            @Override
+            public long getCacheSize() {
+                DiskCacheEngine diskCacheEngine = mDiskCacheEngine;
+                return diskCacheEngine == null ? 0 : diskCacheEngine.getCacheSize();
+            }
+        });
+    }
+
+    private DiskCacheEngine getDiskCacheEngine() {
+        if (mDiskCacheEngine != null) return mDiskCacheEngine;
+        synchronized (CacheDiskUtils.class) {
+            if (mDiskCacheEngine != null) return mDiskCacheEngine;
+            DiskCacheEngine engine = ENGINE_MAP.get(mDirKey);
+            if (engine == null) {
+                engine = newDiskCacheEngine();
+                if (engine == null) return null;
+                ENGINE_MAP.put(mDirKey, engine);
             }
+            mDiskCacheEngine = engine;
+            return engine;
+        }
+    }
+
+    private DiskCacheEngine newDiskCacheEngine() {
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            Log.e("CacheDiskUtils", "can't make dirs in " + mCacheDir.getAbsolutePath());
+            return null;
+        }
+        if (mDurability == null) return new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount);
+        try {
+            return new DiskCacheJournal(mCacheDir, mMaxSize, mMaxCount, mDurability);
+        } catch (IOException e) {
+            Log.e("CacheDiskUtils", "can't open journal in " + mCacheDir.getAbsolutePath(), e);
+            return null;
         }
-        return mDiskCacheManager;
     }
 
     @Override
@@ -218,13 +364,17 @@ public final class CacheDiskUtils implements CacheConstants {
 
     private void realPutBytes(final String key, byte[] value, int saveTime) {
         if (value == null) return;
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return;
-        if (saveTime >= 0) value = DiskCacheHelper.newByteArrayWithTime(saveTime, value);
-        File file = diskCacheManager.getFileBeforePut(key);
-        writeFileFromBytes(file, value);
-        diskCacheManager.updateModify(file);
-        diskCacheManager.put(file);
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return;
+        byte flags = 0;
+        byte[] deflated = mCodecs.deflate(value);
+        if (deflated != null) {
+            value = deflated;
+            flags = DiskCacheHelper.FLAG_DEFLATED;
+        }
+        byte[] header = DiskCacheHelper.newHeader(key, saveTime, flags, value);
+        diskCacheEngine.put(key, header, value);
+        mStats.recordWrite(header.length + value.length);
     }
 
 
@@ -249,23 +399,70 @@ public final class CacheDiskUtils implements CacheConstants {
         return realGetBytes(TYPE_BYTE + key, defaultValue);
     }
 
+    /**
+     * Return the bytes in cache as a read-only buffer, without copying them.
+     * <p>Large entries are memory-mapped, the buffer stays valid after the cache is
+     * removed. Deflated entries are inflated into a new buffer.</p>
+     *
+     * @param key The key of cache.
+     * @return the buffer if cache exists or null otherwise
+     */
+    public ByteBuffer getByteBuffer(@NonNull final String key) {
+        return realGetBuffer(TYPE_BYTE + key);
+    }
+
     private byte[] realGetBytes(@NonNull final String key) {
         return realGetBytes(key,
                 null);
     }
 
     private byte[] realGetBytes(@NonNull final String key, final byte[] defaultValue) {
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return defaultValue;
-        final File file = diskCacheManager.getFileIfExists(key);
-        if (file == null) return defaultValue;
-        byte[] data = readFile2Bytes(file);
-        if (DiskCacheHelper.isDue(data)) {
-            diskCacheManager.removeByKey(key);
-            return defaultValue;
+        ByteBuffer data = realGetBuffer(key);
+        if (data == null) return defaultValue;
+        return toBytes(data);
+    }
+
+    private static byte[] toBytes(final ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer realGetBuffer(@NonNull final String key) {
+        ByteBuffer data = realGetBuffer(key, null);
+        if (data == null) {
+            mStats.recordMiss();
+        } else {
+            mStats.recordHit();
         }
-        diskCacheManager.updateModify(file);
-        return DiskCacheHelper.getDataWithoutDueTime(data);
+        return data;
+    }
+
+    private ByteBuffer realGetBuffer(@NonNull final String key, final long[] dueTime) {
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return null;
+        final long start = System.nanoTime();
+        ByteBuffer entry = diskCacheEngine.get(key);
+        if (entry == null) return null;
+        mStats.recordRead(entry.remaining(), System.nanoTime() - start);
+        // another key with the same file name, a miss rather than the wrong value
+        if (!DiskCacheHelper.matchesKey(key, entry)) return null;
+        if (DiskCacheHelper.isDue(entry)) {
+            diskCacheEngine.remove(key);
+            mStats.recordExpired();
+            return null;
+        }
+        ByteBuffer data = DiskCacheHelper.getData(key, entry);
+        if (data != null && DiskCacheHelper.isDeflated(entry)) {
+            data = CacheCodecs.inflate(data);
+        }
+        if (data == null) {
+            Log.w("CacheDiskUtils", "drop corrupt cache of " + key);
+            diskCacheEngine.remove(key);
+        } else if (dueTime != null) {
+            dueTime[0] = DiskCacheHelper.getDueTime(entry);
+        }
+        return data;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -290,7 +487,7 @@ public final class CacheDiskUtils implements CacheConstants {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final String value, final int saveTime) {
-        realPutBytes(TYPE_STRING + key, string2Bytes(value), saveTime);
+        realPutBytes(TYPE_STRING + key, CacheCodecs.string2Bytes(value), saveTime);
     }
 
     /**
@@ -313,7 +510,7 @@ public final class CacheDiskUtils implements CacheConstants {
     public String getString(@NonNull final String key, final String defaultValue) {
         byte[] bytes = realGetBytes(TYPE_STRING + key);
         if (bytes == null) return defaultValue;
-        return bytes2String(bytes);
+        return CacheCodecs.bytes2String(bytes);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -341,7 +538,7 @@ public final class CacheDiskUtils implements CacheConstants {
     public void put(@NonNull final String key,
                     final JSONObject value,
                     final int saveTime) {
-        realPutBytes(TYPE_JSON_OBJECT + key, jsonObject2Bytes(value), saveTime);
+        realPutBytes(TYPE_JSON_OBJECT + key, CacheCodecs.jsonObject2Bytes(value), saveTime);
     }
 
     /**
@@ -365,7 +562,7 @@ public final class CacheDiskUtils implements CacheConstants {
     public JSONObject getJSONObject(@NonNull final String key, final JSONObject defaultValue) {
         byte[] bytes = realGetBytes(TYPE_JSON_OBJECT + key);
         if (bytes == null) return defaultValue;
-        return bytes2JSONObject(bytes);
+        return CacheCodecs.bytes2JSONObject(bytes);
     }
 
 
@@ -392,7 +589,7 @@ public final class CacheDiskUtils implements CacheConstants {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final JSONArray value, final int saveTime) {
-        realPutBytes(TYPE_JSON_ARRAY + key, jsonArray2Bytes(value), saveTime);
+        realPutBytes(TYPE_JSON_ARRAY + key, CacheCodecs.jsonArray2Bytes(value), saveTime);
     }
 
     /**
@@ -416,7 +613,7 @@ public final class CacheDiskUtils implements CacheConstants {
     public JSONArray getJSONArray(@NonNull final String key, final JSONArray defaultValue) {
         byte[] bytes = realGetBytes(TYPE_JSON_ARRAY + key);
         if (bytes == null) return defaultValue;
-        return bytes2JSONArray(bytes);
+        return CacheCodecs.bytes2JSONArray(bytes);
     }
 
 
@@ -442,7 +639,7 @@ public final class CacheDiskUtils implements CacheConstants {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Bitmap value, final int saveTime) {
-        realPutBytes(TYPE_BITMAP + key, bitmap2Bytes(value), saveTime);
+        realPutBytes(TYPE_BITMAP + key, mCodecs.bitmap2Bytes(value), saveTime);
     }
 
     /**
@@ -465,7 +662,7 @@ public final class CacheDiskUtils implements CacheConstants {
     public Bitmap getBitmap(@NonNull final String key, final Bitmap defaultValue) {
         byte[] bytes = realGetBytes(TYPE_BITMAP + key);
         if (bytes == null) return defaultValue;
-        return bytes2Bitmap(bytes);
+        return mCodecs.bytes2Bitmap(bytes);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -597,7 +794,7 @@ public final class CacheDiskUtils implements CacheConstants {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Serializable value, final int saveTime) {
-        realPutBytes(TYPE_SERIALIZABLE + key, serializable2Bytes(value), saveTime);
+        realPutBytes(TYPE_SERIALIZABLE + key, mCodecs.object2Bytes(value), saveTime);
     }
 
     /**
@@ -621,7 +818,48 @@ public final class CacheDiskUtils implements CacheConstants {
     public Object getSerializable(@NonNull final String key, final Object defaultValue) {
         byte[] bytes = realGetBytes(TYPE_SERIALIZABLE + key);
         if (bytes == null) return defaultValue;
-        return bytes2Object(bytes);
+        return mCodecs.bytes2Object(bytes);
+    }
+
+    /**
+     * Return the value of any type but parcelable in cache.
+     *
+     * @param key     The key of cache.
+     * @param dueTime Receives the due time in millis of the value, -1 if it never expires.
+     * @return the value if cache exists or null otherwise
+     */
+    Object getObject(@NonNull final String key, final long[] dueTime) {
+        Object value = findObject(key, dueTime);
+        if (value == null) {
+            mStats.recordMiss();
+        } else {
+            mStats.recordHit();
+        }
+        return value;
+    }
+
+    private Object findObject(final String key, final long[] dueTime) {
+        ByteBuffer data = realGetBuffer(TYPE_BYTE + key, dueTime);
+        if (data != null) return toBytes(data);
+        if ((data = realGetBuffer(TYPE_STRING + key, dueTime)) != null) {
+            return CacheCodecs.bytes2String(toBytes(data));
+        }
+        if ((data = realGetBuffer(TYPE_JSON_OBJECT + key, dueTime)) != null) {
+            return CacheCodecs.bytes2JSONObject(toBytes(data));
+        }
+        if ((data = realGetBuffer(TYPE_JSON_ARRAY + key, dueTime)) != null) {
+            return CacheCodecs.bytes2JSONArray(toBytes(data));
+        }
+        if ((data = realGetBuffer(TYPE_BITMAP + key, dueTime)) != null) {
+            return mCodecs.bytes2Bitmap(toBytes(data));
+        }
+        if ((data = realGetBuffer(TYPE_DRAWABLE + key, dueTime)) != null) {
+            return bytes2Drawable(toBytes(data));
+        }
+        if ((data = realGetBuffer(TYPE_SERIALIZABLE + key, dueTime)) != null) {
+            return mCodecs.bytes2Object(toBytes(data));
+        }
+        return null;
     }
 
     /**
@@ -630,9 +868,9 @@ public final class CacheDiskUtils implements CacheConstants {
      * @return the size of cache, in bytes
      */
     public long getCacheSize() {
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return 0;
-        return diskCacheManager.getCacheSize();
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return 0;
+        return diskCacheEngine.getCacheSize();
     }
 
     /**
@@ -641,9 +879,20 @@ public final class CacheDiskUtils implements CacheConstants {
      * @return the count of cache
      */
     public int getCacheCount() {
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return 0;
-        return diskCacheManager.getCacheCount();
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return 0;
+        return diskCacheEngine.getCacheCount();
+    }
+
+    /**
+     * Return the snapshot of stats.
+     * <p>Count and size are 0 until the cache is first used, so taking a snapshot doesn't
+     * open the cache.</p>
+     *
+     * @return the snapshot of stats
+     */
+    public CacheStats.Snapshot getStats() {
+        return mStats.snapshot();
     }
 
     /**
@@ -653,16 +902,50 @@ public final class CacheDiskUtils implements CacheConstants {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public boolean remove(@NonNull final String key) {
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return true;
-        return diskCacheManager.removeByKey(TYPE_BYTE + key)
-                && diskCacheManager.removeByKey(TYPE_STRING + key)
-                && diskCacheManager.removeByKey(TYPE_JSON_OBJECT + key)
-                && diskCacheManager.removeByKey(TYPE_JSON_ARRAY + key)
-                && diskCacheManager.removeByKey(TYPE_BITMAP + key)
-                && diskCacheManager.removeByKey(TYPE_DRAWABLE + key)
-                && diskCacheManager.removeByKey(TYPE_PARCELABLE + key)
-                && diskCacheManager.removeByKey(TYPE_SERIALIZABLE + key);
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return true;
+        return diskCacheEngine.remove(TYPE_BYTE + key)
+                && diskCacheEngine.remove(TYPE_STRING + key)
+                && diskCacheEngine.remove(TYPE_JSON_OBJECT + key)
+                && diskCacheEngine.remove(TYPE_JSON_ARRAY + key)
+                && diskCacheEngine.remove(TYPE_BITMAP + key)
+                && diskCacheEngine.remove(TYPE_DRAWABLE + key)
+                && diskCacheEngine.remove(TYPE_PARCELABLE + key)
+                && diskCacheEngine.remove(TYPE_SERIALIZABLE + key);
+    }
+
+    /**
+     * Remove the cache of the type by key, the other types of key are kept.
+     *
+     * @param key  The key of cache.
+     * @param type The type put by, {@code byte[].class}, {@code String.class} and so on.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    boolean remove(@NonNull final String key, @NonNull final Class<?> type) {
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return true;
+        final String diskKey = getDiskKey(key, type);
+        if (diskKey == null) return remove(key);
+        return diskCacheEngine.remove(diskKey);
+    }
+
+    /**
+     * Return the key on disk of the cache of the type.
+     *
+     * @param key  The key of cache.
+     * @param type The type put by, {@code byte[].class}, {@code String.class} and so on.
+     * @return the key on disk, null if the type can't be put
+     */
+    static String getDiskKey(@NonNull final String key, @NonNull final Class<?> type) {
+        if (type == byte[].class) return TYPE_BYTE + key;
+        if (type == String.class) return TYPE_STRING + key;
+        if (type == JSONObject.class) return TYPE_JSON_OBJECT + key;
+        if (type == JSONArray.class) return TYPE_JSON_ARRAY + key;
+        if (type == Bitmap.class) return TYPE_BITMAP + key;
+        if (type == Drawable.class) return TYPE_DRAWABLE + key;
+        if (type == Parcelable.class) return TYPE_PARCELABLE + key;
+        if (type == Serializable.class) return TYPE_SERIALIZABLE + key;
+        return null;
     }
 
     /**
@@ -671,73 +954,214 @@ public final class CacheDiskUtils implements CacheConstants {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public boolean clear() {
-        DiskCacheManager diskCacheManager = getDiskCacheManager();
-        if (diskCacheManager == null) return true;
-        return diskCacheManager.clear();
+        DiskCacheEngine diskCacheEngine = getDiskCacheEngine();
+        if (diskCacheEngine == null) return true;
+        return diskCacheEngine.clear();
+    }
+
+    /**
+     * When the journal forces written records to the storage device.
+     */
+    public static final class Durability {
+
+        static final int MODE_WRITE = 0;
+        static final int MODE_BATCH = 1;
+        static final int MODE_PERIODIC = 2;
+
+        final int mode;
+        final int batchSize;
+        final long intervalMillis;
+
+        private Durability(final int mode, final int batchSize, final long intervalMillis) {
+            this.mode = mode;
+            this.batchSize = batchSize;
+            this.intervalMillis = intervalMillis;
+        }
+
+        /**
+         * Force before every put or remove returns. Concurrent writers share one force.
+         *
+         * @return the durability
+         */
+        public static Durability perWrite() {
+            return new Durability(MODE_WRITE, 1, 0);
+        }
+
+        /**
+         * Force once every {@code batchSize} records.
+         *
+         * @param batchSize The count of records between two forces.
+         * @return the durability
+         */
+        public static Durability perBatch(final int batchSize) {
+            if (batchSize <= 0) throw new IllegalArgumentException("batchSize <= 0");
+            return new Durability(MODE_BATCH, batchSize, 0);
+        }
+
+        /**
+         * Force on a timer, writers never wait for the storage device.
+         *
+         * @param intervalMillis The interval between two forces, in milliseconds.
+         * @return the durability
+         */
+        public static Durability periodic(final long intervalMillis) {
+            if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis <= 0");
+            return new Durability(MODE_PERIODIC, 0, intervalMillis);
+        }
+
+        @Override
+        public String toString() {
+            switch (mode) {
+                case MODE_BATCH:
+                    return "batch" + batchSize;
+                case MODE_PERIODIC:
+                    return "periodic" + intervalMillis;
+                default:
+                    return "write";
+            }
+        }
     }
 
-    private static final class DiskCacheManager {
-        private final AtomicLong cacheSize;
-        private final AtomicInteger cacheCount;
+    private static final class DiskCacheManager implements DiskCacheEngine {
+        private static final String INDEX_NAME = "cdi_index";
+        private static final int INDEX_MAGIC = 0x43444931; // "CDI1"
+        private static final int INDEX_VERSION = 3;
+        private static final int SHARD_COUNT = 256;
+        private static final long INDEX_SAVE_DELAY = 3000;
+
         private final long sizeLimit;
         private final int countLimit;
-        private final Map<File, Long> lastUsageDates
-                = Collections.synchronizedMap(new HashMap<File, Long>());
+        private final long sizeLowWater;
+        private final int countLowWater;
+        /**
+         * Cache file name to file size, eldest access first. Guarded by itself, so are
+         * {@link #cacheSize} and the index snapshot state.
+         */
+        private final LinkedHashMap<String, Long> lruEntries
+                = new LinkedHashMap<>(16, 0.75f, true);
+        private long cacheSize;
+        private long evictionCount;
+        /** Bumped on every change, tells {@link #saveIndex()} its copy went stale. */
+        private long indexGeneration;
+        private boolean indexOnDisk;
+        private boolean indexSaveScheduled;
+        private final boolean[] shardReady = new boolean[SHARD_COUNT];
         private final File cacheDir;
+        private final File indexFile;
         private final Thread mThread;
 
         private DiskCacheManager(final File cacheDir, final long sizeLimit, final int countLimit) {
             this.cacheDir = cacheDir;
+            this.indexFile = new File(cacheDir, INDEX_NAME);
             this.sizeLimit = sizeLimit;
             this.countLimit = countLimit;
-            cacheSize = new AtomicLong();
-            cacheCount = new AtomicInteger();
+            // evict a tenth at once, so a full cache doesn't evict on every put
+            this.sizeLowWater = sizeLimit - sizeLimit / 10;
+            this.countLowWater = countLimit - countLimit / 10;
+            if (loadIndex()) {
+                mThread = null;
+                return;
+            }
             mThread = new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    int size = 0;
-                    int count = 0;
-                    final File[] cachedFiles = cacheDir.listFiles(new FilenameFilter() {
-                        @Override
-                        public boolean accept(File dir, String name) {
-                            return name.startsWith(CACHE_PREFIX);
-                        }
-                    });
-                    if (cachedFiles != null) {
-                        for (File cachedFile : cachedFiles) {
-                            size += cachedFile.length();
-                            count += 1;
-                            lastUsageDates.put(cachedFile, cachedFile.lastModified());
-                        }
-                        cacheSize.getAndAdd(size);
-                        cacheCount.getAndAdd(count);
-                    }
+                    rebuildIndex();
                 }
             });
             mThread.start();
         }
 
-        private long getCacheSize() {
+        @Override
+        public void put(final String key, final byte[] header, final byte[] data) {
             wait2InitOk();
-            return cacheSize.get();
+            final String name = getCacheNameByKey(key);
+            final File shard = getShard(name);
+            final File tmp = new File(shard,
+                    TMP_PREFIX + name + "_" + Thread.currentThread().getId());
+            if (!writeFileFromBytes(tmp, header, data)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                return;
+            }
+            // rename and evict under the same lock as accounting so counters stay exact
+            synchronized (lruEntries) {
+                markIndexDirty();
+                if (!tmp.renameTo(new File(shard, name))) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tmp.delete();
+                    return;
+                }
+                final long length = header.length + data.length;
+                Long old = lruEntries.put(name, length);
+                if (old != null) cacheSize -= old;
+                cacheSize += length;
+                if (lruEntries.size() > countLimit || cacheSize > sizeLimit) {
+                    trimToLowWater(name);
+                }
+            }
+        }
+
+        @Override
+        public ByteBuffer get(final String key) {
+            final String name = getCacheNameByKey(key);
+            final File file = getFile(name);
+            if (!file.exists()) {
+                // the scan may be moving the flat layout into the shards
+                wait2InitOk();
+                if (!file.exists() && !migrateLegacyFile(key, name)) {
+                    dropMissing(name);
+                    return null;
+                }
+            }
+            ByteBuffer data = readFile2Buffer(file);
+            if (data != null) {
+                synchronized (lruEntries) {
+                    // only touches the access order, which goes out with the next snapshot
+                    lruEntries.get(name);
+                }
+            } else if (!file.exists()) {
+                dropMissing(name);
+            }
+            return data;
+        }
+
+        /**
+         * Drop the entry of a file deleted behind the cache, such as by the system freeing
+         * the cache directory, which the snapshot can't know about.
+         */
+        private void dropMissing(final String name) {
+            synchronized (lruEntries) {
+                if (!lruEntries.containsKey(name) || getFile(name).exists()) return;
+                markIndexDirty();
+                cacheSize -= lruEntries.remove(name);
+            }
         }
 
-        private int getCacheCount() {
+        @Override
+        public long getCacheSize() {
             wait2InitOk();
-            return cacheCount.get();
+            synchronized (lruEntries) {
+                return cacheSize;
+            }
         }
 
-        private File getFileBeforePut(final String key) {
+        @Override
+        public int getCacheCount() {
             wait2InitOk();
-            File file = new File(cacheDir, getCacheNameByKey(key));
-            if (file.exists()) {
-                cacheCount.addAndGet(-1);
-                cacheSize.addAndGet(-file.length());
+            synchronized (lruEntries) {
+                return lruEntries.size();
+            }
+        }
+
+        @Override
+        public long getEvictionCount() {
+            synchronized (lruEntries) {
+                return evictionCount;
             }
-            return file;
         }
 
         private void wait2InitOk() {
+            if (mThread == null) return;
             try {
                 mThread.join();
             } catch (InterruptedException e) {
@@ -745,208 +1169,514 @@ public final class CacheDiskUtils implements CacheConstants {
             }
         }
 
-        private File getFileIfExists(final String key) {
-            File file = new File(cacheDir, getCacheNameByKey(key));
-            if (!file.exists()) return null;
-            return file;
-        }
-
+        /**
+         * The first 128 bits of SHA-256 in hex, so distinct keys practically never share a
+         * file. The key is also stored in the entry header and checked on read.
+         */
         private String getCacheNameByKey(final String key) {
-            return CACHE_PREFIX + key.substring(0, 3) + key.substring(3).hashCode();
+            final byte[] digest = DIGEST.get().digest(key.getBytes(StandardCharsets.UTF_8));
+            final char[] name = new char[CACHE_PREFIX.length() + 32];
+            CACHE_PREFIX.getChars(0, CACHE_PREFIX.length(), name, 0);
+            for (int i = 0, j = CACHE_PREFIX.length(); i < 16; i++) {
+                name[j++] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+                name[j++] = HEX_DIGITS[digest[i] & 0x0F];
+            }
+            return new String(name);
         }
 
-        private void put(final File file) {
-            cacheCount.addAndGet(1);
-            cacheSize.addAndGet(file.length());
-            while (cacheCount.get() > countLimit || cacheSize.get() > sizeLimit) {
-                cacheSize.addAndGet(-removeOldest());
-                cacheCount.addAndGet(-1);
+        /**
+         * Files fan out into 256 subdirectories by the first byte of the digest.
+         */
+        private File getShard(final String name) {
+            final int start = CACHE_PREFIX.length();
+            final File shard = new File(cacheDir, name.substring(start, start + 2));
+            final int index = Integer.parseInt(name.substring(start, start + 2), 16);
+            if (!shardReady[index]) {
+                //noinspection ResultOfMethodCallIgnored
+                shard.mkdirs();
+                shardReady[index] = true;
             }
+            return shard;
         }
 
-        private void updateModify(final File file) {
-            Long millis = System.currentTimeMillis();
-            file.setLastModified(millis);
-            lastUsageDates.put(file, millis);
+        private File getFile(final String name) {
+            final int start = CACHE_PREFIX.length();
+            return new File(new File(cacheDir, name.substring(start, start + 2)), name);
+        }
+
+        /**
+         * The name of the file of key in the flat layout before the shards.
+         */
+        private static String getLegacyName(final String key) {
+            return CACHE_PREFIX + key.substring(0, 3) + key.substring(3).hashCode();
         }
 
-        private boolean removeByKey(final String key) {
-            File file = getFileIfExists(key);
-            if (file == null) return true;
-            if (!file.delete()) return false;
-            cacheSize.addAndGet(-file.length());
-            cacheCount.addAndGet(-1);
-            lastUsageDates.remove(file);
+        /**
+         * Move the file of key in the flat layout into its shard, the entries without a key
+         * in the header are moved when first looked up.
+         *
+         * @return {@code true} if there was such a file
+         */
+        private boolean migrateLegacyFile(final String key, final String name) {
+            final File legacy = new File(cacheDir, getLegacyName(key));
+            if (!legacy.exists()) return false;
+            final File file = new File(getShard(name), name);
+            synchronized (lruEntries) {
+                markIndexDirty();
+                // a concurrent get may have moved it
+                if (!legacy.renameTo(file)) return file.exists();
+                final long length = file.length();
+                final Long old = lruEntries.put(name, length);
+                if (old != null) cacheSize -= old;
+                cacheSize += length;
+                if (lruEntries.size() > countLimit || cacheSize > sizeLimit) {
+                    trimToLowWater(name);
+                }
+            }
             return true;
         }
 
-        private boolean clear() {
-            File[] files = cacheDir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.startsWith(CACHE_PREFIX);
+        /**
+         * Move the files of the flat layout with a key in the header into their shards
+         * before the scan, so upgrading keeps them.
+         */
+        private void migrateFlatFiles() {
+            final File[] children = cacheDir.listFiles();
+            if (children == null) return;
+            for (File child : children) {
+                if (!child.getName().startsWith(CACHE_PREFIX) || !child.isFile()) continue;
+                final String key = DiskCacheHelper.readKey(child);
+                if (key == null) continue;
+                final String name = getCacheNameByKey(key);
+                final File file = new File(getShard(name), name);
+                // a put since the upgrade wins
+                if (file.exists() || !child.renameTo(file)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    child.delete();
                 }
-            });
-            if (files == null || files.length <= 0) return true;
+            }
+        }
+
+        /**
+         * Return the cache files in all shards, temp files left by unfinished puts are
+         * deleted.
+         */
+        private List<File> listCacheFiles() {
+            final List<File> cachedFiles = new ArrayList<>();
+            final File[] children = cacheDir.listFiles();
+            if (children == null) return cachedFiles;
+            for (File child : children) {
+                final String name = child.getName();
+                if (name.length() != 2 || !child.isDirectory()) continue;
+                final File[] files = child.listFiles();
+                if (files == null) continue;
+                for (File file : files) {
+                    if (file.getName().startsWith(CACHE_PREFIX)) {
+                        cachedFiles.add(file);
+                    } else if (file.getName().startsWith(TMP_PREFIX)) {
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    }
+                }
+            }
+            return cachedFiles;
+        }
+
+        @Override
+        public boolean remove(final String key) {
+            final String name = getCacheNameByKey(key);
+            final File file = getFile(name);
+            //noinspection ResultOfMethodCallIgnored
+            new File(cacheDir, getLegacyName(key)).delete();
+            synchronized (lruEntries) {
+                if (!file.exists() && !lruEntries.containsKey(name)) return true;
+                markIndexDirty();
+                if (file.exists() && !file.delete()) return false;
+                Long size = lruEntries.remove(name);
+                if (size != null) cacheSize -= size;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean clear() {
+            wait2InitOk();
             boolean flag = true;
-            for (File file : files) {
-                if (!file.delete()) {
-                    flag = false;
-                    continue;
+            final File[] children = cacheDir.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    // entries of the flat layout not moved yet
+                    if (child.getName().startsWith(CACHE_PREFIX) && !child.delete()) {
+                        flag = false;
+                    }
                 }
-                cacheSize.addAndGet(-file.length());
-                cacheCount.addAndGet(-1);
-                lastUsageDates.remove(file);
             }
-            if (flag) {
-                lastUsageDates.clear();
-                cacheSize.set(0);
-                cacheCount.set(0);
+            List<File> files = listCacheFiles();
+            if (files.isEmpty()) return flag;
+            synchronized (lruEntries) {
+                markIndexDirty();
+                for (File file : files) {
+                    if (!file.delete()) {
+                        flag = false;
+                        continue;
+                    }
+                    Long size = lruEntries.remove(file.getName());
+                    if (size != null) cacheSize -= size;
+                }
             }
             return flag;
         }
 
         /**
-         * Remove the oldest files.
+         * Remove the eldest files until both size and count fall to the low-water mark.
+         * Must hold {@link #lruEntries}.
          *
-         * @return the size of oldest files, in bytes
+         * @param keep The file name which was just put and must survive.
          */
-        private long removeOldest() {
-            if (lastUsageDates.isEmpty()) return 0;
-            Long oldestUsage = Long.MAX_VALUE;
-            File oldestFile = null;
-            Set<Map.Entry<File, Long>> entries = lastUsageDates.entrySet();
-            synchronized (lastUsageDates) {
-                for (Map.Entry<File, Long> entry : entries) {
-                    Long lastValueUsage = entry.getValue();
-                    if (lastValueUsage < oldestUsage) {
-                        oldestUsage = lastValueUsage;
-                        oldestFile = entry.getKey();
-                    }
+        private void trimToLowWater(final String keep) {
+            Iterator<Map.Entry<String, Long>> it = lruEntries.entrySet().iterator();
+            while ((lruEntries.size() > countLowWater || cacheSize > sizeLowWater)
+                    && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(keep)) continue;
+                File file = getFile(eldest.getKey());
+                // a file deleted behind the cache only leaves its entry, not an eviction
+                final boolean exists = file.exists();
+                if (exists && !file.delete()) continue;
+                cacheSize -= eldest.getValue();
+                it.remove();
+                if (exists) evictionCount++;
+            }
+        }
+
+        ///////////////////////////////////////////////////////////////////////////
+        // index snapshot
+        ///////////////////////////////////////////////////////////////////////////
+
+        /**
+         * Scan the cache directory, the slow path when there's no valid snapshot.
+         */
+        private void rebuildIndex() {
+            migrateFlatFiles();
+            final List<File> cachedFiles = listCacheFiles();
+            final long[][] stats = new long[cachedFiles.size()][];
+            for (int i = 0; i < stats.length; i++) {
+                final File file = cachedFiles.get(i);
+                stats[i] = new long[]{file.lastModified(), file.length(), i};
+            }
+            Arrays.sort(stats, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] o1, long[] o2) {
+                    return Long.compare(o1[0], o2[0]);
                 }
+            });
+            synchronized (lruEntries) {
+                for (long[] stat : stats) {
+                    lruEntries.put(cachedFiles.get((int) stat[2]).getName(), stat[1]);
+                    cacheSize += stat[1];
+                }
+                scheduleIndexSave();
             }
-            if (oldestFile == null) return 0;
-            long fileSize = oldestFile.length();
-            if (oldestFile.delete()) {
-                lastUsageDates.remove(oldestFile);
-                return fileSize;
+        }
+
+        /**
+         * Load the snapshot written by {@link #saveIndex()}.
+         * <p>The snapshot is deleted before the first change after it was written, so a
+         * snapshot which exists and passes the checksum matches the changes of the cache.
+         * Files deleted behind the cache are dropped from the index when a get or a trim
+         * finds them missing.</p>
+         *
+         * @return {@code true} if the index was loaded from the snapshot
+         */
+        private boolean loadIndex() {
+            if (!indexFile.exists()) return false;
+            final byte[] data = readFile2Bytes(indexFile);
+            if (data == null || data.length < 16) return false;
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - 4);
+            if ((int) crc.getValue() != ByteBuffer.wrap(data).getInt(data.length - 4)) {
+                Log.w("CacheDiskUtils", "index of " + cacheDir + " is corrupt");
+                return false;
+            }
+            final DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(data, 0, data.length - 4));
+            try {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) return false;
+                final int count = in.readInt();
+                long size = 0;
+                for (int i = 0; i < count; i++) {
+                    final String name = in.readUTF();
+                    final long length = in.readLong();
+                    lruEntries.put(name, length);
+                    size += length;
+                }
+                cacheSize = size;
+                indexOnDisk = true;
+                return true;
+            } catch (IOException e) {
+                Log.w("CacheDiskUtils", "index of " + cacheDir + " is unreadable", e);
+                lruEntries.clear();
+                cacheSize = 0;
+                return false;
             }
-            return 0;
         }
-    }
 
-    private static final class DiskCacheHelper {
+        /**
+         * Must hold {@link #lruEntries} and be called before the change hits the disk.
+         */
+        private void markIndexDirty() {
+            indexGeneration++;
+            if (indexOnDisk) {
+                //noinspection ResultOfMethodCallIgnored
+                indexFile.delete();
+                indexOnDisk = false;
+            }
+            scheduleIndexSave();
+        }
 
-        static final int TIME_INFO_LEN = 14;
+        /**
+         * Must hold {@link #lruEntries}.
+         */
+        private void scheduleIndexSave() {
+            if (indexSaveScheduled) return;
+            indexSaveScheduled = true;
+            DISK_EXECUTOR.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    saveIndex();
+                }
+            }, INDEX_SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
 
-        private static byte[] newByteArrayWithTime(final int second, final byte[] data) {
-            byte[] time = createDueTime(second).getBytes();
-            byte[] content = new byte[time.length + data.length];
-            System.arraycopy(time, 0, content, 0, time.length);
-            System.arraycopy(data, 0, content, time.length, data.length);
-            return content;
+        private void saveIndex() {
+            final long base;
+            final String[] names;
+            final long[] lengths;
+            // copy under the lock, serialize outside it so puts and gets don't wait on it
+            synchronized (lruEntries) {
+                indexSaveScheduled = false;
+                base = indexGeneration;
+                names = new String[lruEntries.size()];
+                lengths = new long[names.length];
+                int i = 0;
+                for (Map.Entry<String, Long> entry : lruEntries.entrySet()) {
+                    names[i] = entry.getKey();
+                    lengths[i++] = entry.getValue();
+                }
+            }
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(16 + names.length * 48);
+            final DataOutputStream out = new DataOutputStream(baos);
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(names.length);
+                for (int i = 0; i < names.length; i++) {
+                    out.writeUTF(names[i]);
+                    out.writeLong(lengths[i]);
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(baos.toByteArray());
+                out.writeInt((int) crc.getValue());
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "save index of " + cacheDir + " failed", e);
+                return;
+            }
+            final File tmp = new File(cacheDir, TMP_PREFIX + INDEX_NAME);
+            if (writeFileFromBytes(tmp, baos.toByteArray())) {
+                synchronized (lruEntries) {
+                    // a change since the snapshot was taken makes it stale
+                    if (base == indexGeneration && tmp.renameTo(indexFile)) {
+                        indexOnDisk = true;
+                        return;
+                    }
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
         }
+    }
+
+    /**
+     * Entry layout, big-endian:
+     * <pre>
+     * magic(2) version(1) type(1) dueTime(8) length(4) crc32(4) keyLength(2) key data
+     * </pre>
+     * Version 1 has no key. Entries written before the header existed are either the bare
+     * data or the data behind a 14-byte ASCII {@code _$dueSeconds$_} prefix, both are still
+     * readable.
+     */
+    private static final class DiskCacheHelper {
 
+        static final byte MAGIC_0 = (byte) 0xCE;
+        static final byte MAGIC_1 = (byte) 0xD1;
+        static final byte VERSION_1 = 1;
+        static final byte VERSION = 2;
+        static final int HEADER_LEN_V1 = 20;
+        static final int HEADER_LEN = 22;
+        static final int TIME_INFO_LEN = 14;
         /**
-         * Return the string of due time.
-         *
-         * @param seconds The seconds.
-         * @return the string of due time
+         * Set in the type byte if the data is deflated by {@link CacheCodecs}.
          */
-        private static String createDueTime(final int seconds) {
-            return String.format(
-                    Locale.getDefault(), "_$%010d$_",
-                    System.currentTimeMillis() / 1000 + seconds
-            );
+        static final byte FLAG_DEFLATED = (byte) 0x80;
+        static final byte TYPE_MASK = 0x7F;
+
+        private static byte[] newHeader(final String key,
+                                        final int second,
+                                        final byte flags,
+                                        final byte[] data) {
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (keyBytes.length > 0xFFFF) keyBytes = new byte[0];
+            return ByteBuffer.allocate(HEADER_LEN + keyBytes.length)
+                    .put(MAGIC_0)
+                    .put(MAGIC_1)
+                    .put(VERSION)
+                    .put((byte) (typeOf(key) | flags))
+                    .putLong(second < 0 ? -1 : System.currentTimeMillis() + second * 1000L)
+                    .putInt(data.length)
+                    .putInt((int) crc.getValue())
+                    .putShort((short) keyBytes.length)
+                    .put(keyBytes)
+                    .array();
+        }
+
+        private static byte typeOf(final String key) {
+            if (key.startsWith(TYPE_BYTE)) return 1;
+            if (key.startsWith(TYPE_STRING)) return 2;
+            if (key.startsWith(TYPE_JSON_OBJECT)) return 3;
+            if (key.startsWith(TYPE_JSON_ARRAY)) return 4;
+            if (key.startsWith(TYPE_BITMAP)) return 5;
+            if (key.startsWith(TYPE_DRAWABLE)) return 6;
+            if (key.startsWith(TYPE_PARCELABLE)) return 7;
+            if (key.startsWith(TYPE_SERIALIZABLE)) return 8;
+            return 0;
         }
 
-        private static boolean isDue(final byte[] data) {
-            long millis = getDueTime(data);
+        private static boolean isDue(final ByteBuffer entry) {
+            long millis = getDueTime(entry);
             return millis != -1 && System.currentTimeMillis() > millis;
         }
 
-        private static long getDueTime(final byte[] data) {
-            if (hasTimeInfo(data)) {
-                String millis = new String(copyOfRange(data, 2, 12));
-                try {
-                    return Long.parseLong(millis) * 1000;
-                } catch (NumberFormatException e) {
-                    return -1;
+        private static long getDueTime(final ByteBuffer entry) {
+            final int p = entry.position();
+            if (getDataOffset(entry) >= 0) return entry.getLong(p + 4);
+            if (hasTimeInfo(entry)) {
+                long seconds = 0;
+                for (int i = p + 2; i < p + 12; i++) {
+                    final byte b = entry.get(i);
+                    if (b < '0' || b > '9') return -1;
+                    seconds = seconds * 10 + (b - '0');
                 }
+                return seconds * 1000;
             }
             return -1;
         }
 
-        private static byte[] getDataWithoutDueTime(final byte[] data) {
-            if (hasTimeInfo(data)) {
-                return copyOfRange(data, TIME_INFO_LEN, data.length);
+        /**
+         * Return whether the entry was put by the key. Entries without a stored key pass.
+         */
+        private static boolean matchesKey(final String key, final ByteBuffer entry) {
+            final int p = entry.position();
+            if (getDataOffset(entry) < 0 || entry.get(p + 2) == VERSION_1) return true;
+            final int keyLength = entry.getShort(p + 20) & 0xFFFF;
+            if (keyLength == 0) return true;
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (keyBytes.length != keyLength) return false;
+            for (int i = 0; i < keyLength; i++) {
+                if (entry.get(p + HEADER_LEN + i) != keyBytes[i]) return false;
             }
-            return data;
+            return true;
         }
 
-        private static byte[] copyOfRange(final byte[] original, final int from, final int to) {
-            int newLength = to - from;
-            if (newLength < 0) throw new IllegalArgumentException(from + " > " + to);
-            byte[] copy = new byte[newLength];
-            System.arraycopy(original, from, copy, 0, Math
-                    .min(original.length - from, newLength));
-            return copy;
+        /**
+         * Return a view of the data in the entry, without copying.
+         *
+         * @return the data or null if the header doesn't match the type or the data
+         */
+        private static ByteBuffer getData(final String key, final ByteBuffer entry) {
+            final int p = entry.position();
+            final int offset = getDataOffset(entry);
+            if (offset >= 0) {
+                if ((entry.get(p + 3) & TYPE_MASK) != typeOf(key)) return null;
+                final ByteBuffer data = slice(entry, p + offset);
+                final CRC32 crc = new CRC32();
+                crc.update(data.duplicate());
+                if ((int) crc.getValue() != entry.getInt(p + 16)) return null;
+                return data;
+            }
+            if (hasTimeInfo(entry)) return slice(entry, p + TIME_INFO_LEN);
+            return entry.asReadOnlyBuffer();
         }
 
-        private static boolean hasTimeInfo(final byte[] data) {
-            return data != null
-                    && data.length >= TIME_INFO_LEN
-                    && data[0] == '_'
-                    && data[1] == '$'
-                    && data[12] == '$'
-                    && data[13] == '_';
+        private static boolean isDeflated(final ByteBuffer entry) {
+            return getDataOffset(entry) >= 0
+                    && (entry.get(entry.position() + 3) & FLAG_DEFLATED) != 0;
         }
-    }
-
-    ///////////////////////////////////////////////////////////////////////////
-    // other utils methods
-    ///////////////////////////////////////////////////////////////////////////
-
-    private static byte[] string2Bytes(final String string) {
-        if (string == null) return null;
-        return string.getBytes();
-    }
 
-    private static String bytes2String(final byte[] bytes) {
-        if (bytes == null) return null;
-        return new String(bytes);
-    }
-
-    private static byte[] jsonObject2Bytes(final JSONObject jsonObject) {
-        if (jsonObject == null) return null;
-        return jsonObject.toString().getBytes();
-    }
+        private static ByteBuffer slice(final ByteBuffer entry, final int from) {
+            ByteBuffer dup = entry.asReadOnlyBuffer();
+            dup.position(from);
+            return dup.slice();
+        }
 
-    private static JSONObject bytes2JSONObject(final byte[] bytes) {
-        if (bytes == null) return null;
-        try {
-            return new JSONObject(new String(bytes));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        /**
+         * Return the offset of data from the start of entry, or -1 if there is no header.
+         */
+        private static int getDataOffset(final ByteBuffer entry) {
+            final int p = entry.position();
+            if (entry.remaining() < HEADER_LEN_V1
+                    || entry.get(p) != MAGIC_0
+                    || entry.get(p + 1) != MAGIC_1) {
+                return -1;
+            }
+            final int offset;
+            final byte version = entry.get(p + 2);
+            if (version == VERSION && entry.remaining() >= HEADER_LEN) {
+                offset = HEADER_LEN + (entry.getShort(p + 20) & 0xFFFF);
+            } else if (version == VERSION_1) {
+                offset = HEADER_LEN_V1;
+            } else {
+                return -1;
+            }
+            return entry.getInt(p + 12) == entry.remaining() - offset ? offset : -1;
         }
-    }
 
-    private static byte[] jsonArray2Bytes(final JSONArray jsonArray) {
-        if (jsonArray == null) return null;
-        return jsonArray.toString().getBytes();
-    }
+        /**
+         * Return the key stored in the header of the file, null if it has none.
+         */
+        private static String readKey(final File file) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() < HEADER_LEN) return null;
+                final byte[] header = new byte[HEADER_LEN];
+                raf.readFully(header);
+                if (header[0] != MAGIC_0 || header[1] != MAGIC_1 || header[2] != VERSION) {
+                    return null;
+                }
+                final int keyLength = ByteBuffer.wrap(header).getShort(20) & 0xFFFF;
+                if (keyLength == 0 || HEADER_LEN + keyLength > raf.length()) return null;
+                final byte[] keyBytes = new byte[keyLength];
+                raf.readFully(keyBytes);
+                return new String(keyBytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return null;
+            }
+        }
 
-    private static JSONArray bytes2JSONArray(final byte[] bytes) {
-        if (bytes == null) return null;
-        try {
-            return new JSONArray(new String(bytes));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        private static boolean hasTimeInfo(final ByteBuffer entry) {
+            final int p = entry.position();
+            return entry.remaining() >= TIME_INFO_LEN
+                    && entry.get(p) == '_'
+                    && entry.get(p + 1) == '$'
+                    && entry.get(p + 12) == '$'
+                    && entry.get(p + 13) == '_';
         }
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // other utils methods
+    ///////////////////////////////////////////////////////////////////////////
+
     private static byte[] parcelable2Bytes(final Parcelable parcelable) {
         if (parcelable == null) return null;
         Parcel parcel = Parcel.obtain();
@@ -967,67 +1697,12 @@ public final class CacheDiskUtils implements CacheConstants {
         return result;
     }
 
-    private static byte[] serializable2Bytes(final Serializable serializable) {
-        if (serializable == null) return null;
-        ByteArrayOutputStream baos;
-        ObjectOutputStream oos = null;
-        try {
-            oos = new ObjectOutputStream(baos = new ByteArrayOutputStream());
-            oos.writeObject(serializable);
-            return baos.toByteArray();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            try {
-                if (oos != null) {
-                    oos.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    private byte[] drawable2Bytes(final Drawable drawable) {
+        return drawable == null ? null : mCodecs.bitmap2Bytes(drawable2Bitmap(drawable));
     }
 
-    private static Object bytes2Object(final byte[] bytes) {
-        if (bytes == null) return null;
-        ObjectInputStream ois = null;
-        try {
-            ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
-            return ois.readObject();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            try {
-                if (ois != null) {
-                    ois.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private static byte[] bitmap2Bytes(final Bitmap bitmap) {
-        if (bitmap == null) return null;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-        return baos.toByteArray();
-    }
-
-    private static Bitmap bytes2Bitmap(final byte[] bytes) {
-        return (bytes == null || bytes.length <= 0)
-                ? null
-                : BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
-
-    private static byte[] drawable2Bytes(final Drawable drawable) {
-        return drawable == null ? null : bitmap2Bytes(drawable2Bitmap(drawable));
-    }
-
-    private static Drawable bytes2Drawable(final byte[] bytes) {
-        return bytes == null ? null : bitmap2Drawable(bytes2Bitmap(bytes));
+    private Drawable bytes2Drawable(final byte[] bytes) {
+        return bytes == null ? null : bitmap2Drawable(mCodecs.bytes2Bitmap(bytes));
     }
 
     private static Bitmap drawable2Bitmap(final Drawable drawable) {
@@ -1068,14 +1743,24 @@ public final class CacheDiskUtils implements CacheConstants {
     }
 
 
-    private static void writeFileFromBytes(final File file, final byte[] bytes) {
+    private static boolean writeFileFromBytes(final File file, final byte[]... bytes) {
         FileChannel fc = null;
         try {
             fc = new FileOutputStream(file, false).getChannel();
-            fc.write(ByteBuffer.wrap(bytes));
+            final ByteBuffer[] buffers = new ByteBuffer[bytes.length];
+            long remaining = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                buffers[i] = ByteBuffer.wrap(bytes[i]);
+                remaining += bytes[i].length;
+            }
+            while (remaining > 0) {
+                remaining -= fc.write(buffers);
+            }
             fc.force(true);
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         } finally {
             try {
                 if (fc != null) {
@@ -1088,14 +1773,33 @@ public final class CacheDiskUtils implements CacheConstants {
     }
 
     private static byte[] readFile2Bytes(final File file) {
+        ByteBuffer buffer = readFile2Buffer(file);
+        if (buffer == null) return null;
+        if (buffer.hasArray() && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * Small files are read into an exactly sized heap buffer, large ones are mapped.
+     */
+    private static ByteBuffer readFile2Buffer(final File file) {
         FileChannel fc = null;
         try {
             fc = new RandomAccessFile(file, "r").getChannel();
-            int size = (int) fc.size();
-            MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0, size).load();
-            byte[] data = new byte[size];
-            mbb.get(data, 0, size);
-            return data;
+            final long size = fc.size();
+            if (size > MAP_THRESHOLD) {
+                return fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (fc.read(buffer) < 0) break;
+            }
+            buffer.flip();
+            return buffer;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -433,6 +433,15 @@ public final class CacheDoubleStaticUtils {
         return getCacheMemoryCount(getDefaultCacheDoubleUtils());
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats() {
+        return getStats(getDefaultCacheDoubleUtils());
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -947,6 +956,16 @@ public final class CacheDoubleStaticUtils {
         return cacheDoubleUtils.getCacheMemoryCount();
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats(@NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        return cacheDoubleUtils.getStats();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -13,8 +13,10 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 二级缓存相关。
@@ -26,10 +28,30 @@ import java.util.Map;
 @SuppressWarnings("unused")
 public final class CacheDoubleUtils implements CacheConstants {
 
-    private static final Map<String, CacheDoubleUtils> CACHE_MAP = new HashMap<>();
+    private static final Map<String, CacheDoubleUtils> CACHE_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * Returned by {@link #getPending(String, Class)} if no disk write of the key is pending.
+     */
+    private static final Object NOT_PENDING = new Object();
+
+    /**
+     * The types put on disk, in the order {@link CacheDiskUtils} looks an object up.
+     */
+    private static final Class<?>[] DISK_TYPES = {
+            byte[].class, String.class, JSONObject.class, JSONArray.class, Bitmap.class,
+            Drawable.class, Serializable.class, Parcelable.class
+    };
 
     private final CacheMemoryUtils mCacheMemoryUtils;
     private final CacheDiskUtils mCacheDiskUtils;
+    private final int mWriteBehindCapacity;
+    private final ConcurrentHashMap<String, PendingWrite> mPendingWrites =
+            new ConcurrentHashMap<>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private final Object mDiskWriteLock = new Object();
+    private final ConcurrentHashMap<String, LoadCall> mLoadCalls = new ConcurrentHashMap<>();
+    private final CacheStats mStats;
 
     /**
      * Return the single {@link CacheDoubleUtils} instance.
@@ -49,13 +71,34 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public static CacheDoubleUtils getInstance(@NonNull final CacheMemoryUtils cacheMemoryUtils,
                                                @NonNull final CacheDiskUtils cacheDiskUtils) {
-        final String cacheKey = cacheDiskUtils.toString() + "_" + cacheMemoryUtils.toString();
+        return getInstance(cacheMemoryUtils, cacheDiskUtils, 0);
+    }
+
+    /**
+     * Return the single {@link CacheDoubleUtils} instance.
+     * <p>With write-behind, puts return once the memory cache is updated and the disk cache
+     * is written in background. Repeated writes of a key before it reaches disk are
+     * coalesced into the last one, and the caller writes disk itself while
+     * {@code writeBehindCapacity} keys are pending.</p>
+     *
+     * @param cacheMemoryUtils    The instance of {@link CacheMemoryUtils}.
+     * @param cacheDiskUtils      The instance of {@link CacheDiskUtils}.
+     * @param writeBehindCapacity The max count of pending disk writes, 0 to write disk on
+     *                            the caller's thread.
+     * @return the single {@link CacheDoubleUtils} instance
+     */
+    public static CacheDoubleUtils getInstance(@NonNull final CacheMemoryUtils cacheMemoryUtils,
+                                               @NonNull final CacheDiskUtils cacheDiskUtils,
+                                               final int writeBehindCapacity) {
+        String cacheKey = cacheDiskUtils.toString() + "_" + cacheMemoryUtils.toString();
+        if (writeBehindCapacity > 0) cacheKey += "_" + writeBehindCapacity;
         CacheDoubleUtils cache = CACHE_MAP.get(cacheKey);
         if (cache == null) {
             synchronized (CacheDoubleUtils.class) {
                 cache = CACHE_MAP.get(cacheKey);
                 if (cache == null) {
-                    cache = new CacheDoubleUtils(cacheMemoryUtils, cacheDiskUtils);
+                    cache = new CacheDoubleUtils(cacheMemoryUtils, cacheDiskUtils,
+                            Math.max(0, writeBehindCapacity));
                     CACHE_MAP.put(cacheKey, cache);
                 }
             }
@@ -63,9 +106,13 @@ public final class CacheDoubleUtils implements CacheConstants {
         return cache;
     }
 
-    private CacheDoubleUtils(CacheMemoryUtils cacheMemoryUtils, CacheDiskUtils cacheUtils) {
+    private CacheDoubleUtils(CacheMemoryUtils cacheMemoryUtils,
+                             CacheDiskUtils cacheUtils,
+                             int writeBehindCapacity) {
         mCacheMemoryUtils = cacheMemoryUtils;
         mCacheDiskUtils = cacheUtils;
+        mWriteBehindCapacity = writeBehindCapacity;
+        mStats = new CacheStats("double_" + cacheUtils + "_" + cacheMemoryUtils, null);
     }
 
 
@@ -92,7 +139,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, byte[] value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, byte[].class);
     }
 
     /**
@@ -114,8 +161,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public byte[] getBytes(@NonNull final String key, final byte[] defaultValue) {
         byte[] obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getBytes(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, byte[].class);
+        if (pending instanceof byte[]) return hit((byte[]) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getBytes(key, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -141,7 +191,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final String value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, String.class);
     }
 
     /**
@@ -163,8 +213,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public String getString(@NonNull final String key, final String defaultValue) {
         String obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getString(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, String.class);
+        if (pending instanceof String) return hit((String) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getString(key, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -192,7 +245,7 @@ public final class CacheDoubleUtils implements CacheConstants {
                     final JSONObject value,
                     final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, JSONObject.class);
     }
 
     /**
@@ -214,8 +267,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public JSONObject getJSONObject(@NonNull final String key, final JSONObject defaultValue) {
         JSONObject obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getJSONObject(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, JSONObject.class);
+        if (pending instanceof JSONObject) return hit((JSONObject) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getJSONObject(key, null), defaultValue);
     }
 
 
@@ -242,7 +298,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final JSONArray value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, JSONArray.class);
     }
 
     /**
@@ -264,8 +320,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public JSONArray getJSONArray(@NonNull final String key, final JSONArray defaultValue) {
         JSONArray obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getJSONArray(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, JSONArray.class);
+        if (pending instanceof JSONArray) return hit((JSONArray) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getJSONArray(key, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -291,7 +350,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final Bitmap value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, Bitmap.class);
     }
 
     /**
@@ -313,8 +372,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public Bitmap getBitmap(@NonNull final String key, final Bitmap defaultValue) {
         Bitmap obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getBitmap(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, Bitmap.class);
+        if (pending instanceof Bitmap) return hit((Bitmap) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getBitmap(key, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -340,7 +402,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final Drawable value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, Drawable.class);
     }
 
     /**
@@ -362,8 +424,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public Drawable getDrawable(@NonNull final String key, final Drawable defaultValue) {
         Drawable obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getDrawable(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, Drawable.class);
+        if (pending instanceof Drawable) return hit((Drawable) pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getDrawable(key, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -389,7 +454,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final Parcelable value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, Parcelable.class);
     }
 
     /**
@@ -418,8 +483,14 @@ public final class CacheDoubleUtils implements CacheConstants {
                                @NonNull final Parcelable.Creator<T> creator,
                                final T defaultValue) {
         T value = mCacheMemoryUtils.get(key);
-        if (value != null) return value;
-        return mCacheDiskUtils.getParcelable(key, creator, defaultValue);
+        if (value != null) return hit(value);
+        Object pending = getPending(key, Parcelable.class);
+        if (pending instanceof Parcelable) {
+            //noinspection unchecked
+            return hit((T) pending);
+        }
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getParcelable(key, creator, null), defaultValue);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -445,7 +516,7 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void put(@NonNull final String key, final Serializable value, final int saveTime) {
         mCacheMemoryUtils.put(key, value, saveTime);
-        mCacheDiskUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, Serializable.class);
     }
 
     /**
@@ -467,8 +538,11 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public Object getSerializable(@NonNull final String key, final Object defaultValue) {
         Object obj = mCacheMemoryUtils.get(key);
-        if (obj != null) return obj;
-        return mCacheDiskUtils.getSerializable(key, defaultValue);
+        if (obj != null) return hit(obj);
+        Object pending = getPending(key, Serializable.class);
+        if (pending instanceof Serializable) return hit(pending);
+        if (pending == null) return miss(defaultValue);
+        return diskResult(mCacheDiskUtils.getSerializable(key, null), defaultValue);
     }
 
     /**
@@ -498,6 +572,42 @@ public final class CacheDoubleUtils implements CacheConstants {
         return mCacheMemoryUtils.getCacheCount();
     }
 
+    /**
+     * Return the snapshot of stats of both tiers together, a hit is a value found in either.
+     *
+     * @return the snapshot of stats
+     */
+    public CacheStats.Snapshot getStats() {
+        return mStats.snapshot();
+    }
+
+    /**
+     * Return the snapshot of stats of the memory tier.
+     *
+     * @return the snapshot of stats of the memory tier
+     */
+    public CacheStats.Snapshot getMemoryStats() {
+        return mCacheMemoryUtils.getStats();
+    }
+
+    /**
+     * Return the snapshot of stats of the disk tier.
+     *
+     * @return the snapshot of stats of the disk tier
+     */
+    public CacheStats.Snapshot getDiskStats() {
+        return mCacheDiskUtils.getStats();
+    }
+
+    /**
+     * Return the count of disk writes not done yet.
+     *
+     * @return the count of disk writes not done yet
+     */
+    public int getPendingWriteCount() {
+        return mPendingWrites.size();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -505,7 +615,9 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void remove(@NonNull String key) {
         mCacheMemoryUtils.remove(key);
-        mCacheDiskUtils.remove(key);
+        for (Class<?> type : DISK_TYPES) {
+            enqueue(new PendingWrite(key, null, type, -1));
+        }
     }
 
     /**
@@ -513,6 +625,298 @@ public final class CacheDoubleUtils implements CacheConstants {
      */
     public void clear() {
         mCacheMemoryUtils.clear();
-        mCacheDiskUtils.clear();
+        synchronized (mDiskWriteLock) {
+            mPendingWrites.clear();
+            mCacheDiskUtils.clear();
+        }
+    }
+
+    /**
+     * Write all of the pending disk writes on the caller's thread.
+     */
+    public void flush() {
+        drain();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // load
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the value in cache, or load it if neither memory nor disk has it.
+     * <p>Concurrent calls of the same key share one lookup and one load. A value found on
+     * disk is put in memory, a loaded value is put in both.</p>
+     * <p>Parcelable values are not read back from disk, they are loaded again.</p>
+     *
+     * @param key    The key of cache.
+     * @param loader The loader of value.
+     * @param <T>    The value type.
+     * @return the value if cache exists or the loaded value otherwise
+     */
+    public <T> T getOrLoad(@NonNull final String key, @NonNull final Loader<T> loader) {
+        return getOrLoad(key, -1, loader);
+    }
+
+    /**
+     * Return the value in cache, or load it if neither memory nor disk has it.
+     *
+     * @param key      The key of cache.
+     * @param saveTime The save time of loaded value, in seconds.
+     * @param loader   The loader of value.
+     * @param <T>      The value type.
+     * @return the value if cache exists or the loaded value otherwise
+     * @see #getOrLoad(String, Loader)
+     */
+    public <T> T getOrLoad(@NonNull final String key,
+                           final int saveTime,
+                           @NonNull final Loader<T> loader) {
+        T value = mCacheMemoryUtils.get(key);
+        if (value != null) return hit(value);
+        final LoadCall call = new LoadCall();
+        final LoadCall running = mLoadCalls.putIfAbsent(key, call);
+        if (running != null) {
+            // the caller didn't load, a shared value counts as a hit
+            //noinspection unchecked
+            value = (T) running.await();
+            return value != null ? hit(value) : miss(null);
+        }
+        try {
+            //noinspection unchecked
+            value = (T) load(key, saveTime, loader);
+            call.set(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.fail(e);
+            throw e;
+        } finally {
+            mLoadCalls.remove(key, call);
+        }
+    }
+
+    private Object load(final String key, final int saveTime, final Loader<?> loader) {
+        // another caller may have loaded it between our miss and taking the call
+        Object value = mCacheMemoryUtils.get(key);
+        if (value != null) return hit(value);
+        boolean pending = false;
+        for (Class<?> type : DISK_TYPES) {
+            final PendingWrite write = mPendingWrites.get(CacheDiskUtils.getDiskKey(key, type));
+            if (write == null) continue;
+            pending = true;
+            if (write.value == null || write.saveTime() == 0) continue;
+            mCacheMemoryUtils.put(key, write.value, write.saveTime());
+            return hit(write.value);
+        }
+        // removed or due but maybe still on disk
+        if (pending) return loadValue(key, saveTime, loader);
+        final long[] dueTime = {-1};
+        value = mCacheDiskUtils.getObject(key, dueTime);
+        if (value != null) {
+            mCacheMemoryUtils.put(key, value, toSaveTime(dueTime[0]));
+            return hit(value);
+        }
+        return loadValue(key, saveTime, loader);
+    }
+
+    private Object loadValue(final String key, final int saveTime, final Loader<?> loader) {
+        mStats.recordMiss();
+        final long start = System.nanoTime();
+        Object value = null;
+        try {
+            value = loader.load(key);
+        } finally {
+            // a loader that throws or finds nothing is a failure
+            mStats.recordLoad(value != null, System.nanoTime() - start);
+        }
+        if (value == null) return null;
+        mCacheMemoryUtils.put(key, value, saveTime);
+        putDisk(key, value, saveTime, typeOf(value));
+        return value;
+    }
+
+    private <T> T hit(final T value) {
+        mStats.recordHit();
+        return value;
+    }
+
+    private <T> T miss(final T defaultValue) {
+        mStats.recordMiss();
+        return defaultValue;
+    }
+
+    private <T> T diskResult(final T value, final T defaultValue) {
+        return value == null ? miss(defaultValue) : hit(value);
+    }
+
+    private static Class<?> typeOf(final Object value) {
+        if (value instanceof byte[]) return byte[].class;
+        if (value instanceof String) return String.class;
+        if (value instanceof JSONObject) return JSONObject.class;
+        if (value instanceof JSONArray) return JSONArray.class;
+        if (value instanceof Bitmap) return Bitmap.class;
+        if (value instanceof Drawable) return Drawable.class;
+        if (value instanceof Parcelable) return Parcelable.class;
+        if (value instanceof Serializable) return Serializable.class;
+        return null;
+    }
+
+    /**
+     * 加载缓存中没有的值。
+     *
+     * @param <T> The value type.
+     */
+    public interface Loader<T> {
+
+        /**
+         * Return the value of key, null if it doesn't exist.
+         *
+         * @param key The key of cache.
+         * @return the value of key
+         */
+        T load(@NonNull String key);
+    }
+
+    private static final class LoadCall {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Object value;
+        private Throwable error;
+
+        void set(Object value) {
+            this.value = value;
+            latch.countDown();
+        }
+
+        void fail(Throwable error) {
+            this.error = error;
+            latch.countDown();
+        }
+
+        Object await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (error instanceof RuntimeException) throw (RuntimeException) error;
+            if (error instanceof Error) throw (Error) error;
+            return value;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // write-behind
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void putDisk(final String key,
+                         final Object value,
+                         final int saveTime,
+                         final Class<?> type) {
+        if (value == null || type == null) return;
+        enqueue(new PendingWrite(key, value, type, saveTime < 0
+                ? -1
+                : System.currentTimeMillis() + saveTime * 1000L));
+    }
+
+    private void enqueue(final PendingWrite write) {
+        if (mWriteBehindCapacity == 0) {
+            // no write-behind, nothing to order against
+            write.writeTo(mCacheDiskUtils);
+            return;
+        }
+        // each type of key is a file of its own, only writes of the same type coalesce
+        final String diskKey = CacheDiskUtils.getDiskKey(write.key, write.type);
+        if (mPendingWrites.size() >= mWriteBehindCapacity
+                && !mPendingWrites.containsKey(diskKey)) {
+            // the queue is full, slow the caller down rather than drop the write
+            synchronized (mDiskWriteLock) {
+                mPendingWrites.remove(diskKey);
+                write.writeTo(mCacheDiskUtils);
+            }
+            return;
+        }
+        mPendingWrites.put(diskKey, write);
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            CacheDiskUtils.DISK_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mDrainScheduled.set(false);
+                    drain();
+                }
+            });
+        }
+    }
+
+    private void drain() {
+        for (String diskKey : mPendingWrites.keySet()) {
+            synchronized (mDiskWriteLock) {
+                PendingWrite write = mPendingWrites.get(diskKey);
+                if (write == null) continue;
+                write.writeTo(mCacheDiskUtils);
+                // keep a newer write of the key for the next round
+                mPendingWrites.remove(diskKey, write);
+            }
+        }
+    }
+
+    /**
+     * Return the value of the pending disk write of key and type, null if the write is a
+     * remove or the value is due, {@link #NOT_PENDING} if no write is pending.
+     */
+    private Object getPending(final String key, final Class<?> type) {
+        PendingWrite write = mPendingWrites.get(CacheDiskUtils.getDiskKey(key, type));
+        if (write == null) return NOT_PENDING;
+        if (write.dueTime != -1 && write.dueTime < System.currentTimeMillis()) return null;
+        return write.value;
+    }
+
+    private static int toSaveTime(final long dueTime) {
+        if (dueTime == -1) return -1;
+        return (int) Math.max(0, (dueTime - System.currentTimeMillis() + 999) / 1000);
+    }
+
+    private static final class PendingWrite {
+        final String key;
+        final Object value;
+        final Class<?> type;
+        final long dueTime;
+
+        PendingWrite(String key, Object value, Class<?> type, long dueTime) {
+            this.key = key;
+            this.value = value;
+            this.type = type;
+            this.dueTime = dueTime;
+        }
+
+        int saveTime() {
+            return toSaveTime(dueTime);
+        }
+
+        void writeTo(final CacheDiskUtils disk) {
+            final int saveTime = saveTime();
+            if (value == null || saveTime == 0) {
+                // removed or due already, only drop what an earlier put of this type left
+                disk.remove(key, type);
+            } else if (type == byte[].class) {
+                disk.put(key, (byte[]) value, saveTime);
+            } else if (type == String.class) {
+                disk.put(key, (String) value, saveTime);
+            } else if (type == JSONObject.class) {
+                disk.put(key, (JSONObject) value, saveTime);
+            } else if (type == JSONArray.class) {
+                disk.put(key, (JSONArray) value, saveTime);
+            } else if (type == Bitmap.class) {
+                disk.put(key, (Bitmap) value, saveTime);
+            } else if (type == Drawable.class) {
+                disk.put(key, (Drawable) value, saveTime);
+            } else if (type == Parcelable.class) {
+                disk.put(key, (Parcelable) value, saveTime);
+            } else if (type == Serializable.class) {
+                disk.put(key, (Serializable) value, saveTime);
+            }
+        }
     }
 }
@@ -77,6 +77,15 @@ public final class CacheMemoryStaticUtils {
         return getCacheCount(getDefaultCacheMemoryUtils());
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats() {
+        return getStats(getDefaultCacheMemoryUtils());
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -164,6 +173,16 @@ public final class CacheMemoryStaticUtils {
         return cacheMemoryUtils.getCacheCount();
     }
 
+    /**
+     * Return the snapshot of stats.
+     *
+     * @param cacheMemoryUtils The instance of {@link CacheMemoryUtils}.
+     * @return the snapshot of stats
+     */
+    public static CacheStats.Snapshot getStats(@NonNull final CacheMemoryUtils cacheMemoryUtils) {
+        return cacheMemoryUtils.getStats();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -1,13 +1,16 @@
 package com.huaxia.xlib.cache;
 
+import android.graphics.Bitmap;
+
 import androidx.annotation.NonNull;
 import androidx.collection.LruCache;
 
 
 import com.huaxia.xlib.constants.CacheConstants;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 内存缓存相关。
@@ -21,10 +24,11 @@ public final class CacheMemoryUtils implements CacheConstants {
 
     private static final int DEFAULT_MAX_COUNT = 256;
 
-    private static final Map<String, CacheMemoryUtils> CACHE_MAP = new HashMap<>();
+    private static final Map<String, CacheMemoryUtils> CACHE_MAP = new ConcurrentHashMap<>();
 
     private final String mCacheKey;
-    private final LruCache<String, CacheValue> mMemoryCache;
+    private final MemoryCacheEngine mMemoryCache;
+    private final CacheStats mStats;
 
     /**
      * Return the single {@link CacheMemoryUtils} instance.
@@ -51,6 +55,7 @@ public final class CacheMemoryUtils implements CacheConstants {
      * @param cacheKey The key of cache.
      * @param maxCount The max count of cache.
      * @return the single {@link CacheMemoryUtils} instance
+     * @throws IllegalStateException if the key is taken by a concurrent cache
      */
     public static CacheMemoryUtils getInstance(final String cacheKey, final int maxCount) {
         CacheMemoryUtils cache = CACHE_MAP.get(cacheKey);
@@ -58,18 +63,77 @@ public final class CacheMemoryUtils implements CacheConstants {
             synchronized (CacheMemoryUtils.class) {
                 cache = CACHE_MAP.get(cacheKey);
                 if (cache == null) {
-                    cache = new CacheMemoryUtils(cacheKey, new LruCache<String,
-                            CacheValue>(maxCount));
+                    cache = new CacheMemoryUtils(cacheKey, new LruCacheEngine(maxCount));
+                    CACHE_MAP.put(cacheKey, cache);
+                }
+            }
+        }
+        checkEngine(cache, LruCacheEngine.class);
+        return cache;
+    }
+
+    /**
+     * Return the single {@link CacheMemoryUtils} instance backed by the concurrent cache.
+     * <p>The cache is split into segments with their own lock, sized by weight instead of
+     * count, admits new values by access frequency (W-TinyLFU) and removes due values on a
+     * timer wheel in background.</p>
+     *
+     * @param cacheKey  The key of cache.
+     * @param maxWeight The max weight of cache.
+     * @param weigher   The weigher of cache, {@link Weigher#BYTES} to size by bytes.
+     * @return the single {@link CacheMemoryUtils} instance
+     * @throws IllegalStateException if the key is taken by a count-bounded cache
+     */
+    public static CacheMemoryUtils getInstance(final String cacheKey,
+                                               final long maxWeight,
+                                               @NonNull final Weigher weigher) {
+        CacheMemoryUtils cache = CACHE_MAP.get(cacheKey);
+        if (cache == null) {
+            synchronized (CacheMemoryUtils.class) {
+                cache = CACHE_MAP.get(cacheKey);
+                if (cache == null) {
+                    cache = new CacheMemoryUtils(cacheKey,
+                            new ConcurrentMemoryCache(maxWeight, weigher));
                     CACHE_MAP.put(cacheKey, cache);
                 }
             }
         }
+        checkEngine(cache, ConcurrentMemoryCache.class);
         return cache;
     }
 
-    private CacheMemoryUtils(String cacheKey, LruCache<String, CacheValue> memoryCache) {
+    private static void checkEngine(final CacheMemoryUtils cache,
+                                    final Class<? extends MemoryCacheEngine> engine) {
+        if (cache.mMemoryCache.getClass() != engine) {
+            throw new IllegalStateException("cache key " + cache.mCacheKey
+                    + " is already taken by a " + cache.mMemoryCache.getClass().getSimpleName());
+        }
+    }
+
+    private CacheMemoryUtils(String cacheKey, final MemoryCacheEngine memoryCache) {
         mCacheKey = cacheKey;
         mMemoryCache = memoryCache;
+        mStats = new CacheStats("memory_" + this, new CacheStats.Source() {
+            @Override
+            public long getEvictionCount() {
+                return memoryCache.evictionCount();
+            }
+
+            @Override
+            public long getExpiredCount() {
+                return memoryCache.expiredCount();
+            }
+
+            @Override
+            public int getCacheCount() {
+                return memoryCache.size();
+            }
+
+            @Override
+            public long getCacheSize() {
+                return memoryCache.weight();
+            }
+        });
     }
 
     @Override
@@ -97,7 +161,7 @@ public final class CacheMemoryUtils implements CacheConstants {
     public void put(@NonNull final String key, final Object value, int saveTime) {
         if (value == null) return;
         long dueTime = saveTime < 0 ? -1 : System.currentTimeMillis() + saveTime * 1000;
-        mMemoryCache.put(key, new CacheValue(dueTime, value));
+        mMemoryCache.put(key, value, dueTime);
     }
 
     /**
@@ -120,14 +184,14 @@ public final class CacheMemoryUtils implements CacheConstants {
      * @return the value if cache exists or defaultValue otherwise
      */
     public <T> T get(@NonNull final String key, final T defaultValue) {
-        CacheValue val = mMemoryCache.get(key);
-        if (val == null) return defaultValue;
-        if (val.dueTime == -1 || val.dueTime >= System.currentTimeMillis()) {
-            //noinspection unchecked
-            return (T) val.value;
+        Object val = mMemoryCache.get(key);
+        if (val == null) {
+            mStats.recordMiss();
+            return defaultValue;
         }
-        mMemoryCache.remove(key);
-        return defaultValue;
+        mStats.recordHit();
+        //noinspection unchecked
+        return (T) val;
     }
 
     /**
@@ -139,6 +203,24 @@ public final class CacheMemoryUtils implements CacheConstants {
         return mMemoryCache.size();
     }
 
+    /**
+     * Return the weight of cache, the count if the cache isn't weighed.
+     *
+     * @return the weight of cache
+     */
+    public long getCacheWeight() {
+        return mMemoryCache.weight();
+    }
+
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public CacheStats.Snapshot getStats() {
+        return mStats.snapshot();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -146,16 +228,103 @@ public final class CacheMemoryUtils implements CacheConstants {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public Object remove(@NonNull final String key) {
-        CacheValue remove = mMemoryCache.remove(key);
-        if (remove == null) return null;
-        return remove.value;
+        return mMemoryCache.remove(key);
     }
 
     /**
      * Clear all of the cache.
      */
     public void clear() {
-        mMemoryCache.evictAll();
+        mMemoryCache.clear();
+    }
+
+    /**
+     * 计算缓存值的权重。
+     */
+    public interface Weigher {
+
+        /**
+         * Size by the bytes the value holds, 64 for the values of unknown type.
+         */
+        Weigher BYTES = new Weigher() {
+            @Override
+            public int weigh(String key, Object value) {
+                if (value instanceof byte[]) return ((byte[]) value).length;
+                if (value instanceof String) return ((String) value).length() * 2;
+                if (value instanceof Bitmap) return ((Bitmap) value).getAllocationByteCount();
+                return 64;
+            }
+        };
+
+        /**
+         * Return the weight of value.
+         *
+         * @param key   The key of cache.
+         * @param value The value of cache.
+         * @return the weight of value, must not be negative
+         */
+        int weigh(String key, Object value);
+    }
+
+    /**
+     * The default engine, counts values and expires them lazily in {@link #get(String)}.
+     */
+    private static final class LruCacheEngine implements MemoryCacheEngine {
+        private final LruCache<String, CacheValue> cache;
+        private final LongAdder expiredCount = new LongAdder();
+
+        LruCacheEngine(int maxCount) {
+            cache = new LruCache<>(maxCount);
+        }
+
+        @Override
+        public void put(String key, Object value, long dueTime) {
+            cache.put(key, new CacheValue(dueTime, value));
+        }
+
+        @Override
+        public Object get(String key) {
+            CacheValue val = cache.get(key);
+            if (val == null) return null;
+            if (val.dueTime == -1 || val.dueTime >= System.currentTimeMillis()) {
+                return val.value;
+            }
+            cache.remove(key);
+            expiredCount.increment();
+            return null;
+        }
+
+        @Override
+        public Object remove(String key) {
+            CacheValue remove = cache.remove(key);
+            if (remove == null) return null;
+            return remove.value;
+        }
+
+        @Override
+        public void clear() {
+            cache.evictAll();
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
+
+        @Override
+        public long weight() {
+            return cache.size();
+        }
+
+        @Override
+        public long evictionCount() {
+            return cache.evictionCount();
+        }
+
+        @Override
+        public long expiredCount() {
+            return expiredCount.sum();
+        }
     }
 
     private static final class CacheValue {
@@ -0,0 +1,357 @@
+package com.huaxia.xlib.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.huaxia.xlib.common.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存统计。
+ * <p>每个 {@link CacheMemoryUtils}、{@link CacheDiskUtils} 和 {@link CacheDoubleUtils} 实例
+ * 各有一份，计数用 {@link LongAdder} 分散竞争，耗时记在 {@link LatencyHistogram} 里。
+ * {@link #snapshot()} 得到某一时刻的只读快照，{@link #setLogInterval(long)} 定时把所有实例
+ * 的快照打到 logcat。</p>
+ *
+ * @author xzy
+ */
+public final class CacheStats {
+
+    private static final String TAG = "CacheStats";
+
+    private static final Map<String, CacheStats> STATS_MAP = new ConcurrentHashMap<>();
+    /**
+     * Created by the first {@link #setLogInterval(long)}. Not on
+     * {@link CacheDiskUtils#DISK_EXECUTOR}, the count of a disk cache still indexing blocks
+     * until it's done.
+     */
+    private static ScheduledExecutorService sLogExecutor;
+    private static ScheduledFuture<?> sLogFuture;
+
+    private final String mName;
+    private final Source mSource;
+    private final LongAdder mHitCount = new LongAdder();
+    private final LongAdder mMissCount = new LongAdder();
+    private final LongAdder mLoadSuccessCount = new LongAdder();
+    private final LongAdder mLoadFailureCount = new LongAdder();
+    private final LongAdder mExpiredCount = new LongAdder();
+    private final LongAdder mBytesRead = new LongAdder();
+    private final LongAdder mBytesWritten = new LongAdder();
+    private final LatencyHistogram mReadLatency = new LatencyHistogram();
+    private final LatencyHistogram mLoadLatency = new LatencyHistogram();
+
+    CacheStats(final String name, final Source source) {
+        mName = name;
+        mSource = source;
+        STATS_MAP.put(name, this);
+    }
+
+    /**
+     * Return the snapshot of stats of every cache instance created, by instance name.
+     *
+     * @return the snapshot of stats of every cache instance created
+     */
+    public static Map<String, Snapshot> snapshotAll() {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        for (CacheStats stats : STATS_MAP.values()) {
+            snapshots.put(stats.mName, stats.snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Log the snapshot of every cache instance periodically, one line per instance.
+     *
+     * @param intervalMillis The interval in millis, 0 or negative to stop logging.
+     */
+    public static synchronized void setLogInterval(final long intervalMillis) {
+        if (sLogFuture != null) {
+            sLogFuture.cancel(false);
+            sLogFuture = null;
+        }
+        if (intervalMillis <= 0) return;
+        if (sLogExecutor == null) {
+            sLogExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "cache-stats-log");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        sLogFuture = sLogExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (Snapshot snapshot : snapshotAll().values()) {
+                    Log.i(TAG, snapshot.toString());
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    void recordHit() {
+        mHitCount.increment();
+    }
+
+    void recordMiss() {
+        mMissCount.increment();
+    }
+
+    void recordRead(final long bytes, final long nanos) {
+        mBytesRead.add(bytes);
+        mReadLatency.record(nanos);
+    }
+
+    void recordWrite(final long bytes) {
+        mBytesWritten.add(bytes);
+    }
+
+    void recordExpired() {
+        mExpiredCount.increment();
+    }
+
+    void recordLoad(final boolean success, final long nanos) {
+        if (success) {
+            mLoadSuccessCount.increment();
+        } else {
+            mLoadFailureCount.increment();
+        }
+        mLoadLatency.record(nanos);
+    }
+
+    /**
+     * What the stats of a cache read from the cache itself, rather than count on the way.
+     */
+    interface Source {
+
+        long getEvictionCount();
+
+        long getExpiredCount();
+
+        int getCacheCount();
+
+        long getCacheSize();
+    }
+
+    /**
+     * 某一时刻的缓存统计。
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final long hitCount;
+        private final long missCount;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        private final long evictionCount;
+        private final long expiredCount;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final int cacheCount;
+        private final long cacheSize;
+        private final LatencyHistogram.Snapshot readLatency;
+        private final LatencyHistogram.Snapshot loadLatency;
+
+        private Snapshot(final CacheStats stats) {
+            final Source source = stats.mSource;
+            name = stats.mName;
+            hitCount = stats.mHitCount.sum();
+            missCount = stats.mMissCount.sum();
+            loadSuccessCount = stats.mLoadSuccessCount.sum();
+            loadFailureCount = stats.mLoadFailureCount.sum();
+            evictionCount = source == null ? 0 : source.getEvictionCount();
+            expiredCount = stats.mExpiredCount.sum()
+                    + (source == null ? 0 : source.getExpiredCount());
+            bytesRead = stats.mBytesRead.sum();
+            bytesWritten = stats.mBytesWritten.sum();
+            cacheCount = source == null ? 0 : source.getCacheCount();
+            cacheSize = source == null ? 0 : source.getCacheSize();
+            readLatency = stats.mReadLatency.snapshot();
+            loadLatency = stats.mLoadLatency.snapshot();
+        }
+
+        /**
+         * Return the name of cache instance.
+         *
+         * @return the name of cache instance
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Return the count of reads which found the value.
+         *
+         * @return the count of reads which found the value
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Return the count of reads which didn't find the value.
+         *
+         * @return the count of reads which didn't find the value
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Return the ratio of hits to all of the reads.
+         *
+         * @return the hit rate, 1 if the cache was never read
+         */
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 1.0 : (double) hitCount / total;
+        }
+
+        /**
+         * Return the count of loads which returned a value.
+         *
+         * @return the count of loads which returned a value
+         */
+        public long getLoadSuccessCount() {
+            return loadSuccessCount;
+        }
+
+        /**
+         * Return the count of loads which returned null or threw.
+         *
+         * @return the count of loads which returned null or threw
+         */
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * Return the count of values evicted to make room.
+         *
+         * @return the count of values evicted to make room
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Return the count of values removed for being due.
+         *
+         * @return the count of values removed for being due
+         */
+        public long getExpiredCount() {
+            return expiredCount;
+        }
+
+        /**
+         * Return the bytes read from the storage, disk only.
+         *
+         * @return the bytes read from the storage, disk only
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * Return the bytes written to the storage, disk only.
+         *
+         * @return the bytes written to the storage, disk only
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Return the count of cache.
+         *
+         * @return the count of cache
+         */
+        public int getCacheCount() {
+            return cacheCount;
+        }
+
+        /**
+         * Return the size of cache, bytes of disk or weight of memory.
+         *
+         * @return the size of cache
+         */
+        public long getCacheSize() {
+            return cacheSize;
+        }
+
+        /**
+         * Return the mean nanos of reading the storage, disk only.
+         *
+         * @return the mean nanos of reading the storage
+         */
+        public long getReadNanosMean() {
+            return readLatency.getMean();
+        }
+
+        /**
+         * Return the upper bound of nanos within which {@code percentile} of the reads of
+         * storage finished, disk only.
+         *
+         * @param percentile The percentile from 0 to 1, such as 0.99.
+         * @return the upper bound of nanos, precise to a power of two
+         */
+        public long getReadNanos(final double percentile) {
+            return readLatency.getPercentile(percentile);
+        }
+
+        /**
+         * Return the mean nanos of loading by loader.
+         *
+         * @return the mean nanos of loading by loader
+         */
+        public long getLoadNanosMean() {
+            return loadLatency.getMean();
+        }
+
+        /**
+         * Return the upper bound of nanos within which {@code percentile} of the loads
+         * finished.
+         *
+         * @param percentile The percentile from 0 to 1, such as 0.99.
+         * @return the upper bound of nanos, precise to a power of two
+         */
+        public long getLoadNanos(final double percentile) {
+            return loadLatency.getPercentile(percentile);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s hit=%.1f%% (%d/%d) load=%d/%d "
+                            + "load_p50=%dus load_p99=%dus read_p50=%dus read_p99=%dus "
+                            + "evicted=%d expired=%d read=%dB written=%dB count=%d size=%d",
+                    name, getHitRate() * 100, hitCount, hitCount + missCount,
+                    loadSuccessCount, loadSuccessCount + loadFailureCount,
+                    getLoadNanos(0.5) / 1000, getLoadNanos(0.99) / 1000,
+                    getReadNanos(0.5) / 1000, getReadNanos(0.99) / 1000,
+                    evictionCount, expiredCount, bytesRead, bytesWritten,
+                    cacheCount, cacheSize);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.huaxia.xlib.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分段加锁、按权重计量的内存缓存引擎。
+ * <p>每个分段是一个 W-TinyLFU：新值先进入占 1% 权重的 window LRU，挤出 window 的值进入
+ * main 的 probation 段，只有访问频率高于 probation 最老值时才能把它挤掉，再次命中后
+ * 升入 protected 段。频率由每个分段的 4 bit Count-Min Sketch 估计，并周期性减半。</p>
+ * <p>有过期时间的值挂在时间轮上，由后台线程每个 tick 主动清理。</p>
+ *
+ * @author xzy
+ */
+final class ConcurrentMemoryCache implements MemoryCacheEngine {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 64;
+
+    private static final ScheduledExecutorService SWEEPER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "cache-memory-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Segment[] mSegments;
+    private final int mSegmentMask;
+    private final CacheMemoryUtils.Weigher mWeigher;
+
+    /**
+     * Bucket i holds the keys due in a tick t with {@code t % WHEEL_SIZE == i}, a key due
+     * in a later round stays until its tick comes around.
+     */
+    @SuppressWarnings("unchecked")
+    private final Set<String>[] mWheel = new Set[WHEEL_SIZE];
+    private final AtomicBoolean mSweeping = new AtomicBoolean();
+    private long mSweptTick;
+
+    ConcurrentMemoryCache(final long maxWeight, final CacheMemoryUtils.Weigher weigher) {
+        // small caches get fewer segments, so one hot segment doesn't evict too early
+        int segments = 1;
+        while (segments < MAX_SEGMENTS && maxWeight / (segments * 2L) >= 64) {
+            segments <<= 1;
+        }
+        mSegments = new Segment[segments];
+        mSegmentMask = segments - 1;
+        for (int i = 0; i < segments; i++) {
+            mSegments[i] = new Segment(maxWeight / segments + (i < maxWeight % segments ? 1 : 0));
+        }
+        mWeigher = weigher;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            mWheel[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    @Override
+    public void put(final String key, final Object value, final long dueTime) {
+        final int weight = mWeigher.weigh(key, value);
+        if (weight < 0) throw new IllegalArgumentException("weight < 0: " + weight);
+        final int hash = spread(key.hashCode());
+        segmentFor(hash).put(key, hash, value, weight, dueTime);
+        if (dueTime >= 0) {
+            mWheel[bucketOf(dueTime)].add(key);
+            startSweeper();
+        }
+    }
+
+    @Override
+    public Object get(final String key) {
+        final int hash = spread(key.hashCode());
+        return segmentFor(hash).get(key, hash, System.currentTimeMillis());
+    }
+
+    @Override
+    public Object remove(final String key) {
+        return segmentFor(spread(key.hashCode())).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : mSegments) {
+            segment.clear();
+        }
+        for (Set<String> bucket : mWheel) {
+            bucket.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                weight += segment.totalWeight;
+            }
+        }
+        return weight;
+    }
+
+    @Override
+    public long evictionCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long expiredCount() {
+        long count = 0;
+        for (Segment segment : mSegments) {
+            synchronized (segment) {
+                count += segment.expiredCount;
+            }
+        }
+        return count;
+    }
+
+    private Segment segmentFor(final int hash) {
+        return mSegments[(hash >>> 16) & mSegmentMask];
+    }
+
+    private static int spread(final int h) {
+        int x = ((h >>> 16) ^ h) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // timer wheel
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static int bucketOf(final long dueTime) {
+        return (int) ((dueTime / TICK_MILLIS) % WHEEL_SIZE);
+    }
+
+    private void startSweeper() {
+        if (!mSweeping.compareAndSet(false, true)) return;
+        mSweptTick = System.currentTimeMillis() / TICK_MILLIS - 1;
+        SWEEPER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Expire the buckets of every tick passed since the last sweep, only runs on
+     * {@link #SWEEPER}.
+     */
+    private void sweep() {
+        final long now = System.currentTimeMillis();
+        final long tick = now / TICK_MILLIS;
+        final long from = Math.max(mSweptTick + 1, tick - WHEEL_SIZE + 1);
+        for (long t = from; t <= tick; t++) {
+            final int index = (int) (t % WHEEL_SIZE);
+            Iterator<String> it = mWheel[index].iterator();
+            while (it.hasNext()) {
+                final String key = it.next();
+                if (!segmentFor(spread(key.hashCode())).expire(key, now, index)) {
+                    it.remove();
+                }
+            }
+        }
+        mSweptTick = tick;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // segment
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node {
+        final String key;
+        final int hash;
+        Object value;
+        int weight;
+        long dueTime;
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(String key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * All fields are guarded by the segment itself.
+     */
+    private static final class Segment {
+        final HashMap<String, Node> map = new HashMap<>();
+        final Node[] queues = {newSentinel(), newSentinel(), newSentinel()};
+        final FrequencySketch sketch = new FrequencySketch();
+        final long maxWeight;
+        final long windowMax;
+        final long protectedMax;
+        long windowWeight;
+        long protectedWeight;
+        long totalWeight;
+        long evictionCount;
+        long expiredCount;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.windowMax = Math.max(1, maxWeight / 100);
+            this.protectedMax = (maxWeight - windowMax) * 4 / 5;
+        }
+
+        synchronized Object get(final String key, final int hash, final long now) {
+            sketch.increment(hash);
+            final Node node = map.get(key);
+            if (node == null) return null;
+            if (node.dueTime >= 0 && node.dueTime < now) {
+                removeNode(node);
+                expiredCount++;
+                return null;
+            }
+            onAccess(node);
+            return node.value;
+        }
+
+        synchronized void put(final String key,
+                              final int hash,
+                              final Object value,
+                              final int weight,
+                              final long dueTime) {
+            sketch.increment(hash);
+            Node node = map.get(key);
+            if (weight > maxWeight) {
+                // can never fit, and must not leave the old value behind
+                if (node != null) removeNode(node);
+                return;
+            }
+            if (node == null) {
+                if (map.size() >= sketch.capacity()) sketch.ensureCapacity(map.size() * 2);
+                node = new Node(key, hash);
+                node.queue = WINDOW;
+                map.put(key, node);
+                link(node);
+            } else {
+                addWeight(node, -node.weight);
+                node.weight = 0;
+                onAccess(node);
+            }
+            node.value = value;
+            node.weight = weight;
+            node.dueTime = dueTime;
+            addWeight(node, weight);
+            evict();
+        }
+
+        synchronized Object remove(final String key) {
+            final Node node = map.get(key);
+            if (node == null) return null;
+            removeNode(node);
+            return node.value;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            for (Node sentinel : queues) {
+                sentinel.prev = sentinel.next = sentinel;
+            }
+            windowWeight = protectedWeight = totalWeight = 0;
+        }
+
+        /**
+         * @return {@code true} if the key must stay in the wheel bucket {@code index}
+         */
+        synchronized boolean expire(final String key, final long now, final int index) {
+            final Node node = map.get(key);
+            if (node == null || node.dueTime < 0) return false;
+            if (node.dueTime < now) {
+                removeNode(node);
+                expiredCount++;
+                return false;
+            }
+            return bucketOf(node.dueTime) == index;
+        }
+
+        private void onAccess(final Node node) {
+            if (node.queue == PROBATION) {
+                unlink(node);
+                node.queue = PROTECTED;
+                link(node);
+                protectedWeight += node.weight;
+                // keep protected in bounds by demoting its eldest back to probation
+                while (protectedWeight > protectedMax) {
+                    final Node eldest = queues[PROTECTED].next;
+                    unlink(eldest);
+                    protectedWeight -= eldest.weight;
+                    eldest.queue = PROBATION;
+                    link(eldest);
+                }
+            } else {
+                unlink(node);
+                link(node);
+            }
+        }
+
+        private void evict() {
+            final Node window = queues[WINDOW];
+            while (windowWeight > windowMax && window.next != window) {
+                final Node node = window.next;
+                unlink(node);
+                windowWeight -= node.weight;
+                node.queue = PROBATION;
+                link(node);
+            }
+            final Node probation = queues[PROBATION];
+            while (totalWeight > maxWeight) {
+                Node victim = probation.next;
+                final Node candidate = probation.prev;
+                if (victim == probation) {
+                    // probation is empty, fall back to the eldest of protected then window
+                    victim = queues[PROTECTED].next != queues[PROTECTED]
+                            ? queues[PROTECTED].next
+                            : window.next;
+                } else if (victim != candidate
+                        && sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+                    // the newcomer from window isn't more popular than the eldest, reject it
+                    victim = candidate;
+                }
+                removeNode(victim);
+                evictionCount++;
+            }
+        }
+
+        private void removeNode(final Node node) {
+            map.remove(node.key);
+            unlink(node);
+            addWeight(node, -node.weight);
+        }
+
+        private void addWeight(final Node node, final long weight) {
+            totalWeight += weight;
+            if (node.queue == WINDOW) {
+                windowWeight += weight;
+            } else if (node.queue == PROTECTED) {
+                protectedWeight += weight;
+            }
+        }
+
+        private void link(final Node node) {
+            final Node sentinel = queues[node.queue];
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+        }
+
+        private static void unlink(final Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+
+        private static Node newSentinel() {
+            Node sentinel = new Node(null, 0);
+            sentinel.prev = sentinel.next = sentinel;
+            return sentinel;
+        }
+    }
+
+    /**
+     * 4-bit Count-Min Sketch with four hash functions, sixteen counters per long. All
+     * counters are halved once the sample size is reached, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEED = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private long[] table;
+        private int mask;
+        private int sampleSize;
+        private int size;
+
+        FrequencySketch() {
+            ensureCapacity(64);
+        }
+
+        int capacity() {
+            return table.length;
+        }
+
+        void ensureCapacity(final int maximum) {
+            int length = Integer.highestOneBit(Math.max(64, Math.min(maximum, 1 << 24)) - 1) << 1;
+            if (table != null && table.length >= length) return;
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * length;
+            size = 0;
+        }
+
+        int frequency(final int hash) {
+            final int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(final int hash) {
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = (start + i) << 2;
+                final long mask = 0xFL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++size == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                size /= 2;
+            }
+        }
+
+        private int indexOf(final int item, final int i) {
+            long hash = (item + SEED[i]) * SEED[i];
+            hash += hash >>> 32;
+            return ((int) hash) & mask;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.huaxia.xlib.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 磁盘缓存存储引擎。
+ * {@link CacheDiskUtils} 只负责类型转换和过期时间，实际的存取由引擎完成。
+ *
+ * @author xzy
+ */
+interface DiskCacheEngine {
+
+    /**
+     * Put the entry in cache, replacing any previous entry of the key.
+     * The stored entry is {@code header} followed by {@code data}.
+     *
+     * @param key    The key of cache.
+     * @param header The header of entry.
+     * @param data   The data of entry.
+     */
+    void put(String key, byte[] header, byte[] data);
+
+    /**
+     * Return the entry in cache, header included.
+     * <p>The buffer may be memory-mapped, callers must not write to it.</p>
+     *
+     * @param key The key of cache.
+     * @return the entry if cache exists or null otherwise
+     */
+    ByteBuffer get(String key);
+
+    /**
+     * Remove the cache by key.
+     *
+     * @param key The key of cache.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    boolean remove(String key);
+
+    /**
+     * Clear all of the cache.
+     *
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    boolean clear();
+
+    /**
+     * Return the size of cache, in bytes.
+     *
+     * @return the size of cache, in bytes
+     */
+    long getCacheSize();
+
+    /**
+     * Return the count of cache.
+     *
+     * @return the count of cache
+     */
+    int getCacheCount();
+
+    /**
+     * Return the count of entries evicted to stay in the limits.
+     *
+     * @return the count of entries evicted to stay in the limits
+     */
+    long getEvictionCount();
+}
@@ -0,0 +1,626 @@
+package com.huaxia.xlib.cache;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 单文件日志型磁盘缓存引擎。
+ * <p>所有写入都追加到同一个 journal 文件，内存中维护 key 到记录位置的索引；
+ * 删除写入墓碑记录，垃圾过多时在后台线程压缩。</p>
+ * <p>记录格式：op(1) keyLen(4) valueLen(4) crc32(4) key value</p>
+ *
+ * @author xzy
+ */
+final class DiskCacheJournal implements DiskCacheEngine {
+
+    private static final String TAG = "DiskCacheJournal";
+
+    static final String JOURNAL_NAME = "cdj_journal";
+    private static final String COMPACT_NAME = "cdj_journal.tmp";
+
+    private static final int MAGIC = 0x43444A31; // "CDJ1"
+    private static final int FILE_HEADER_LEN = 4;
+    private static final int RECORD_HEADER_LEN = 13;
+    private static final int MAX_KEY_LEN = 64 * 1024;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final long COMPACT_MIN_GARBAGE = 1024 * 1024;
+    private static final long IDLE_SYNC_DELAY = 1000;
+
+    /**
+     * The periodic sync runs on its own thread, a long compaction on
+     * {@link CacheDiskUtils#DISK_EXECUTOR} must not delay the group commit.
+     */
+    private static final ScheduledExecutorService SYNC_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "cache-journal-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final File mDir;
+    private final File mFile;
+    private final long mSizeLimit;
+    private final int mCountLimit;
+    private final long mSizeLowWater;
+    private final int mCountLowWater;
+    private final CacheDiskUtils.Durability mDurability;
+
+    /**
+     * Guarded by itself. Access order gives LRU for eviction.
+     */
+    private final LinkedHashMap<String, Entry> mIndex =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long mCacheSize;
+    private long mLiveBytes;
+    private long mEvictionCount;
+
+    /**
+     * Read lock for any IO on {@link #mChannel}, write lock for swapping or truncating it.
+     */
+    private final ReentrantReadWriteLock mChannelLock = new ReentrantReadWriteLock();
+    private final Object mAppendLock = new Object();
+    private final Object mSyncLock = new Object();
+    private final AtomicBoolean mCompacting = new AtomicBoolean();
+    private final AtomicBoolean mIdleSyncScheduled = new AtomicBoolean();
+
+    private FileChannel mChannel;
+    private volatile long mWritePos;
+    private volatile long mSyncedPos;
+    private int mUnsyncedRecords;
+    private int mGeneration;
+
+    DiskCacheJournal(final File dir,
+                     final long sizeLimit,
+                     final int countLimit,
+                     final CacheDiskUtils.Durability durability) throws IOException {
+        mDir = dir;
+        mFile = new File(dir, JOURNAL_NAME);
+        mSizeLimit = sizeLimit;
+        mCountLimit = countLimit;
+        mSizeLowWater = sizeLimit - sizeLimit / 10;
+        mCountLowWater = countLimit - countLimit / 10;
+        mDurability = durability;
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, COMPACT_NAME).delete();
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+        replay();
+        if (mDurability.mode == CacheDiskUtils.Durability.MODE_PERIODIC) {
+            SYNC_EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    mChannelLock.readLock().lock();
+                    try {
+                        sync(mWritePos);
+                    } finally {
+                        mChannelLock.readLock().unlock();
+                    }
+                }
+            }, mDurability.intervalMillis, mDurability.intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void put(final String key, final byte[] header, final byte[] data) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_LEN) {
+            // replay would take the record for corruption and drop all after it
+            Log.e(TAG, "key of " + keyBytes.length + " bytes is out of 1.." + MAX_KEY_LEN);
+            return;
+        }
+        final ByteBuffer record = encode(OP_PUT, keyBytes, header, data);
+        long end;
+        boolean needSync;
+        mChannelLock.readLock().lock();
+        try {
+            synchronized (mAppendLock) {
+                final long pos = append(record);
+                final Entry entry =
+                        new Entry(pos, record.capacity(), header.length + data.length);
+                List<String> victims;
+                synchronized (mIndex) {
+                    Entry old = mIndex.put(key, entry);
+                    if (old != null) unaccount(old);
+                    account(entry);
+                    victims = collectVictims(key);
+                }
+                for (String victim : victims) {
+                    append(encode(OP_REMOVE, victim.getBytes(StandardCharsets.UTF_8)));
+                }
+                needSync = onAppended(1 + victims.size());
+                end = mWritePos;
+            }
+            if (needSync) sync(end);
+        } catch (IOException e) {
+            Log.e(TAG, "put " + key + " failed", e);
+        } finally {
+            mChannelLock.readLock().unlock();
+        }
+        scheduleCompactIfNeeded();
+    }
+
+    @Override
+    public ByteBuffer get(final String key) {
+        mChannelLock.readLock().lock();
+        try {
+            Entry entry;
+            synchronized (mIndex) {
+                entry = mIndex.get(key);
+            }
+            if (entry == null) return null;
+            ByteBuffer data = ByteBuffer.allocate(entry.valueLen);
+            readFully(mChannel, data, entry.valuePos());
+            data.flip();
+            return data;
+        } catch (IOException e) {
+            Log.e(TAG, "get " + key + " failed", e);
+            return null;
+        } finally {
+            mChannelLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final String key) {
+        long end;
+        boolean needSync;
+        mChannelLock.readLock().lock();
+        try {
+            synchronized (mAppendLock) {
+                synchronized (mIndex) {
+                    if (!mIndex.containsKey(key)) return true;
+                }
+                append(encode(OP_REMOVE, key.getBytes(StandardCharsets.UTF_8)));
+                synchronized (mIndex) {
+                    Entry old = mIndex.remove(key);
+                    if (old != null) unaccount(old);
+                }
+                needSync = onAppended(1);
+                end = mWritePos;
+            }
+            if (needSync) sync(end);
+        } catch (IOException e) {
+            Log.e(TAG, "remove " + key + " failed", e);
+            return false;
+        } finally {
+            mChannelLock.readLock().unlock();
+        }
+        scheduleCompactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public boolean clear() {
+        mChannelLock.writeLock().lock();
+        try {
+            mChannel.truncate(FILE_HEADER_LEN);
+            mChannel.force(false);
+            mWritePos = FILE_HEADER_LEN;
+            mSyncedPos = FILE_HEADER_LEN;
+            mUnsyncedRecords = 0;
+            mGeneration++;
+            synchronized (mIndex) {
+                mIndex.clear();
+                mCacheSize = 0;
+                mLiveBytes = 0;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "clear failed", e);
+            return false;
+        } finally {
+            mChannelLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getCacheSize() {
+        synchronized (mIndex) {
+            return mCacheSize;
+        }
+    }
+
+    @Override
+    public int getCacheCount() {
+        synchronized (mIndex) {
+            return mIndex.size();
+        }
+    }
+
+    @Override
+    public long getEvictionCount() {
+        synchronized (mIndex) {
+            return mEvictionCount;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // append and durability
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Must hold the read lock and {@link #mAppendLock}.
+     */
+    private long append(final ByteBuffer record) throws IOException {
+        final long pos = mWritePos;
+        record.rewind();
+        while (record.hasRemaining()) {
+            mChannel.write(record, pos + record.position());
+        }
+        mWritePos = pos + record.capacity();
+        return pos;
+    }
+
+    /**
+     * Must hold {@link #mAppendLock}.
+     *
+     * @return {@code true} if the caller should sync before returning
+     */
+    private boolean onAppended(final int records) {
+        switch (mDurability.mode) {
+            case CacheDiskUtils.Durability.MODE_WRITE:
+                return true;
+            case CacheDiskUtils.Durability.MODE_BATCH:
+                mUnsyncedRecords += records;
+                if (mUnsyncedRecords >= mDurability.batchSize) {
+                    mUnsyncedRecords = 0;
+                    return true;
+                }
+                scheduleIdleSync();
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sync a partial batch once the writers went quiet, so it isn't left unsynced for good.
+     */
+    private void scheduleIdleSync() {
+        if (!mIdleSyncScheduled.compareAndSet(false, true)) return;
+        SYNC_EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mIdleSyncScheduled.set(false);
+                mChannelLock.readLock().lock();
+                try {
+                    final long end;
+                    synchronized (mAppendLock) {
+                        mUnsyncedRecords = 0;
+                        end = mWritePos;
+                    }
+                    sync(end);
+                } finally {
+                    mChannelLock.readLock().unlock();
+                }
+            }
+        }, IDLE_SYNC_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Group commit: writers that queue up behind an in-flight force are covered by it
+     * and return without forcing again. Must hold the read lock.
+     */
+    private void sync(final long end) {
+        synchronized (mSyncLock) {
+            if (mSyncedPos >= end) return;
+            final long target = mWritePos;
+            try {
+                mChannel.force(false);
+                mSyncedPos = target;
+            } catch (IOException e) {
+                Log.e(TAG, "sync failed", e);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // index accounting
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void account(final Entry entry) {
+        mCacheSize += entry.valueLen;
+        mLiveBytes += entry.recordLen;
+    }
+
+    private void unaccount(final Entry entry) {
+        mCacheSize -= entry.valueLen;
+        mLiveBytes -= entry.recordLen;
+    }
+
+    /**
+     * Once over a limit, evict the eldest entries down to the low-water mark.
+     * Must hold {@link #mIndex}. Never evicts {@code keep}.
+     */
+    private List<String> collectVictims(final String keep) {
+        List<String> victims = new ArrayList<>();
+        if (mIndex.size() <= mCountLimit && mCacheSize <= mSizeLimit) return victims;
+        Iterator<Map.Entry<String, Entry>> it = mIndex.entrySet().iterator();
+        while ((mIndex.size() > mCountLowWater || mCacheSize > mSizeLowWater) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            unaccount(eldest.getValue());
+            victims.add(eldest.getKey());
+            it.remove();
+            mEvictionCount++;
+        }
+        return victims;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // compaction
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void scheduleCompactIfNeeded() {
+        final long garbage;
+        synchronized (mIndex) {
+            garbage = mWritePos - FILE_HEADER_LEN - mLiveBytes;
+            if (garbage < COMPACT_MIN_GARBAGE || garbage < mLiveBytes) return;
+        }
+        if (!mCompacting.compareAndSet(false, true)) return;
+        CacheDiskUtils.DISK_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    Log.e(TAG, "compact failed", e);
+                } finally {
+                    mCompacting.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copy the live records into a new file while writers keep appending to the old one,
+     * then take the write lock only to copy the records appended meanwhile and swap files.
+     */
+    private void compact() throws IOException {
+        final File tmp = new File(mDir, COMPACT_NAME);
+        final Map<String, Entry[]> moved = new HashMap<>();
+        final FileChannel out = new RandomAccessFile(tmp, "rw").getChannel();
+        boolean swapped = false;
+        try {
+            out.truncate(0);
+            writeFileHeader(out);
+            out.position(FILE_HEADER_LEN);
+            final int generation;
+            mChannelLock.readLock().lock();
+            try {
+                final List<Map.Entry<String, Entry>> snapshot;
+                synchronized (mAppendLock) {
+                    generation = mGeneration;
+                    synchronized (mIndex) {
+                        snapshot = new ArrayList<>(mIndex.entrySet());
+                    }
+                }
+                for (Map.Entry<String, Entry> e : snapshot) {
+                    final Entry old = e.getValue();
+                    moved.put(e.getKey(), new Entry[]{old, copyRecord(old, out)});
+                }
+            } finally {
+                mChannelLock.readLock().unlock();
+            }
+
+            mChannelLock.writeLock().lock();
+            try {
+                if (generation != mGeneration) return;
+                final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+                synchronized (mIndex) {
+                    for (Map.Entry<String, Entry> e : mIndex.entrySet()) {
+                        final Entry[] pair = moved.get(e.getKey());
+                        if (pair != null && pair[0] == e.getValue()) {
+                            index.put(e.getKey(), pair[1]);
+                        } else {
+                            index.put(e.getKey(), copyRecord(e.getValue(), out));
+                        }
+                    }
+                }
+                out.force(false);
+                final long size = out.size();
+                out.close();
+                mChannel.close();
+                if (!tmp.renameTo(mFile)) {
+                    mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+                    throw new IOException("rename " + tmp + " failed");
+                }
+                mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+                mWritePos = size;
+                mSyncedPos = size;
+                mUnsyncedRecords = 0;
+                // the records copied from the snapshot may be removed or replaced since
+                long liveBytes = 0;
+                for (Entry entry : index.values()) {
+                    liveBytes += entry.recordLen;
+                }
+                synchronized (mIndex) {
+                    mIndex.clear();
+                    mIndex.putAll(index);
+                    mLiveBytes = liveBytes;
+                }
+                swapped = true;
+            } finally {
+                mChannelLock.writeLock().unlock();
+            }
+        } finally {
+            if (!swapped) {
+                out.close();
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
+        }
+    }
+
+    private Entry copyRecord(final Entry entry, final FileChannel out) throws IOException {
+        final long newPos = out.position();
+        long copied = 0;
+        while (copied < entry.recordLen) {
+            long n = mChannel.transferTo(entry.recordPos + copied,
+                    entry.recordLen - copied, out);
+            if (n <= 0) throw new EOFException("record at " + entry.recordPos + " truncated");
+            copied += n;
+        }
+        return new Entry(newPos, entry.recordLen, entry.valueLen);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // recovery
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Rebuild the index from the journal. A torn or corrupt tail is truncated away.
+     */
+    private void replay() throws IOException {
+        final long size = mChannel.size();
+        if (size < FILE_HEADER_LEN || readMagic() != MAGIC) {
+            mChannel.truncate(0);
+            writeFileHeader(mChannel);
+            mChannel.force(false);
+            mWritePos = mSyncedPos = FILE_HEADER_LEN;
+            return;
+        }
+        long pos = FILE_HEADER_LEN;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(mChannel.position(FILE_HEADER_LEN)), 64 * 1024));
+        final CRC32 crc = new CRC32();
+        byte[] buf = new byte[4096];
+        try {
+            while (pos + RECORD_HEADER_LEN <= size) {
+                final byte op = in.readByte();
+                final int keyLen = in.readInt();
+                final int valueLen = in.readInt();
+                final int checksum = in.readInt();
+                if ((op != OP_PUT && op != OP_REMOVE)
+                        || keyLen <= 0 || keyLen > MAX_KEY_LEN || valueLen < 0) break;
+                final long recordLen = (long) RECORD_HEADER_LEN + keyLen + valueLen;
+                if (pos + recordLen > size) break;
+                final byte[] keyBytes = new byte[keyLen];
+                in.readFully(keyBytes);
+                if (buf.length < valueLen) buf = new byte[valueLen];
+                in.readFully(buf, 0, valueLen);
+                crc.reset();
+                crc.update(op);
+                crc.update(keyBytes);
+                crc.update(buf, 0, valueLen);
+                if ((int) crc.getValue() != checksum) break;
+                final String key = new String(keyBytes, StandardCharsets.UTF_8);
+                final Entry old = op == OP_PUT
+                        ? mIndex.put(key, new Entry(pos, (int) recordLen, valueLen))
+                        : mIndex.remove(key);
+                if (old != null) unaccount(old);
+                if (op == OP_PUT) account(mIndex.get(key));
+                pos += recordLen;
+            }
+        } catch (EOFException ignore) {
+            // torn tail
+        }
+        if (pos < size) {
+            Log.w(TAG, "truncate journal from " + size + " to " + pos);
+            mChannel.truncate(pos);
+            mChannel.force(false);
+        }
+        mWritePos = mSyncedPos = pos;
+        final List<String> victims;
+        synchronized (mIndex) {
+            victims = collectVictims(null);
+        }
+        synchronized (mAppendLock) {
+            for (String victim : victims) {
+                append(encode(OP_REMOVE, victim.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    private int readMagic() throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(FILE_HEADER_LEN);
+        readFully(mChannel, magic, 0);
+        return magic.getInt(0);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // other utils methods
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static void writeFileHeader(final FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LEN).putInt(0, MAGIC);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static ByteBuffer encode(final byte op, final byte[] key, final byte[]... value) {
+        final CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(key);
+        int valueLen = 0;
+        for (byte[] part : value) {
+            crc.update(part);
+            valueLen += part.length;
+        }
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LEN + key.length + valueLen);
+        record.put(op)
+                .putInt(key.length)
+                .putInt(valueLen)
+                .putInt((int) crc.getValue())
+                .put(key);
+        for (byte[] part : value) {
+            record.put(part);
+        }
+        record.flip();
+        return record;
+    }
+
+    private static void readFully(final FileChannel channel,
+                                  final ByteBuffer dst,
+                                  final long position) throws IOException {
+        final int start = dst.position();
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position + dst.position() - start);
+            if (n < 0) throw new EOFException("unexpected end of journal at " + position);
+        }
+    }
+
+    private static final class Entry {
+        final long recordPos;
+        final int recordLen;
+        final int valueLen;
+
+        Entry(long recordPos, int recordLen, int valueLen) {
+            this.recordPos = recordPos;
+            this.recordLen = recordLen;
+            this.valueLen = valueLen;
+        }
+
+        long valuePos() {
+            return recordPos + recordLen - valueLen;
+        }
+    }
+}
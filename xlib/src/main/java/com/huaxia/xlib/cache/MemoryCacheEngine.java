@@ -0,0 +1,68 @@
+package com.huaxia.xlib.cache;
+
+/**
+ * 内存缓存存储引擎。
+ * {@link CacheMemoryUtils} 负责对外接口和命中统计，实际的存取和淘汰由引擎完成。
+ *
+ * @author xzy
+ */
+interface MemoryCacheEngine {
+
+    /**
+     * Put the value in cache, replacing any previous value of the key.
+     *
+     * @param key     The key of cache.
+     * @param value   The value of cache.
+     * @param dueTime The due time in millis, -1 if the value never expires.
+     */
+    void put(String key, Object value, long dueTime);
+
+    /**
+     * Return the value in cache.
+     *
+     * @param key The key of cache.
+     * @return the value if cache exists and isn't due or null otherwise
+     */
+    Object get(String key);
+
+    /**
+     * Remove the cache by key.
+     *
+     * @param key The key of cache.
+     * @return the removed value or null
+     */
+    Object remove(String key);
+
+    /**
+     * Clear all of the cache.
+     */
+    void clear();
+
+    /**
+     * Return the count of cache.
+     *
+     * @return the count of cache
+     */
+    int size();
+
+    /**
+     * Return the weight of cache, the count if the engine doesn't weigh.
+     *
+     * @return the weight of cache
+     */
+    long weight();
+
+    /**
+     * Return the count of values evicted to make room.
+     *
+     * @return the count of values evicted to make room
+     */
+    long evictionCount();
+
+    /**
+     * Return the count of values removed because they were due.
+     *
+     * @return the count of values removed because they were due
+     */
+    long expiredCount();
+}
@@ -0,0 +1,91 @@
+package com.huaxia.xlib.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图。
+ * <p>按 2 的幂纳秒分桶，桶用 {@link LongAdder} 分散竞争，大约 18 分钟以上都落进最后一个桶。
+ * 供 {@link com.huaxia.xlib.cache.CacheStats} 和 {@link com.huaxia.xlib.thread.PoolStats}
+ * 记耗时用，{@link #snapshot()} 得到某一时刻的只读快照。</p>
+ *
+ * @author xzy
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 41;
+
+    private final LongAdder[] mBuckets = new LongAdder[BUCKETS];
+    private final LongAdder mTotal = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final int index = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+        mBuckets[Math.min(index, BUCKETS - 1)].increment();
+        mTotal.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Return the snapshot of histogram.
+     *
+     * @return the snapshot of histogram
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * 某一时刻的耗时直方图。
+     */
+    public static final class Snapshot {
+        private final long[] counts = new long[BUCKETS];
+        private final long count;
+        private final long total;
+
+        private Snapshot(final LatencyHistogram histogram) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.mBuckets[i].sum();
+                count += counts[i];
+            }
+            this.count = count;
+            total = histogram.mTotal.sum();
+        }
+
+        /**
+         * Return the mean of durations.
+         *
+         * @return the mean of durations, in nanoseconds
+         */
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * Return the upper bound of nanos within which {@code percentile} of the durations
+         * fall, as a power of two.
+         *
+         * @param percentile The percentile from 0 to 1, such as 0.99.
+         * @return the upper bound of nanos
+         */
+        public long getPercentile(final double percentile) {
+            if (count == 0) return 0;
+            final long rank = (long) Math.ceil(count * Math.min(1, Math.max(0, percentile)));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) return i == 0 ? 0 : 1L << i;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
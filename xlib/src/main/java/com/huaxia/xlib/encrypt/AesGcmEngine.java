@@ -0,0 +1,278 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-GCM 分段加密引擎。
+ * <p>GCM 的实现大多要等到 doFinal 才输出（解密时要先校验），一次加密整个大文件就要把它全部
+ * 放进内存。这里把明文切成固定大小的段，每段单独用 GCM 加密并带上自己的认证标签，内存只
+ * 用两个段大小的缓冲区，和数据多大无关。格式：</p>
+ * <pre>
+ * 头: "XGCM" | 版本 1 | 段大小 (4 字节) | 盐 (16 字节) | nonce 前缀 (7 字节)
+ * 段: 密文 | 标签 (16 字节)，最后一段的明文比段大小短（可以为空）
+ * </pre>
+ * <p>每个流用随机的盐从密钥派生出自己的子密钥，nonce 是前缀、段序号和是否最后一段，所以
+ * 段不能被调换、删除或截断；头作为附加数据参与每段的认证。解密是边校验边输出的，抛出异常时
+ * 已经写出的部分要丢弃。</p>
+ *
+ * @author xzy
+ */
+public final class AesGcmEngine {
+
+    private static final byte[] MAGIC = new byte[]{'X', 'G', 'C', 'M'};
+    private static final int VERSION = 1;
+    private static final int SALT_SIZE = 16;
+    private static final int PREFIX_SIZE = 7;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 4 + SALT_SIZE + PREFIX_SIZE;
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    private static final byte[] KDF_INFO = "xlib-aes-gcm-stream".getBytes();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec mKey;
+    private final int mSegmentSize;
+
+    private AesGcmEngine(final SecretKeySpec key, final int segmentSize) {
+        mKey = key;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * Return the engine of the key, with segments of 64 KB.
+     *
+     * @param key The key of AES, 16, 24 or 32 bytes.
+     * @return the engine
+     */
+    public static AesGcmEngine create(@NonNull final byte[] key) {
+        return create(key, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Return the engine of the key.
+     *
+     * @param key         The key of AES, 16, 24 or 32 bytes.
+     * @param segmentSize The size of plaintext per segment, the memory used is about twice.
+     * @return the engine
+     */
+    public static AesGcmEngine create(@NonNull final byte[] key, final int segmentSize) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("key must be 16, 24 or 32 bytes");
+        }
+        if (segmentSize < 1024) throw new IllegalArgumentException("segmentSize < 1024");
+        return new AesGcmEngine(new SecretKeySpec(key, "AES"), segmentSize);
+    }
+
+    /**
+     * Return the bytes of encryption, for small data.
+     *
+     * @param data The data.
+     * @return the bytes of encryption
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    public byte[] encrypt(@NonNull final byte[] data) throws GeneralSecurityException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                data.length + HEADER_SIZE + TAG_SIZE * (data.length / mSegmentSize + 1));
+        try {
+            encrypt(new ByteArrayInputStream(data), out);
+        } catch (IOException e) {
+            // not thrown by the streams of array
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Return the bytes of decryption, for small data.
+     *
+     * @param data The data.
+     * @return the bytes of decryption
+     * @throws GeneralSecurityException if the data is broken, truncated or of another key
+     */
+    public byte[] decrypt(@NonNull final byte[] data) throws GeneralSecurityException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        try {
+            decrypt(new ByteArrayInputStream(data), out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encrypt the stream to the stream, neither is closed.
+     *
+     * @param in  The stream of plaintext.
+     * @param out The stream of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    public void encrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        final byte[] header = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = VERSION;
+        writeInt(header, MAGIC.length + 1, mSegmentSize);
+        final byte[] saltAndPrefix = new byte[SALT_SIZE + PREFIX_SIZE];
+        RANDOM.nextBytes(saltAndPrefix);
+        System.arraycopy(saltAndPrefix, 0, header, MAGIC.length + 5, saltAndPrefix.length);
+        out.write(header);
+
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        final SecretKeySpec key = deriveKey(header);
+        final byte[] plain = new byte[mSegmentSize];
+        final byte[] sealed = new byte[mSegmentSize + TAG_SIZE];
+        for (int segment = 0; ; segment++) {
+            final int len = readFully(in, plain, mSegmentSize);
+            final boolean last = len < mSegmentSize;
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec(header, segment, last));
+            cipher.updateAAD(header);
+            final int sealedLen = cipher.doFinal(plain, 0, len, sealed, 0);
+            out.write(sealed, 0, sealedLen);
+            if (last) break;
+        }
+        Arrays.fill(plain, (byte) 0);
+    }
+
+    /**
+     * Decrypt the stream to the stream, neither is closed. The plaintext is written as the
+     * segments are verified, discard it if an exception is thrown.
+     *
+     * @param in  The stream of ciphertext.
+     * @param out The stream of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if the data is broken, truncated or of another key
+     */
+    public void decrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        final byte[] header = new byte[HEADER_SIZE];
+        if (readFully(in, header, HEADER_SIZE) != HEADER_SIZE) {
+            throw new AEADBadTagException("truncated header");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) throw new AEADBadTagException("not a stream of AES-GCM");
+        }
+        if (header[MAGIC.length] != VERSION) {
+            throw new AEADBadTagException("unsupported version: " + header[MAGIC.length]);
+        }
+        final int segmentSize = readInt(header, MAGIC.length + 1);
+        if (segmentSize < 1024 || segmentSize > 64 * 1024 * 1024) {
+            throw new AEADBadTagException("malformed segment size: " + segmentSize);
+        }
+
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        final SecretKeySpec key = deriveKey(header);
+        final byte[] sealed = new byte[segmentSize + TAG_SIZE];
+        final byte[] plain = new byte[segmentSize];
+        for (int segment = 0; ; segment++) {
+            final int len = readFully(in, sealed, sealed.length);
+            final boolean last = len < sealed.length;
+            if (len < TAG_SIZE) throw new AEADBadTagException("truncated");
+            cipher.init(Cipher.DECRYPT_MODE, key, spec(header, segment, last));
+            cipher.updateAAD(header);
+            final int plainLen = cipher.doFinal(sealed, 0, len, plain, 0);
+            out.write(plain, 0, plainLen);
+            if (last) break;
+        }
+        Arrays.fill(plain, (byte) 0);
+        if (in.read() != -1) throw new AEADBadTagException("data after the last segment");
+    }
+
+    /**
+     * Encrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel},
+     * neither is closed.
+     *
+     * @param in  The channel of plaintext.
+     * @param out The channel of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    public void encrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        // the streams of channel don't buffer, they wrap the arrays given
+        encrypt(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Decrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel},
+     * neither is closed.
+     *
+     * @param in  The channel of ciphertext.
+     * @param out The channel of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if the data is broken, truncated or of another key
+     */
+    public void decrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        decrypt(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Derive the key of stream from the key and the salt in header, so the nonces of
+     * different streams never collide.
+     */
+    private SecretKeySpec deriveKey(final byte[] header) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(mKey.getEncoded(), "HmacSHA256"));
+        mac.update(header, MAGIC.length + 5, SALT_SIZE);
+        mac.update(KDF_INFO);
+        final byte[] derived = mac.doFinal();
+        final SecretKeySpec key =
+                new SecretKeySpec(derived, 0, mKey.getEncoded().length, "AES");
+        Arrays.fill(derived, (byte) 0);
+        return key;
+    }
+
+    private static GCMParameterSpec spec(final byte[] header, final int segment,
+                                         final boolean last) {
+        final byte[] nonce = new byte[NONCE_SIZE];
+        System.arraycopy(header, MAGIC.length + 5 + SALT_SIZE, nonce, 0, PREFIX_SIZE);
+        writeInt(nonce, PREFIX_SIZE, segment);
+        nonce[NONCE_SIZE - 1] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+    }
+
+    static int readFully(final InputStream in, final byte[] buffer, final int len)
+            throws IOException {
+        int read = 0;
+        while (read < len) {
+            final int n = in.read(buffer, read, len - read);
+            if (n < 0) break;
+            read += n;
+        }
+        return read;
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+}
@@ -0,0 +1,245 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 对称加密引擎。
+ * <p>密钥和 IV 在创建时解析一次，每个线程各用一对已经 init 过的加密和解密 {@link Cipher}，
+ * doFinal 之后 Cipher 回到 init 后的状态，下次直接用，可以在多个线程里同时用。出错时丢掉
+ * 这个线程的 Cipher，下次重新创建。</p>
+ * <p>大数据用流的方法，每次用一个新的 Cipher 和一个固定大小的缓冲区，内存和数据多大无关。
+ * GCM 不能这样重复用同一个 IV，请用 {@link AesGcmEngine}。</p>
+ *
+ * @author xzy
+ */
+public final class CipherEngine {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final String mTransformation;
+    private final SecretKey mKey;
+    private final IvParameterSpec mIv;
+    private final ThreadLocal<Cipher> mEncryptCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> mDecryptCipher = new ThreadLocal<>();
+
+    private CipherEngine(final String transformation, final SecretKey key, final byte[] iv) {
+        mTransformation = transformation;
+        mKey = key;
+        mIv = iv == null || iv.length == 0 ? null : new IvParameterSpec(iv);
+    }
+
+    /**
+     * Return the engine of AES.
+     *
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>AES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV, null if the mode needs none.
+     * @return the engine
+     * @throws GeneralSecurityException if the transformation or the key is not supported
+     */
+    public static CipherEngine aes(@NonNull final byte[] key,
+                                   @NonNull final String transformation,
+                                   final byte[] iv) throws GeneralSecurityException {
+        return create(key, "AES", transformation, iv);
+    }
+
+    /**
+     * Return the engine of DES.
+     *
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>DES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV, null if the mode needs none.
+     * @return the engine
+     * @throws GeneralSecurityException if the transformation or the key is not supported
+     */
+    public static CipherEngine des(@NonNull final byte[] key,
+                                   @NonNull final String transformation,
+                                   final byte[] iv) throws GeneralSecurityException {
+        return create(key, "DES", transformation, iv);
+    }
+
+    /**
+     * Return the engine of 3DES.
+     *
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g.,
+     *                       <i>DESede/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV, null if the mode needs none.
+     * @return the engine
+     * @throws GeneralSecurityException if the transformation or the key is not supported
+     */
+    public static CipherEngine tripleDes(@NonNull final byte[] key,
+                                         @NonNull final String transformation,
+                                         final byte[] iv) throws GeneralSecurityException {
+        return create(key, "DESede", transformation, iv);
+    }
+
+    private static CipherEngine create(final byte[] key, final String algorithm,
+                                       final String transformation, final byte[] iv)
+            throws GeneralSecurityException {
+        if (key.length == 0) throw new IllegalArgumentException("key is empty");
+        if (CryptoCache.isAead(transformation)) {
+            throw new IllegalArgumentException("AEAD ciphers are not supported, "
+                    + "use AesGcmEngine for GCM");
+        }
+        final CipherEngine engine =
+                new CipherEngine(transformation, secretKey(key, algorithm), iv);
+        engine.cipher(true);
+        engine.cipher(false);
+        return engine;
+    }
+
+    static SecretKey secretKey(final byte[] key, final String algorithm)
+            throws GeneralSecurityException {
+        if ("DES".equals(algorithm)) {
+            return CryptoCache.secretKeyFactory(algorithm).generateSecret(new DESKeySpec(key));
+        }
+        return new SecretKeySpec(key, algorithm);
+    }
+
+    public String getTransformation() {
+        return mTransformation;
+    }
+
+    /**
+     * Return the bytes of encryption.
+     *
+     * @param data The data.
+     * @return the bytes of encryption, null if the data is empty or failed
+     */
+    public byte[] encrypt(final byte[] data) {
+        return doFinal(data, true);
+    }
+
+    /**
+     * Return the bytes of decryption.
+     *
+     * @param data The data.
+     * @return the bytes of decryption, null if the data is empty or failed
+     */
+    public byte[] decrypt(final byte[] data) {
+        return doFinal(data, false);
+    }
+
+    /**
+     * Encrypt the stream to the stream, neither is closed.
+     *
+     * @param in  The stream of plaintext.
+     * @param out The stream of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to encrypt
+     */
+    public void encrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        transform(in, out, true);
+    }
+
+    /**
+     * Decrypt the stream to the stream, neither is closed.
+     *
+     * @param in  The stream of ciphertext.
+     * @param out The stream of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to decrypt, e.g. bad padding
+     */
+    public void decrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        transform(in, out, false);
+    }
+
+    /**
+     * Encrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel},
+     * neither is closed.
+     *
+     * @param in  The channel of plaintext.
+     * @param out The channel of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to encrypt
+     */
+    public void encrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        // the streams of channel don't buffer, they wrap the arrays given
+        transform(Channels.newInputStream(in), Channels.newOutputStream(out), true);
+    }
+
+    /**
+     * Decrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel},
+     * neither is closed.
+     *
+     * @param in  The channel of ciphertext.
+     * @param out The channel of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to decrypt, e.g. bad padding
+     */
+    public void decrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        transform(Channels.newInputStream(in), Channels.newOutputStream(out), false);
+    }
+
+    private void transform(final InputStream in, final OutputStream out,
+                           final boolean isEncrypt)
+            throws IOException, GeneralSecurityException {
+        // a new cipher, the one of this thread may be used by the streams meanwhile
+        final Cipher cipher = newCipher(isEncrypt);
+        final byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        byte[] output = new byte[cipher.getOutputSize(STREAM_BUFFER_SIZE)];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            final int outLen = cipher.update(buffer, 0, len, output, 0);
+            if (outLen > 0) out.write(output, 0, outLen);
+        }
+        final int finalSize = cipher.getOutputSize(0);
+        if (finalSize > output.length) output = new byte[finalSize];
+        final int outLen = cipher.doFinal(output, 0);
+        if (outLen > 0) out.write(output, 0, outLen);
+    }
+
+    private byte[] doFinal(final byte[] data, final boolean isEncrypt) {
+        if (data == null || data.length == 0) return null;
+        try {
+            return cipher(isEncrypt).doFinal(data);
+        } catch (Throwable e) {
+            // the state of cipher is unknown after a failure
+            (isEncrypt ? mEncryptCipher : mDecryptCipher).remove();
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private Cipher cipher(final boolean isEncrypt) throws GeneralSecurityException {
+        final ThreadLocal<Cipher> local = isEncrypt ? mEncryptCipher : mDecryptCipher;
+        Cipher cipher = local.get();
+        if (cipher == null) {
+            cipher = newCipher(isEncrypt);
+            local.set(cipher);
+        }
+        return cipher;
+    }
+
+    private Cipher newCipher(final boolean isEncrypt) throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(mTransformation);
+        final int mode = isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE;
+        if (mIv == null) {
+            cipher.init(mode, mKey);
+        } else {
+            cipher.init(mode, mKey, mIv);
+        }
+        return cipher;
+    }
+}
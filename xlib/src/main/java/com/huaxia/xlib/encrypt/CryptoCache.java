@@ -0,0 +1,175 @@
+package com.huaxia.xlib.encrypt;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * 加密对象的缓存。
+ * <p>{@link MessageDigest}、{@link Mac}、{@link Cipher} 和 {@link SecretKeyFactory} 都不是线程
+ * 安全的，按算法名在每个线程里各缓存一个，省掉每次 getInstance 查找 Provider 的开销，用的
+ * 时候每次重新 init。解析好的 RSA 密钥按密钥内容缓存最近用过的几个。</p>
+ *
+ * @author xzy
+ */
+final class CryptoCache {
+
+    private static final int MAX_RSA_ENGINES = 8;
+
+    private static final ThreadLocal<HashMap<String, Object>> INSTANCES =
+            new ThreadLocal<HashMap<String, Object>>() {
+                @Override
+                protected HashMap<String, Object> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private static final Map<RsaKey, RsaEngine> RSA_ENGINES =
+            new LinkedHashMap<RsaKey, RsaEngine>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<RsaKey, RsaEngine> eldest) {
+                    return size() > MAX_RSA_ENGINES;
+                }
+            };
+
+    private CryptoCache() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    /**
+     * Return the digest of this thread, it is reset.
+     */
+    static MessageDigest digest(final String algorithm) throws NoSuchAlgorithmException {
+        final HashMap<String, Object> instances = INSTANCES.get();
+        final String name = "MessageDigest." + algorithm;
+        MessageDigest md = (MessageDigest) instances.get(name);
+        if (md == null) {
+            md = MessageDigest.getInstance(algorithm);
+            instances.put(name, md);
+        } else {
+            md.reset();
+        }
+        return md;
+    }
+
+    /**
+     * Return the mac of this thread, init it before use.
+     */
+    static Mac mac(final String algorithm) throws NoSuchAlgorithmException {
+        final HashMap<String, Object> instances = INSTANCES.get();
+        final String name = "Mac." + algorithm;
+        Mac mac = (Mac) instances.get(name);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            instances.put(name, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Return the cipher of this thread, init it before use. AEAD ciphers are created every
+     * time, a reused one refuses to encrypt again with the key and IV of its last init.
+     */
+    static Cipher cipher(final String transformation)
+            throws NoSuchAlgorithmException, NoSuchPaddingException {
+        if (isAead(transformation)) return Cipher.getInstance(transformation);
+        final HashMap<String, Object> instances = INSTANCES.get();
+        final String name = "Cipher." + transformation;
+        Cipher cipher = (Cipher) instances.get(name);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            instances.put(name, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Return whether the transformation is an AEAD cipher, GCM, CCM or ChaCha20-Poly1305.
+     */
+    static boolean isAead(final String transformation) {
+        final String upper = transformation.toUpperCase(Locale.ROOT);
+        return upper.contains("/GCM") || upper.contains("/CCM") || upper.contains("POLY1305");
+    }
+
+    /**
+     * Return the secret key factory of this thread.
+     */
+    static SecretKeyFactory secretKeyFactory(final String algorithm)
+            throws NoSuchAlgorithmException {
+        final HashMap<String, Object> instances = INSTANCES.get();
+        final String name = "SecretKeyFactory." + algorithm;
+        SecretKeyFactory factory = (SecretKeyFactory) instances.get(name);
+        if (factory == null) {
+            factory = SecretKeyFactory.getInstance(algorithm);
+            instances.put(name, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Return the engine of the key parsed before, or parse it.
+     *
+     * @param key            The public key to encrypt or the private key to decrypt.
+     * @param keySize        The size of key.
+     * @param transformation The name of the transformation.
+     * @param isEncrypt      True to encrypt, false otherwise.
+     */
+    static RsaEngine rsaEngine(final byte[] key, final int keySize,
+                               final String transformation, final boolean isEncrypt)
+            throws GeneralSecurityException {
+        final RsaKey rsaKey = new RsaKey(key, keySize, transformation, isEncrypt);
+        synchronized (RSA_ENGINES) {
+            final RsaEngine engine = RSA_ENGINES.get(rsaKey);
+            if (engine != null) return engine;
+        }
+        final RsaEngine engine = isEncrypt
+                ? RsaEngine.create(key, null, keySize, transformation)
+                : RsaEngine.create(null, key, keySize, transformation);
+        synchronized (RSA_ENGINES) {
+            RSA_ENGINES.put(rsaKey, engine);
+        }
+        return engine;
+    }
+
+    private static final class RsaKey {
+        private final byte[] key;
+        private final int keySize;
+        private final String transformation;
+        private final boolean isEncrypt;
+        private final int hash;
+
+        RsaKey(byte[] key, int keySize, String transformation, boolean isEncrypt) {
+            this.key = key.clone();
+            this.keySize = keySize;
+            this.transformation = transformation;
+            this.isEncrypt = isEncrypt;
+            this.hash = ((Arrays.hashCode(key) * 31 + keySize) * 31
+                    + transformation.hashCode()) * 31 + (isEncrypt ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RsaKey)) return false;
+            final RsaKey that = (RsaKey) o;
+            return keySize == that.keySize && isEncrypt == that.isEncrypt
+                    && transformation.equals(that.transformation)
+                    && Arrays.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -3,27 +3,21 @@ package com.huaxia.xlib.encrypt;
 import android.util.Base64;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.DigestInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
-import java.security.Key;
-import java.security.KeyFactory;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
+import java.util.Locale;
+import java.util.Map;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.Mac;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.DESKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -178,29 +172,29 @@ public final class EncryptUtils {
      */
     public static byte[] encryptMD5File(final File file) {
         if (file == null) return null;
-        FileInputStream fis = null;
-        DigestInputStream digestInputStream;
         try {
-            fis = new FileInputStream(file);
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            digestInputStream = new DigestInputStream(fis, md);
-            byte[] buffer = new byte[256 * 1024];
-            while (true) {
-                if (!(digestInputStream.read(buffer) > 0)) break;
-            }
-            md = digestInputStream.getMessageDigest();
-            return md.digest();
-        } catch (NoSuchAlgorithmException | IOException e) {
+            return FileDigest.of("MD5").digest(file).get("MD5");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Return the bytes of file's hash encryption of each algorithm, by reading the file once.
+     *
+     * @param file       The file.
+     * @param algorithms The names of hash encryption, e.g. <i>MD5</i>, <i>SHA-256</i>, or of
+     *                   checksum, <i>CRC32</i>, <i>CRC32C</i> or <i>Adler32</i>.
+     * @return the bytes of file's hash encryption keyed by the algorithm, null if failed
+     */
+    public static Map<String, byte[]> hashFile(final File file, final String... algorithms) {
+        if (file == null || algorithms == null || algorithms.length == 0) return null;
+        try {
+            return FileDigest.of(algorithms).digest(file);
+        } catch (IOException | IllegalArgumentException e) {
             e.printStackTrace();
             return null;
-        } finally {
-            try {
-                if (fis != null) {
-                    fis.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 
@@ -369,7 +363,7 @@ public final class EncryptUtils {
     private static byte[] hashTemplate(final byte[] data, final String algorithm) {
         if (data == null || data.length <= 0) return null;
         try {
-            MessageDigest md = MessageDigest.getInstance(algorithm);
+            MessageDigest md = CryptoCache.digest(algorithm);
             md.update(data);
             return md.digest();
         } catch (NoSuchAlgorithmException e) {
@@ -600,7 +594,7 @@ public final class EncryptUtils {
         if (data == null || data.length == 0 || key == null || key.length == 0) return null;
         try {
             SecretKeySpec secretKey = new SecretKeySpec(key, algorithm);
-            Mac mac = Mac.getInstance(algorithm);
+            Mac mac = CryptoCache.mac(algorithm);
             mac.init(secretKey);
             return mac.doFinal(data);
         } catch (InvalidKeyException | NoSuchAlgorithmException e) {
@@ -945,19 +939,17 @@ public final class EncryptUtils {
                                             final boolean isEncrypt) {
         if (data == null || data.length == 0 || key == null || key.length == 0) return null;
         try {
-            SecretKey secretKey;
-            if ("DES".equals(algorithm)) {
-                DESKeySpec desKey = new DESKeySpec(key);
-                SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(algorithm);
-                secretKey = keyFactory.generateSecret(desKey);
-            } else {
-                secretKey = new SecretKeySpec(key, algorithm);
-            }
-            Cipher cipher = Cipher.getInstance(transformation);
+            SecretKey secretKey = CipherEngine.secretKey(key, algorithm);
+            // init every time, so the cipher of this thread can be shared by keys
+            Cipher cipher = CryptoCache.cipher(transformation);
             if (iv == null || iv.length == 0) {
                 cipher.init(isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey);
             } else {
-                AlgorithmParameterSpec params = new IvParameterSpec(iv);
+                // a GCM tag of 128 bits, some providers take no IvParameterSpec for it
+                AlgorithmParameterSpec params =
+                        transformation.toUpperCase(Locale.ROOT).contains("/GCM")
+                                ? new GCMParameterSpec(128, iv)
+                                : new IvParameterSpec(iv);
                 cipher.init(isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, params);
             }
             return cipher.doFinal(data);
@@ -967,6 +959,201 @@ public final class EncryptUtils {
         }
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // Streaming encryption
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encrypt the stream of plaintext to the stream of ciphertext by AES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of plaintext.
+     * @param out            The stream of ciphertext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>AES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean encryptAES(final InputStream in,
+                                     final OutputStream out,
+                                     final byte[] key,
+                                     final String transformation,
+                                     final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "AES", transformation, iv, true);
+    }
+
+    /**
+     * Decrypt the stream of ciphertext to the stream of plaintext by AES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of ciphertext.
+     * @param out            The stream of plaintext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>AES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean decryptAES(final InputStream in,
+                                     final OutputStream out,
+                                     final byte[] key,
+                                     final String transformation,
+                                     final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "AES", transformation, iv, false);
+    }
+
+    /**
+     * Encrypt the stream of plaintext to the stream of ciphertext by DES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of plaintext.
+     * @param out            The stream of ciphertext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>DES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean encryptDES(final InputStream in,
+                                     final OutputStream out,
+                                     final byte[] key,
+                                     final String transformation,
+                                     final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "DES", transformation, iv, true);
+    }
+
+    /**
+     * Decrypt the stream of ciphertext to the stream of plaintext by DES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of ciphertext.
+     * @param out            The stream of plaintext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>DES/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean decryptDES(final InputStream in,
+                                     final OutputStream out,
+                                     final byte[] key,
+                                     final String transformation,
+                                     final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "DES", transformation, iv, false);
+    }
+
+    /**
+     * Encrypt the stream of plaintext to the stream of ciphertext by 3DES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of plaintext.
+     * @param out            The stream of ciphertext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>DESede/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean encrypt3DES(final InputStream in,
+                                      final OutputStream out,
+                                      final byte[] key,
+                                      final String transformation,
+                                      final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "DESede", transformation, iv, true);
+    }
+
+    /**
+     * Decrypt the stream of ciphertext to the stream of plaintext by 3DES, in constant
+     * memory. Neither stream is closed.
+     *
+     * @param in             The stream of ciphertext.
+     * @param out            The stream of plaintext.
+     * @param key            The key.
+     * @param transformation The name of the transformation, e.g., <i>DESede/CBC/PKCS5Padding</i>.
+     * @param iv             The buffer with the IV. The contents of the
+     *                       buffer are copied to protect against subsequent modification.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean decrypt3DES(final InputStream in,
+                                      final OutputStream out,
+                                      final byte[] key,
+                                      final String transformation,
+                                      final byte[] iv) {
+        return symmetricStreamTemplate(in, out, key, "DESede", transformation, iv, false);
+    }
+
+    /**
+     * Encrypt the stream of plaintext to the stream of ciphertext by AES-GCM, in segments
+     * that are authenticated one by one, see {@link AesGcmEngine}. Neither stream is closed.
+     *
+     * @param in  The stream of plaintext.
+     * @param out The stream of ciphertext.
+     * @param key The key of AES, 16, 24 or 32 bytes.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean encryptAESGCM(final InputStream in,
+                                        final OutputStream out,
+                                        final byte[] key) {
+        if (in == null || out == null || key == null) return false;
+        try {
+            AesGcmEngine.create(key).encrypt(in, out);
+            return true;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Decrypt the stream of ciphertext to the stream of plaintext by AES-GCM, see
+     * {@link AesGcmEngine}. Neither stream is closed. The plaintext is written as the segments
+     * are verified, discard it if fail, the data was broken, truncated or of another key.
+     *
+     * @param in  The stream of ciphertext.
+     * @param out The stream of plaintext.
+     * @param key The key of AES, 16, 24 or 32 bytes.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean decryptAESGCM(final InputStream in,
+                                        final OutputStream out,
+                                        final byte[] key) {
+        if (in == null || out == null || key == null) return false;
+        try {
+            AesGcmEngine.create(key).decrypt(in, out);
+            return true;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean symmetricStreamTemplate(final InputStream in,
+                                                   final OutputStream out,
+                                                   final byte[] key,
+                                                   final String algorithm,
+                                                   final String transformation,
+                                                   final byte[] iv,
+                                                   final boolean isEncrypt) {
+        if (in == null || out == null || key == null || key.length == 0) return false;
+        try {
+            CipherEngine engine = "AES".equals(algorithm)
+                    ? CipherEngine.aes(key, transformation, iv)
+                    : "DES".equals(algorithm)
+                    ? CipherEngine.des(key, transformation, iv)
+                    : CipherEngine.tripleDes(key, transformation, iv);
+            if (isEncrypt) {
+                engine.encrypt(in, out);
+            } else {
+                engine.decrypt(in, out);
+            }
+            return true;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // RSA encryption
     ///////////////////////////////////////////////////////////////////////////
@@ -1086,72 +1273,19 @@ public final class EncryptUtils {
             return null;
         }
         try {
-            Key rsaKey;
-            if (isEncrypt) {
-                X509EncodedKeySpec keySpec = new X509EncodedKeySpec(key);
-                rsaKey = KeyFactory.getInstance("RSA").generatePublic(keySpec);
-            } else {
-                PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(key);
-                rsaKey = KeyFactory.getInstance("RSA").generatePrivate(keySpec);
-            }
-            if (rsaKey == null) return null;
-            Cipher cipher = Cipher.getInstance(transformation);
-            cipher.init(isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, rsaKey);
-            int len = data.length;
-            int maxLen = keySize / 8;
-            if (isEncrypt) {
-                String lowerTrans = transformation.toLowerCase();
-                if (lowerTrans.endsWith("pkcs1padding")) {
-                    maxLen -= 11;
-                }
-            }
-            int count = len / maxLen;
-            if (count > 0) {
-                byte[] ret = new byte[0];
-                byte[] buff = new byte[maxLen];
-                int index = 0;
-                for (int i = 0; i < count; i++) {
-                    System.arraycopy(data, index, buff, 0, maxLen);
-                    ret = joins(ret, cipher.doFinal(buff));
-                    index += maxLen;
-                }
-                if (index != len) {
-                    int restLen = len - index;
-                    buff = new byte[restLen];
-                    System.arraycopy(data, index, buff, 0, restLen);
-                    ret = joins(ret, cipher.doFinal(buff));
-                }
-                return ret;
-            } else {
-                return cipher.doFinal(data);
-            }
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (NoSuchPaddingException e) {
-            e.printStackTrace();
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        } catch (BadPaddingException e) {
-            e.printStackTrace();
-        } catch (IllegalBlockSizeException e) {
-            e.printStackTrace();
-        } catch (InvalidKeySpecException e) {
+            // the keys parsed lately are kept, parsing is slower than encryption
+            RsaEngine engine = CryptoCache.rsaEngine(key, keySize, transformation, isEncrypt);
+            return isEncrypt ? engine.encrypt(data) : engine.decrypt(data);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
             e.printStackTrace();
+            return null;
         }
-        return null;
     }
 
     ///////////////////////////////////////////////////////////////////////////
     // other utils methods
     ///////////////////////////////////////////////////////////////////////////
 
-    private static byte[] joins(final byte[] prefix, final byte[] suffix) {
-        byte[] ret = new byte[prefix.length + suffix.length];
-        System.arraycopy(prefix, 0, ret, 0, prefix.length);
-        System.arraycopy(suffix, 0, ret, prefix.length, suffix.length);
-        return ret;
-    }
-
     private static final char HEX_DIGITS[] =
             {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
 
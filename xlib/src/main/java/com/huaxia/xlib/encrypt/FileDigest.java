@@ -0,0 +1,369 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * 文件摘要引擎。
+ * <p>读一遍文件同时算出多个摘要（{@link MessageDigest} 的算法，以及 <i>CRC32</i>、
+ * <i>CRC32C</i>、<i>Adler32</i>），每个线程复用一个 256 KB 的直接缓冲区。</p>
+ * <p>很大的文件可以用 {@link #treeDigest(File)}：按块在 cpu 线程池上并行算每块的摘要，再对
+ * 所有块的摘要算一次，结果和整个文件的摘要不同，只能和同样块大小的树摘要比较。
+ * {@link #digestDirectory(File)} 并行算目录下所有文件的摘要，用来生成校验清单。</p>
+ *
+ * @author xzy
+ */
+public final class FileDigest {
+
+    private static final int    BUFFER_SIZE        = 256 * 1024;
+    private static final int    DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final byte[] LEAF_PREFIX        = new byte[]{0};
+    private static final byte[] ROOT_PREFIX        = new byte[]{1};
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final String[] mAlgorithms;
+
+    private FileDigest(final String[] algorithms) {
+        mAlgorithms = algorithms;
+    }
+
+    /**
+     * Return the engine of the algorithms.
+     *
+     * @param algorithms The names of hash encryption, e.g. <i>MD5</i>, <i>SHA-256</i>, or of
+     *                   checksum, <i>CRC32</i>, <i>CRC32C</i> or <i>Adler32</i>.
+     * @return the engine
+     * @throws IllegalArgumentException if an algorithm is not supported
+     */
+    public static FileDigest of(@NonNull final String... algorithms) {
+        if (algorithms.length == 0) throw new IllegalArgumentException("no algorithm");
+        final String[] distinct = new LinkedHashSet<>(Arrays.asList(algorithms))
+                .toArray(new String[0]);
+        for (String algorithm : distinct) {
+            if (newChecksum(algorithm) != null) continue;
+            try {
+                CryptoCache.digest(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return new FileDigest(distinct);
+    }
+
+    public List<String> getAlgorithms() {
+        return Collections.unmodifiableList(Arrays.asList(mAlgorithms));
+    }
+
+    /**
+     * Return the digests of file, by one pass.
+     *
+     * @param file The file.
+     * @return the digests in the order of algorithms
+     * @throws IOException if failed to read
+     */
+    public Map<String, byte[]> digest(@NonNull final File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            return digest(channel);
+        }
+    }
+
+    /**
+     * Return the digests of stream, by one pass. The stream is not closed.
+     *
+     * @param is The input stream.
+     * @return the digests in the order of algorithms
+     * @throws IOException if failed to read
+     */
+    public Map<String, byte[]> digest(@NonNull final InputStream is) throws IOException {
+        return digest(Channels.newChannel(is));
+    }
+
+    /**
+     * Return the digests of channel from its position to the end, by one pass. The channel
+     * is not closed.
+     *
+     * @param channel The channel.
+     * @return the digests in the order of algorithms
+     * @throws IOException if failed to read
+     */
+    public Map<String, byte[]> digest(@NonNull final ReadableByteChannel channel)
+            throws IOException {
+        final Sink[] sinks = newSinks();
+        final ByteBuffer buffer = BUFFER.get();
+        while (true) {
+            buffer.clear();
+            if (channel.read(buffer) < 0) break;
+            buffer.flip();
+            update(sinks, buffer);
+        }
+        return finish(sinks);
+    }
+
+    /**
+     * Return the tree digests of file with chunks of 4 MB, see {@link #treeDigest(File, int)}.
+     *
+     * @param file The file.
+     * @return the tree digests in the order of algorithms
+     * @throws IOException if failed to read
+     */
+    public Map<String, byte[]> treeDigest(@NonNull final File file) throws IOException {
+        return treeDigest(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Return the tree digests of file. The chunks are digested in parallel on the cpu pool as
+     * <i>H(0x00 || chunk)</i>, and the result is <i>H(0x01 || H(chunk 0) || H(chunk 1)...)</i>
+     * of each algorithm.
+     *
+     * @param file      The file.
+     * @param chunkSize The size of chunk.
+     * @return the tree digests in the order of algorithms
+     * @throws IOException if failed to read
+     */
+    public Map<String, byte[]> treeDigest(@NonNull final File file, final int chunkSize)
+            throws IOException {
+        if (chunkSize < BUFFER_SIZE) throw new IllegalArgumentException("chunkSize < 256 KB");
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            final long size = channel.size();
+            final int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            final byte[][][] leaves = new byte[chunks][][];
+            runParallel(chunks, new ParallelChunks.Chunk() {
+                @Override
+                public void run(final int index) throws Exception {
+                    final Sink[] sinks = newSinks();
+                    update(sinks, ByteBuffer.wrap(LEAF_PREFIX));
+                    final ByteBuffer buffer = BUFFER.get();
+                    long position = (long) index * chunkSize;
+                    final long end = Math.min(size, position + chunkSize);
+                    while (position < end) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                        // the positional read is safe to share the channel between threads
+                        final int read = channel.read(buffer, position);
+                        if (read < 0) throw new IOException("file truncated while reading");
+                        position += read;
+                        buffer.flip();
+                        update(sinks, buffer);
+                    }
+                    final byte[][] leaf = new byte[sinks.length][];
+                    for (int i = 0; i < sinks.length; i++) {
+                        leaf[i] = sinks[i].finish();
+                    }
+                    leaves[index] = leaf;
+                }
+            });
+            final Sink[] roots = newSinks();
+            update(roots, ByteBuffer.wrap(ROOT_PREFIX));
+            for (int i = 0; i < roots.length; i++) {
+                for (byte[][] leaf : leaves) {
+                    roots[i].update(ByteBuffer.wrap(leaf[i]));
+                }
+            }
+            return finish(roots);
+        }
+    }
+
+    /**
+     * Return the digests of the files in directory and its sub directories, digested in
+     * parallel on the cpu pool.
+     *
+     * @param dir The directory.
+     * @return the digests keyed by the path relative to directory with '/', sorted by path
+     * @throws IOException if failed to list or read
+     */
+    public SortedMap<String, Map<String, byte[]>> digestDirectory(@NonNull final File dir)
+            throws IOException {
+        if (!dir.isDirectory()) throw new IOException("not a directory: " + dir);
+        final List<File> files = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+        listFiles(dir, "", files, paths);
+        final Map<String, byte[]>[] digests = newMapArray(files.size());
+        runParallel(files.size(), new ParallelChunks.Chunk() {
+            @Override
+            public void run(final int index) throws Exception {
+                digests[index] = digest(files.get(index));
+            }
+        });
+        final SortedMap<String, Map<String, byte[]>> ret = new TreeMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            ret.put(paths.get(i), digests[i]);
+        }
+        return ret;
+    }
+
+    /**
+     * Return the manifest of digests, a line per file of the hex string of each digest and
+     * the path, split by space. With one algorithm, it is the format of <i>sha256sum</i>.
+     *
+     * @param digests The digests from {@link #digestDirectory(File)}.
+     * @return the manifest
+     */
+    public static String toManifest(
+            @NonNull final SortedMap<String, Map<String, byte[]>> digests) {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Map<String, byte[]>> entry : digests.entrySet()) {
+            for (byte[] digest : entry.getValue().values()) {
+                appendHex(sb, digest);
+                sb.append(' ');
+            }
+            sb.append(' ').append(entry.getKey()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void listFiles(final File dir, final String prefix,
+                                  final List<File> files, final List<String> paths)
+            throws IOException {
+        final File[] children = dir.listFiles();
+        if (children == null) throw new IOException("failed to list: " + dir);
+        for (File child : children) {
+            final String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                listFiles(child, path + "/", files, paths);
+            } else if (child.isFile()) {
+                files.add(child);
+                paths.add(path);
+            }
+        }
+    }
+
+    private static void runParallel(final int count, final ParallelChunks.Chunk chunk)
+            throws IOException {
+        try {
+            ParallelChunks.run(count, chunk);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, byte[]>[] newMapArray(final int size) {
+        return (Map<String, byte[]>[]) new Map[size];
+    }
+
+    private static void appendHex(final StringBuilder sb, final byte[] bytes) {
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0x0F, 16));
+            sb.append(Character.forDigit(b & 0x0F, 16));
+        }
+    }
+
+    private Sink[] newSinks() {
+        final Sink[] sinks = new Sink[mAlgorithms.length];
+        for (int i = 0; i < sinks.length; i++) {
+            final Checksum checksum = newChecksum(mAlgorithms[i]);
+            if (checksum != null) {
+                sinks[i] = new ChecksumSink(checksum);
+            } else {
+                try {
+                    sinks[i] = new DigestSink(CryptoCache.digest(mAlgorithms[i]));
+                } catch (NoSuchAlgorithmException e) {
+                    // checked when the engine was created
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return sinks;
+    }
+
+    private static Checksum newChecksum(final String algorithm) {
+        if ("CRC32".equalsIgnoreCase(algorithm)) return new CRC32();
+        if ("CRC32C".equalsIgnoreCase(algorithm)) return new CRC32C();
+        if ("Adler32".equalsIgnoreCase(algorithm)) return new Adler32();
+        return null;
+    }
+
+    private static void update(final Sink[] sinks, final ByteBuffer buffer) {
+        final int position = buffer.position();
+        for (Sink sink : sinks) {
+            buffer.position(position);
+            sink.update(buffer);
+        }
+    }
+
+    private Map<String, byte[]> finish(final Sink[] sinks) {
+        final Map<String, byte[]> ret = new LinkedHashMap<>();
+        for (int i = 0; i < sinks.length; i++) {
+            ret.put(mAlgorithms[i], sinks[i].finish());
+        }
+        return ret;
+    }
+
+    private interface Sink {
+        void update(ByteBuffer buffer);
+
+        byte[] finish();
+    }
+
+    private static final class DigestSink implements Sink {
+
+        private final MessageDigest digest;
+
+        DigestSink(final MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public byte[] finish() {
+            return digest.digest();
+        }
+    }
+
+    private static final class ChecksumSink implements Sink {
+
+        private final Checksum checksum;
+
+        ChecksumSink(final Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void update(final ByteBuffer buffer) {
+            checksum.update(buffer);
+        }
+
+        @Override
+        public byte[] finish() {
+            final long value = checksum.getValue();
+            return new byte[]{
+                    (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+            };
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 摘要引擎。
+ * <p>按算法名共享一个，内部每个线程各用一个 {@link MessageDigest}，可以在多个线程里同时用，
+ * 不必每次 getInstance。</p>
+ *
+ * @author xzy
+ */
+public final class HashEngine {
+
+    private static final ConcurrentHashMap<String, HashEngine> ENGINES =
+            new ConcurrentHashMap<>();
+
+    private final String mAlgorithm;
+
+    private HashEngine(final String algorithm) {
+        mAlgorithm = algorithm;
+    }
+
+    /**
+     * Return the engine of the algorithm.
+     *
+     * @param algorithm The name of hash encryption, e.g. <i>SHA-256</i>.
+     * @return the engine of the algorithm
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public static HashEngine get(@NonNull final String algorithm) {
+        HashEngine engine = ENGINES.get(algorithm);
+        if (engine != null) return engine;
+        try {
+            CryptoCache.digest(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+        engine = new HashEngine(algorithm);
+        final HashEngine prev = ENGINES.putIfAbsent(algorithm, engine);
+        return prev == null ? engine : prev;
+    }
+
+    public String getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    /**
+     * Return the bytes of hash encryption.
+     *
+     * @param data The data.
+     * @return the bytes of hash encryption, null if the data is empty
+     */
+    public byte[] digest(final byte[] data) {
+        if (data == null || data.length == 0) return null;
+        return digest(data, 0, data.length);
+    }
+
+    /**
+     * Return the bytes of hash encryption of a part of data.
+     *
+     * @param data   The data.
+     * @param offset The offset of data.
+     * @param len    The length of data.
+     * @return the bytes of hash encryption
+     */
+    public byte[] digest(@NonNull final byte[] data, final int offset, final int len) {
+        try {
+            final MessageDigest md = CryptoCache.digest(mAlgorithm);
+            md.update(data, offset, len);
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // checked when the engine was got
+            throw new IllegalStateException(e);
+        }
+    }
+}
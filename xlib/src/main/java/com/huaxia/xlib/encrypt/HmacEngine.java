@@ -0,0 +1,73 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC 引擎。
+ * <p>密钥在创建时解析一次，每个线程各用一个已经用这个密钥 init 过的 {@link Mac}，可以在多个
+ * 线程里同时用。</p>
+ *
+ * @author xzy
+ */
+public final class HmacEngine {
+
+    private final String mAlgorithm;
+    private final SecretKeySpec mKey;
+    private final ThreadLocal<Mac> mMac = new ThreadLocal<>();
+
+    private HmacEngine(final String algorithm, final SecretKeySpec key) {
+        mAlgorithm = algorithm;
+        mKey = key;
+    }
+
+    /**
+     * Return the engine of the algorithm and the key.
+     *
+     * @param algorithm The name of hmac encryption, e.g. <i>HmacSHA256</i>.
+     * @param key       The key.
+     * @return the engine
+     * @throws GeneralSecurityException if the algorithm or the key is not supported
+     */
+    public static HmacEngine create(@NonNull final String algorithm, @NonNull final byte[] key)
+            throws GeneralSecurityException {
+        if (key.length == 0) throw new IllegalArgumentException("key is empty");
+        final HmacEngine engine = new HmacEngine(algorithm, new SecretKeySpec(key, algorithm));
+        engine.mac();
+        return engine;
+    }
+
+    public String getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    /**
+     * Return the bytes of hmac encryption.
+     *
+     * @param data The data.
+     * @return the bytes of hmac encryption, null if the data is empty
+     */
+    public byte[] doFinal(final byte[] data) {
+        if (data == null || data.length == 0) return null;
+        try {
+            return mac().doFinal(data);
+        } catch (GeneralSecurityException e) {
+            // checked when the engine was created
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Mac mac() throws GeneralSecurityException {
+        Mac mac = mMac.get();
+        if (mac == null) {
+            mac = Mac.getInstance(mAlgorithm);
+            mac.init(mKey);
+            mMac.set(mac);
+        }
+        return mac;
+    }
+}
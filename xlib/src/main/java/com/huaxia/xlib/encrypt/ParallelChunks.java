@@ -0,0 +1,71 @@
+package com.huaxia.xlib.encrypt;
+
+import com.huaxia.xlib.thread.ThreadUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 把编号的分块分到 cpu 线程池上并行处理。
+ * <p>调用的线程也领分块做，最后只等已经被正在运行的线程领走的分块，不会等排在自己后面的
+ * 任务，所以在线程池的线程里调用、或者线程池拒绝时都不会死锁。</p>
+ *
+ * @author xzy
+ */
+final class ParallelChunks {
+
+    static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    interface Chunk {
+        void run(int index) throws Exception;
+    }
+
+    private ParallelChunks() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    /**
+     * Run the chunks from 0 to count - 1, return after all are done.
+     *
+     * @param count The number of chunks.
+     * @param chunk The task of a chunk.
+     * @throws Exception the first exception of the chunks, the rest are skipped
+     */
+    static void run(final int count, final Chunk chunk) throws Exception {
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                    try {
+                        if (error.get() == null) chunk.run(index);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+        final ExecutorService pool = ThreadUtils.getCpuPool();
+        for (int i = Math.min(count, CPU_COUNT) - 1; i > 0; i--) {
+            try {
+                pool.execute(worker);
+            } catch (RejectedExecutionException ignore) {
+                // the caller does the rest
+                break;
+            }
+        }
+        worker.run();
+        done.await();
+        final Throwable e = error.get();
+        if (e instanceof Exception) throw (Exception) e;
+        if (e instanceof Error) throw (Error) e;
+    }
+}
@@ -0,0 +1,288 @@
+package com.huaxia.xlib.encrypt;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+
+/**
+ * RSA 引擎。
+ * <p>公钥和私钥在创建时解析一次（解析比加密本身还慢），每个线程各用一对已经 init 过的
+ * {@link Cipher}，可以在多个线程里同时用。超过一个分组的数据按分组逐个加密或解密，结果直接
+ * 写进按分组数预先分配的数组；分组多时分到 cpu 线程池上并行。大文件用流的方法，每次一个分组。</p>
+ *
+ * @author xzy
+ */
+public final class RsaEngine {
+
+    private static volatile int sParallelBlocks = 32;
+
+    private final PublicKey mPublicKey;
+    private final PrivateKey mPrivateKey;
+    private final int mKeySize;
+    private final String mTransformation;
+    private final ThreadLocal<Cipher> mEncryptCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> mDecryptCipher = new ThreadLocal<>();
+
+    private RsaEngine(final PublicKey publicKey, final PrivateKey privateKey,
+                      final int keySize, final String transformation) {
+        mPublicKey = publicKey;
+        mPrivateKey = privateKey;
+        mKeySize = keySize;
+        mTransformation = transformation;
+    }
+
+    /**
+     * Return the engine of the keys.
+     *
+     * @param publicKey      The public key of X.509 to encrypt, null if not to encrypt.
+     * @param privateKey     The private key of PKCS#8 to decrypt, null if not to decrypt.
+     * @param keySize        The size of key, e.g. 1024, 2048...
+     * @param transformation The name of the transformation, e.g., <i>RSA/ECB/PKCS1Padding</i>.
+     * @return the engine
+     * @throws GeneralSecurityException if the transformation or the keys are not supported
+     */
+    public static RsaEngine create(final byte[] publicKey, final byte[] privateKey,
+                                   final int keySize, final String transformation)
+            throws GeneralSecurityException {
+        final KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        final PublicKey pub = publicKey == null || publicKey.length == 0 ? null
+                : keyFactory.generatePublic(new X509EncodedKeySpec(publicKey));
+        final PrivateKey pri = privateKey == null || privateKey.length == 0 ? null
+                : keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        if (pub == null && pri == null) throw new IllegalArgumentException("no key");
+        final RsaEngine engine = new RsaEngine(pub, pri, keySize, transformation);
+        if (pub != null) engine.cipher(true);
+        if (pri != null) engine.cipher(false);
+        return engine;
+    }
+
+    /**
+     * Set the number of blocks from which the data of {@link #encrypt(byte[])} and
+     * {@link #decrypt(byte[])} is processed on the cpu pool, 32 by default.
+     *
+     * @param blocks The number of blocks, 0 to never.
+     */
+    public static void setParallelThreshold(final int blocks) {
+        sParallelBlocks = blocks;
+    }
+
+    public int getKeySize() {
+        return mKeySize;
+    }
+
+    public String getTransformation() {
+        return mTransformation;
+    }
+
+    /**
+     * Return the bytes of encryption by the public key.
+     *
+     * @param data The data.
+     * @return the bytes of encryption, null if the data is empty or failed
+     * @throws IllegalStateException if the engine has no public key
+     */
+    public byte[] encrypt(final byte[] data) {
+        if (mPublicKey == null) throw new IllegalStateException("no public key");
+        return doFinal(data, true);
+    }
+
+    /**
+     * Return the bytes of decryption by the private key.
+     *
+     * @param data The data.
+     * @return the bytes of decryption, null if the data is empty or failed
+     * @throws IllegalStateException if the engine has no private key
+     */
+    public byte[] decrypt(final byte[] data) {
+        if (mPrivateKey == null) throw new IllegalStateException("no private key");
+        return doFinal(data, false);
+    }
+
+    /**
+     * Encrypt the stream to the stream by the public key, block by block. Neither is closed.
+     *
+     * @param in  The stream of plaintext.
+     * @param out The stream of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to encrypt
+     * @throws IllegalStateException    if the engine has no public key
+     */
+    public void encrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        if (mPublicKey == null) throw new IllegalStateException("no public key");
+        transform(in, out, true);
+    }
+
+    /**
+     * Decrypt the stream to the stream by the private key, block by block. Neither is closed.
+     *
+     * @param in  The stream of ciphertext.
+     * @param out The stream of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to decrypt
+     * @throws IllegalStateException    if the engine has no private key
+     */
+    public void decrypt(@NonNull final InputStream in, @NonNull final OutputStream out)
+            throws IOException, GeneralSecurityException {
+        if (mPrivateKey == null) throw new IllegalStateException("no private key");
+        transform(in, out, false);
+    }
+
+    /**
+     * Encrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel}.
+     *
+     * @param in  The channel of plaintext.
+     * @param out The channel of ciphertext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to encrypt
+     * @throws IllegalStateException    if the engine has no public key
+     */
+    public void encrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        encrypt(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    /**
+     * Decrypt the channel to the channel, such as a {@link java.nio.channels.FileChannel}.
+     *
+     * @param in  The channel of ciphertext.
+     * @param out The channel of plaintext.
+     * @throws IOException              if failed to read or write
+     * @throws GeneralSecurityException if failed to decrypt
+     * @throws IllegalStateException    if the engine has no private key
+     */
+    public void decrypt(@NonNull final ReadableByteChannel in,
+                        @NonNull final WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        decrypt(Channels.newInputStream(in), Channels.newOutputStream(out));
+    }
+
+    private void transform(final InputStream in, final OutputStream out,
+                           final boolean isEncrypt)
+            throws IOException, GeneralSecurityException {
+        final int inBlock = inputBlockSize(isEncrypt);
+        final byte[] input = new byte[inBlock];
+        final byte[] output = new byte[mKeySize / 8];
+        try {
+            final Cipher cipher = cipher(isEncrypt);
+            int len;
+            while ((len = AesGcmEngine.readFully(in, input, inBlock)) > 0) {
+                out.write(output, 0, cipher.doFinal(input, 0, len, output, 0));
+                if (len < inBlock) break;
+            }
+        } catch (GeneralSecurityException e) {
+            (isEncrypt ? mEncryptCipher : mDecryptCipher).remove();
+            throw e;
+        }
+    }
+
+    private byte[] doFinal(final byte[] data, final boolean isEncrypt) {
+        if (data == null || data.length == 0) return null;
+        try {
+            final int inBlock = inputBlockSize(isEncrypt);
+            if (data.length <= inBlock) return cipher(isEncrypt).doFinal(data);
+            final int blocks = (data.length + inBlock - 1) / inBlock;
+            final int parallel = sParallelBlocks;
+            if (parallel > 0 && blocks >= parallel && ParallelChunks.CPU_COUNT > 1) {
+                return doFinalParallel(data, inBlock, blocks, isEncrypt);
+            }
+            // every block of output is at most the size of modulus
+            final byte[] ret = new byte[blocks * (mKeySize / 8)];
+            final Cipher cipher = cipher(isEncrypt);
+            int outLen = 0;
+            for (int offset = 0; offset < data.length; offset += inBlock) {
+                final int len = Math.min(inBlock, data.length - offset);
+                outLen += cipher.doFinal(data, offset, len, ret, outLen);
+            }
+            return outLen == ret.length ? ret : Arrays.copyOf(ret, outLen);
+        } catch (Throwable e) {
+            // the state of cipher is unknown after a failure
+            (isEncrypt ? mEncryptCipher : mDecryptCipher).remove();
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Process the blocks in chunks on the cpu pool, each thread with its own cipher.
+     */
+    private byte[] doFinalParallel(final byte[] data, final int inBlock, final int blocks,
+                                   final boolean isEncrypt) throws Exception {
+        final int outBlock = mKeySize / 8;
+        final byte[] ret = new byte[blocks * outBlock];
+        final int[] outLens = new int[blocks];
+        final int chunkBlocks = Math.max(1, blocks / (ParallelChunks.CPU_COUNT * 4));
+        final int chunks = (blocks + chunkBlocks - 1) / chunkBlocks;
+        ParallelChunks.run(chunks, new ParallelChunks.Chunk() {
+            @Override
+            public void run(final int index) throws Exception {
+                try {
+                    final Cipher cipher = cipher(isEncrypt);
+                    final int end = Math.min(blocks, (index + 1) * chunkBlocks);
+                    for (int i = index * chunkBlocks; i < end; i++) {
+                        final int offset = i * inBlock;
+                        final int len = Math.min(inBlock, data.length - offset);
+                        outLens[i] = cipher.doFinal(data, offset, len, ret, i * outBlock);
+                    }
+                } catch (Exception e) {
+                    (isEncrypt ? mEncryptCipher : mDecryptCipher).remove();
+                    throw e;
+                }
+            }
+        });
+        // the blocks of plaintext may be shorter than the modulus, close the gaps
+        int outLen = 0;
+        for (int i = 0; i < blocks; i++) {
+            if (outLen != i * outBlock) {
+                System.arraycopy(ret, i * outBlock, ret, outLen, outLens[i]);
+            }
+            outLen += outLens[i];
+        }
+        return outLen == ret.length ? ret : Arrays.copyOf(ret, outLen);
+    }
+
+    private int inputBlockSize(final boolean isEncrypt) {
+        final int size = mKeySize / 8;
+        if (!isEncrypt) return size;
+        final String lowerTrans = mTransformation.toLowerCase();
+        if (lowerTrans.endsWith("pkcs1padding")) return size - 11;
+        if (lowerTrans.contains("oaep")) {
+            // 2 * the size of hash + 2, SHA-1 if not named
+            int hashLen = 20;
+            if (lowerTrans.contains("sha-224")) hashLen = 28;
+            else if (lowerTrans.contains("sha-256")) hashLen = 32;
+            else if (lowerTrans.contains("sha-384")) hashLen = 48;
+            else if (lowerTrans.contains("sha-512")) hashLen = 64;
+            return size - 2 * hashLen - 2;
+        }
+        return size;
+    }
+
+    private Cipher cipher(final boolean isEncrypt) throws GeneralSecurityException {
+        final ThreadLocal<Cipher> local = isEncrypt ? mEncryptCipher : mDecryptCipher;
+        Cipher cipher = local.get();
+        if (cipher == null) {
+            final Key key = isEncrypt ? mPublicKey : mPrivateKey;
+            cipher = Cipher.getInstance(mTransformation);
+            cipher.init(isEncrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, key);
+            local.set(cipher);
+        }
+        return cipher;
+    }
+}
@@ -10,6 +10,8 @@ import android.text.TextUtils;
 import android.util.Base64;
 
 import com.huaxia.xlib.R;
+import com.huaxia.xlib.encrypt.EncryptUtils;
+import com.huaxia.xlib.io.LineIndex;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -23,9 +25,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -1258,23 +1257,23 @@ public class FileUtils {
      * @return the number of lines of file
      */
     public static int getFileLines(final File file) {
+        if (LINE_SEP.endsWith("\n")) {
+            try {
+                return (int) (LineIndex.countNewlines(file) + 1);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return 1;
+            }
+        }
         int count = 1;
         InputStream is = null;
         try {
             is = new BufferedInputStream(new FileInputStream(file));
             byte[] buffer = new byte[1024];
             int readChars;
-            if (LINE_SEP.endsWith("\n")) {
-                while ((readChars = is.read(buffer, 0, 1024)) != -1) {
-                    for (int i = 0; i < readChars; ++i) {
-                        if (buffer[i] == '\n') ++count;
-                    }
-                }
-            } else {
-                while ((readChars = is.read(buffer, 0, 1024)) != -1) {
-                    for (int i = 0; i < readChars; ++i) {
-                        if (buffer[i] == '\r') ++count;
-                    }
+            while ((readChars = is.read(buffer, 0, 1024)) != -1) {
+                for (int i = 0; i < readChars; ++i) {
+                    if (buffer[i] == '\r') ++count;
                 }
             }
         } catch (IOException e) {
@@ -1439,30 +1438,7 @@ public class FileUtils {
      * @return the md5 of file
      */
     public static byte[] getFileMD5(final File file) {
-        if (file == null) return null;
-        DigestInputStream dis = null;
-        try {
-            FileInputStream fis = new FileInputStream(file);
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            dis = new DigestInputStream(fis, md);
-            byte[] buffer = new byte[1024 * 256];
-            while (true) {
-                if (!(dis.read(buffer) > 0)) break;
-            }
-            md = dis.getMessageDigest();
-            return md.digest();
-        } catch (NoSuchAlgorithmException | IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (dis != null) {
-                    dis.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return null;
+        return EncryptUtils.encryptMD5File(file);
     }
 
     /**
@@ -0,0 +1,128 @@
+package com.huaxia.xlib.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓冲区池。
+ * <p>按 2 的幂分级，从 4 KB 到 1 MB，每级最多留 4 个，借出的缓冲区不小于要的大小。堆上的
+ * byte[] 和直接缓冲区各一套。超过 1 MB 的直接创建、还回来也不留。</p>
+ * <pre>
+ * byte[] buffer = BufferPool.acquire(64 * 1024);
+ * try {
+ *     ...
+ * } finally {
+ *     BufferPool.release(buffer);
+ * }
+ * </pre>
+ * <p>还回去之后就不能再用了，同一个缓冲区也不要还两次。</p>
+ *
+ * @author xzy
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT     = 12;
+    private static final int MAX_SHIFT     = 20;
+    private static final int MAX_PER_CLASS = 4;
+
+    private static final SizeClass<byte[]>[]     HEAP   = newClasses();
+    private static final SizeClass<ByteBuffer>[] DIRECT = newClasses();
+
+    private BufferPool() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    /**
+     * Return a buffer of at least the size, from the pool if there is one.
+     *
+     * @param minSize The minimum size.
+     * @return the buffer
+     */
+    public static byte[] acquire(final int minSize) {
+        final int index = classIndex(minSize);
+        if (index < 0) return new byte[minSize];
+        final byte[] buffer = HEAP[index].poll();
+        return buffer != null ? buffer : new byte[1 << (index + MIN_SHIFT)];
+    }
+
+    /**
+     * Return the buffer to the pool.
+     *
+     * @param buffer The buffer from {@link #acquire(int)}.
+     */
+    public static void release(final byte[] buffer) {
+        if (buffer == null) return;
+        final int index = exactClassIndex(buffer.length);
+        if (index >= 0) HEAP[index].offer(buffer);
+    }
+
+    /**
+     * Return a cleared direct buffer of at least the size, from the pool if there is one.
+     *
+     * @param minSize The minimum size.
+     * @return the direct buffer
+     */
+    public static ByteBuffer acquireDirect(final int minSize) {
+        final int index = classIndex(minSize);
+        if (index < 0) return ByteBuffer.allocateDirect(minSize);
+        final ByteBuffer buffer = DIRECT[index].poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT));
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return the direct buffer to the pool.
+     *
+     * @param buffer The buffer from {@link #acquireDirect(int)}.
+     */
+    public static void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        final int index = exactClassIndex(buffer.capacity());
+        if (index >= 0) DIRECT[index].offer(buffer);
+    }
+
+    private static int classIndex(final int size) {
+        if (size > 1 << MAX_SHIFT) return -1;
+        if (size <= 1 << MIN_SHIFT) return 0;
+        // the shift of the power of 2 not less than size
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int exactClassIndex(final int size) {
+        if (size < 1 << MIN_SHIFT || size > 1 << MAX_SHIFT || Integer.bitCount(size) != 1) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(size) - MIN_SHIFT;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> SizeClass<T>[] newClasses() {
+        final SizeClass<T>[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass<>();
+        }
+        return classes;
+    }
+
+    private static final class SizeClass<T> {
+
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger            count = new AtomicInteger();
+
+        T poll() {
+            final T t = queue.poll();
+            if (t != null) count.decrementAndGet();
+            return t;
+        }
+
+        void offer(final T t) {
+            if (count.incrementAndGet() > MAX_PER_CLASS) {
+                count.decrementAndGet();
+                return;
+            }
+            queue.offer(t);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package com.huaxia.xlib.io;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -18,8 +17,11 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -32,7 +34,7 @@ import java.util.List;
 @SuppressWarnings("unused")
 public final class IOUtils {
 
-    private static int sBufferSize = 524288;
+    private static volatile int sBufferSize = 524288;
 
     private IOUtils() {
         throw new UnsupportedOperationException("u can't instantiate me...");
@@ -86,10 +88,20 @@ public final class IOUtils {
                                           final InputStream is,
                                           final boolean append) {
         if (!createOrExistsFile(file) || is == null) return false;
-        OutputStream os = null;
+        FileOutputStream os = null;
+        byte[] data = null;
         try {
-            os = new BufferedOutputStream(new FileOutputStream(file, append));
-            byte data[] = new byte[sBufferSize];
+            os = new FileOutputStream(file, append);
+            if (is instanceof FileInputStream) {
+                // from file to file, let the kernel copy it
+                final FileChannel in = ((FileInputStream) is).getChannel();
+                final long position = filePosition(in);
+                if (position >= 0) {
+                    transfer(in, position, in.size() - position, os.getChannel());
+                    return true;
+                }
+            }
+            data = BufferPool.acquire(sBufferSize);
             for (int len; (len = is.read(data)) != -1; ) {
                 os.write(data, 0, len);
             }
@@ -98,6 +110,7 @@ public final class IOUtils {
             e.printStackTrace();
             return false;
         } finally {
+            BufferPool.release(data);
             try {
                 is.close();
             } catch (IOException e) {
@@ -113,6 +126,80 @@ public final class IOUtils {
         }
     }
 
+    /**
+     * Return the position of the channel of a regular file with data, -1 otherwise.
+     */
+    private static long filePosition(final FileChannel channel) {
+        try {
+            // a /proc file reports no size for what it has, a pipe or socket can't seek
+            return channel.size() > 0 ? channel.position() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copy the file to the file by {@link FileChannel#transferTo}, without copying by a
+     * buffer of java.
+     *
+     * @param srcPath  The path of source file.
+     * @param destPath The path of destination file.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean copyFile(final String srcPath, final String destPath) {
+        return copyFile(getFileByPath(srcPath), getFileByPath(destPath), false);
+    }
+
+    /**
+     * Copy the file to the file by {@link FileChannel#transferTo}, without copying by a
+     * buffer of java.
+     *
+     * @param src    The source file.
+     * @param dest   The destination file.
+     * @param append True to append, false otherwise.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean copyFile(final File src, final File dest, final boolean append) {
+        if (!isFileExists(src) || !createOrExistsFile(dest)) return false;
+        try {
+            return writeFileFromIS(dest, new FileInputStream(src), append);
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Copy the file to the output stream by {@link FileChannel#transferTo}. The stream is not
+     * closed.
+     *
+     * @param src The source file.
+     * @param os  The output stream.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean copyFile(final File src, final OutputStream os) {
+        if (!isFileExists(src) || os == null) return false;
+        FileChannel in = null;
+        try {
+            in = new FileInputStream(src).getChannel();
+            WritableByteChannel out = os instanceof FileOutputStream
+                    ? ((FileOutputStream) os).getChannel() : Channels.newChannel(os);
+            transfer(in, 0, in.size(), out);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Write file from bytes by stream.
      *
@@ -494,6 +581,8 @@ public final class IOUtils {
 
     /**
      * Return the lines in file.
+     * <p>It reads from the first line, use {@link LineIndex} to read the lines of big files
+     * many times.</p>
      *
      * @param file        The file.
      * @param st          The line's index of start.
@@ -611,7 +700,7 @@ public final class IOUtils {
     public static byte[] readFile2BytesByStream(final File file) {
         if (!isFileExists(file)) return null;
         try {
-            return is2Bytes(new FileInputStream(file));
+            return is2Bytes(new FileInputStream(file), file.length());
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return null;
@@ -699,8 +788,8 @@ public final class IOUtils {
     }
 
     /**
-     * Set the buffer's size.
-     * <p>Default size equals 8192 bytes.</p>
+     * Set the buffer's size, rounded up to the size of {@link BufferPool}.
+     * <p>Default size equals 524288 bytes.</p>
      *
      * @param bufferSize The buffer's size.
      */
@@ -751,35 +840,88 @@ public final class IOUtils {
     }
 
     private static byte[] is2Bytes(final InputStream is) {
+        return is2Bytes(is, -1);
+    }
+
+    /**
+     * Read the stream to the end.
+     * <p>With the length known, read into an array of the length directly. Otherwise read into
+     * the buffers of pool and copy them once to the array of the total length, rather than
+     * growing an array.</p>
+     */
+    private static byte[] is2Bytes(final InputStream is, final long expectedLength) {
         if (is == null) return null;
-        ByteArrayOutputStream os = null;
+        final List<byte[]> chunks = new ArrayList<>();
         try {
-            os = new ByteArrayOutputStream();
-            byte[] b = new byte[sBufferSize];
-            int len;
-            while ((len = is.read(b, 0, sBufferSize)) != -1) {
-                os.write(b, 0, len);
+            if (expectedLength > 0 && expectedLength < Integer.MAX_VALUE - 8) {
+                final byte[] ret = new byte[(int) expectedLength];
+                int read = 0;
+                for (int len; read < ret.length
+                        && (len = is.read(ret, read, ret.length - read)) != -1; ) {
+                    read += len;
+                }
+                if (read < ret.length) return Arrays.copyOf(ret, read);
+                final int next = is.read();
+                // the length is right as usual
+                if (next == -1) return ret;
+                // the file grows while reading, keep on reading
+                chunks.add(ret);
+                chunks.add(new byte[]{(byte) next});
             }
-            return os.toByteArray();
+            long total = 0;
+            for (byte[] chunk : chunks) {
+                total += chunk.length;
+            }
+            int lastLen = chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).length;
+            while (true) {
+                final byte[] buffer = BufferPool.acquire(sBufferSize);
+                chunks.add(buffer);
+                int len = 0;
+                for (int n; len < buffer.length
+                        && (n = is.read(buffer, len, buffer.length - len)) != -1; ) {
+                    len += n;
+                }
+                total += len;
+                lastLen = len;
+                if (len < buffer.length) break;
+            }
+            if (total > Integer.MAX_VALUE - 8) throw new IOException("stream too long");
+            final byte[] ret = new byte[(int) total];
+            int offset = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                final byte[] chunk = chunks.get(i);
+                final int len = i == chunks.size() - 1 ? lastLen : chunk.length;
+                System.arraycopy(chunk, 0, ret, offset, len);
+                offset += len;
+            }
+            return ret;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         } finally {
-            try {
-                is.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            for (byte[] chunk : chunks) {
+                BufferPool.release(chunk);
             }
             try {
-                if (os != null) {
-                    os.close();
-                }
+                is.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    private static void transfer(final FileChannel in, final long position, final long count,
+                                 final WritableByteChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            final long n = in.transferTo(position + done, count - done, out);
+            // the file is shorter than it was
+            if (n <= 0) break;
+            done += n;
+        }
+        in.position(position + done);
+    }
+
     /**
      * Close the io stream.
      *
@@ -0,0 +1,391 @@
+package com.huaxia.xlib.io;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 文本文件的行索引。
+ * <p>扫描一遍内存映射的文件，每 1024 行记一个起始位置，之后读任意几行只要从最近的记录往后
+ * 找，不用从头读，翻看几百 MB 的日志也很快。扫描每次取 8 个字节一起找换行。索引可以存在
+ * 文件旁边（<i>文件名.lidx</i>），文件的大小和修改时间都没变时直接加载。</p>
+ * <p>行以 '\n' 分隔，行尾的 '\r' 会去掉，最后一行没有换行也算一行，和
+ * {@link java.io.BufferedReader#readLine()} 对 '\n' 和 "\r\n" 的处理相同。只追加的日志可以用
+ * {@link #refresh()} 只扫描新增的部分。</p>
+ *
+ * @author xzy
+ */
+public final class LineIndex {
+
+    private static final int    STRIDE       = 1024;
+    private static final long   WINDOW_SIZE  = 32 * 1024 * 1024;
+    private static final int    INDEX_MAGIC  = 0x4C494458;
+    private static final int    INDEX_VER    = 1;
+    private static final String INDEX_SUFFIX = ".lidx";
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LFS  = ONES * '\n';
+
+    private final File    mFile;
+    private final boolean mPersist;
+
+    private volatile State mState;
+
+    private LineIndex(final File file, final boolean persist, final State state) {
+        mFile = file;
+        mPersist = persist;
+        mState = state;
+    }
+
+    /**
+     * Return the index of file, built by scanning the file.
+     *
+     * @param file The file.
+     * @return the index of file
+     * @throws IOException if failed to read
+     */
+    public static LineIndex open(@NonNull final File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Return the index of file.
+     *
+     * @param file    The file.
+     * @param persist True to load the index saved beside the file if it is up to date, and to
+     *                save it after scanning, false otherwise.
+     * @return the index of file
+     * @throws IOException if failed to read
+     */
+    public static LineIndex open(@NonNull final File file, final boolean persist)
+            throws IOException {
+        if (!file.isFile()) throw new IOException("not a file: " + file);
+        State state = persist ? load(file) : null;
+        if (state == null) {
+            state = scan(file, new State(), STRIDE);
+            if (persist) save(file, state);
+        }
+        return new LineIndex(file, persist, state);
+    }
+
+    /**
+     * Return the number of '\n' in file, by the scan of 8 bytes at a time.
+     *
+     * @param file The file.
+     * @return the number of '\n' in file
+     * @throws IOException if failed to read
+     */
+    public static long countNewlines(@NonNull final File file) throws IOException {
+        return scan(file, new State(), 0).newlines;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Return the number of lines.
+     *
+     * @return the number of lines
+     */
+    public long getLineCount() {
+        return mState.lineCount();
+    }
+
+    /**
+     * Scan the part of file appended since the index was built, for the files which are only
+     * appended, such as logs. The index is built again if the file becomes shorter.
+     *
+     * @throws IOException if failed to read
+     */
+    public synchronized void refresh() throws IOException {
+        final State state = mState;
+        final long length = mFile.length();
+        if (length == state.length && mFile.lastModified() == state.lastModified) return;
+        final State next = length < state.length
+                ? scan(mFile, new State(), STRIDE)
+                : scan(mFile, state.copy(), STRIDE);
+        if (mPersist) save(mFile, next);
+        mState = next;
+    }
+
+    /**
+     * Return the lines in file.
+     *
+     * @param st  The line's index of start, from 1.
+     * @param end The line's index of end, inclusive.
+     * @return the lines in file, null if st is greater than end
+     * @throws IOException if failed to read
+     */
+    public List<String> getLines(final long st, final long end) throws IOException {
+        return getLines(st, end, null);
+    }
+
+    /**
+     * Return the lines in file.
+     *
+     * @param st          The line's index of start, from 1.
+     * @param end         The line's index of end, inclusive.
+     * @param charsetName The name of charset, null to use the default charset.
+     * @return the lines in file, null if st is greater than end
+     * @throws IOException if failed to read
+     */
+    public List<String> getLines(final long st, final long end, final String charsetName)
+            throws IOException {
+        if (st > end) return null;
+        final State state = mState;
+        final long first = Math.max(1, st) - 1;
+        final long last = Math.min(end, state.lineCount());
+        final List<String> ret = new ArrayList<>();
+        if (first >= last) return ret;
+        final Charset charset = charsetName == null
+                ? Charset.defaultCharset() : Charset.forName(charsetName);
+        final int entry = (int) (first / STRIDE);
+        long pos = state.offsets[entry];
+        long skip = first - (long) entry * STRIDE;
+        try (FileChannel channel = new RandomAccessFile(mFile, "r").getChannel()) {
+            final Window window = new Window(channel, state.length);
+            for (; skip > 0; skip--) {
+                pos = window.nextNewline(pos) + 1;
+            }
+            byte[] bytes = new byte[256];
+            for (long i = first; i < last; i++) {
+                final long newline = window.nextNewline(pos);
+                long lineEnd = newline < 0 ? state.length : newline;
+                if (lineEnd > pos && window.get(lineEnd - 1) == '\r') lineEnd--;
+                final int len = (int) (lineEnd - pos);
+                if (len > bytes.length) bytes = new byte[Math.max(len, bytes.length * 2)];
+                window.get(pos, bytes, len);
+                ret.add(new String(bytes, 0, len, charset));
+                if (newline < 0) break;
+                pos = newline + 1;
+            }
+        }
+        return ret;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // scan
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Scan the file from the length scanned of state, keep the offset of every stride-th
+     * line if stride is positive.
+     */
+    private static State scan(final File file, final State state, final int stride)
+            throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            state.lastModified = file.lastModified();
+            final long size = channel.size();
+            for (long base = state.length; base < size; base += WINDOW_SIZE) {
+                final int len = (int) Math.min(WINDOW_SIZE, size - base);
+                final MappedByteBuffer buffer =
+                        channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                scanWindow(buffer, base, len, state, stride);
+                state.endsWithNewline = buffer.get(len - 1) == '\n';
+            }
+            state.length = Math.max(state.length, size);
+            return state;
+        }
+    }
+
+    private static void scanWindow(final MappedByteBuffer buffer, final long base,
+                                   final int len, final State state, final int stride) {
+        long newlines = state.newlines;
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            long mask = newlineMask(buffer.getLong(i));
+            if (mask == 0) continue;
+            final int count = Long.bitCount(mask);
+            if (stride <= 0 || newlines % stride + count < stride) {
+                newlines += count;
+                continue;
+            }
+            // a line to keep starts in this word, find it by the bits
+            while (mask != 0) {
+                newlines++;
+                if (newlines % stride == 0) {
+                    state.add(base + i + (Long.numberOfTrailingZeros(mask) >>> 3) + 1);
+                }
+                mask &= mask - 1;
+            }
+        }
+        for (; i < len; i++) {
+            if (buffer.get(i) != '\n') continue;
+            newlines++;
+            if (stride > 0 && newlines % stride == 0) state.add(base + i + 1);
+        }
+        state.newlines = newlines;
+    }
+
+    /**
+     * Return the word with 0x80 in the bytes which are '\n' and 0 in the others, exactly, as
+     * the carry never crosses the bytes.
+     */
+    private static long newlineMask(final long word) {
+        final long x = word ^ LFS;
+        return ~(((x & LOWS) + LOWS) | x | LOWS);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // persistence
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static File indexFile(final File file) {
+        return new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    private static State load(final File file) {
+        final File indexFile = indexFile(file);
+        if (!indexFile.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VER) return null;
+            if (in.readInt() != STRIDE) return null;
+            final State state = new State();
+            state.length = in.readLong();
+            state.lastModified = in.readLong();
+            if (state.length != file.length() || state.lastModified != file.lastModified()) {
+                return null;
+            }
+            state.newlines = in.readLong();
+            state.endsWithNewline = in.readBoolean();
+            final int count = in.readInt();
+            if (count < 1 || count - 1 != state.newlines / STRIDE) return null;
+            state.offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                state.offsets[i] = in.readLong();
+            }
+            state.count = count;
+            return state;
+        } catch (IOException e) {
+            // broken or old, scan again
+            return null;
+        }
+    }
+
+    private static void save(final File file, final State state) {
+        final File indexFile = indexFile(file);
+        final File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VER);
+            out.writeInt(STRIDE);
+            out.writeLong(state.length);
+            out.writeLong(state.lastModified);
+            out.writeLong(state.newlines);
+            out.writeBoolean(state.endsWithNewline);
+            out.writeInt(state.count);
+            for (int i = 0; i < state.count; i++) {
+                out.writeLong(state.offsets[i]);
+            }
+        } catch (IOException e) {
+            // the index is only a cache
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) tmp.delete();
+    }
+
+    /**
+     * The offsets of every STRIDE-th line from the line 0, and what is scanned.
+     */
+    private static final class State {
+
+        long[]  offsets = new long[]{0};
+        int     count   = 1;
+        long    newlines;
+        long    length;
+        long    lastModified;
+        boolean endsWithNewline;
+
+        long lineCount() {
+            return newlines + (length > 0 && !endsWithNewline ? 1 : 0);
+        }
+
+        void add(final long offset) {
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = offset;
+        }
+
+        State copy() {
+            final State state = new State();
+            state.offsets = Arrays.copyOf(offsets, Math.max(count, 1));
+            state.count = count;
+            state.newlines = newlines;
+            state.length = length;
+            state.lastModified = lastModified;
+            state.endsWithNewline = endsWithNewline;
+            return state;
+        }
+    }
+
+    /**
+     * The mapped window of file moving forward for reading.
+     */
+    private static final class Window {
+
+        private final FileChannel channel;
+        private final long        size;
+        private MappedByteBuffer  buffer;
+        private long              base;
+
+        Window(final FileChannel channel, final long size) {
+            this.channel = channel;
+            this.size = size;
+        }
+
+        /**
+         * Return the position of the next '\n' from the position, -1 if there is none.
+         */
+        long nextNewline(long pos) throws IOException {
+            while (pos < size) {
+                ensure(pos, 1);
+                final int limit = buffer.limit();
+                for (int i = (int) (pos - base); i < limit; i++) {
+                    if (buffer.get(i) == '\n') return base + i;
+                }
+                pos = base + limit;
+            }
+            return -1;
+        }
+
+        byte get(final long pos) throws IOException {
+            ensure(pos, 1);
+            return buffer.get((int) (pos - base));
+        }
+
+        void get(final long pos, final byte[] dst, final int len) throws IOException {
+            if (len == 0) return;
+            ensure(pos, len);
+            buffer.position((int) (pos - base));
+            buffer.get(dst, 0, len);
+        }
+
+        private void ensure(final long pos, final int len) throws IOException {
+            if (buffer != null && pos >= base && pos + len <= base + buffer.limit()) return;
+            base = pos;
+            final long mapSize = Math.min(Math.max(WINDOW_SIZE, len), size - pos);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, mapSize);
+        }
+    }
+}
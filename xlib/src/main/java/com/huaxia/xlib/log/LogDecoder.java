@@ -0,0 +1,218 @@
+package com.huaxia.xlib.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 日志二进制文件的解码器。
+ * <p>把 {@link LogUtils.Config#setFileFormat(int)} 为 {@link LogUtils#FILE_FORMAT_BINARY}
+ * 时写出的文件还原成和文本格式一样的内容，只依赖 JDK，可以在电脑上直接运行：</p>
+ * <pre>
+ * java -cp xlib.jar com.huaxia.xlib.log.LogDecoder [-tz GMT+8] in.bin [out.txt]
+ * </pre>
+ *
+ * @author xzy
+ */
+public final class LogDecoder {
+
+    private static final String LINE_SEP = System.getProperty("line.separator");
+    private static final char[] T = new char[]{'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private LogDecoder() {
+        throw new UnsupportedOperationException("u can't instantiate me...");
+    }
+
+    public static void main(final String[] args) throws IOException {
+        TimeZone timeZone = TimeZone.getDefault();
+        int index = 0;
+        if (args.length > 1 && "-tz".equals(args[0])) {
+            timeZone = TimeZone.getTimeZone(args[1]);
+            index = 2;
+        }
+        if (args.length - index < 1 || args.length - index > 2) {
+            System.err.println("usage: LogDecoder [-tz <zone>] <in> [out]");
+            System.exit(1);
+            return;
+        }
+        final File in = new File(args[index]);
+        if (args.length - index == 2) {
+            try (Writer out = new OutputStreamWriter(new BufferedOutputStream(
+                    new FileOutputStream(args[index + 1])), StandardCharsets.UTF_8)) {
+                decode(in, out, timeZone);
+            }
+        } else {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            decode(in, out, timeZone);
+            out.flush();
+        }
+    }
+
+    /**
+     * Return whether the file is a binary log file.
+     *
+     * @param file The file.
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public static boolean isBinaryLog(final File file) {
+        try (InputStream is = new FileInputStream(file)) {
+            final byte[] magic = new byte[LogEncoder.MAGIC.length];
+            int read = 0;
+            while (read < magic.length) {
+                final int n = is.read(magic, read, magic.length - read);
+                if (n < 0) return false;
+                read += n;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != LogEncoder.MAGIC[i]) return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decode the binary log file to text, in the time zone of this machine.
+     *
+     * @param file The binary log file.
+     * @param out  The writer of text.
+     * @throws IOException if the file can't be read or is broken
+     */
+    public static void decode(final File file, final Writer out) throws IOException {
+        decode(file, out, TimeZone.getDefault());
+    }
+
+    /**
+     * Decode the binary log file to text, the file compressed by gzip as well.
+     *
+     * @param file     The binary log file.
+     * @param out      The writer of text.
+     * @param timeZone The time zone of the times.
+     * @throws IOException if the file can't be read or is broken
+     */
+    public static void decode(final File file, final Writer out, final TimeZone timeZone)
+            throws IOException {
+        InputStream is = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) is = new GZIPInputStream(is);
+        try (InputStream in = new BufferedInputStream(is)) {
+            decode(in, out, timeZone);
+        }
+    }
+
+    /**
+     * Decode the binary log stream to text.
+     *
+     * @param is       The binary log stream.
+     * @param out      The writer of text.
+     * @param timeZone The time zone of the times.
+     * @throws IOException if the stream can't be read or is broken
+     */
+    public static void decode(final InputStream is, final Writer out, final TimeZone timeZone)
+            throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        final SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS ", Locale.getDefault());
+        sdf.setTimeZone(timeZone);
+        final List<String> dictionary = new ArrayList<>();
+        final byte[] magic = new byte[LogEncoder.MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != LogEncoder.MAGIC[i]) throw new IOException("not a binary log");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != LogEncoder.VERSION) {
+            throw new IOException("unsupported version of binary log: " + version);
+        }
+        long time = readVarLong(in);
+        try {
+            while (true) {
+                final int header = in.read();
+                if (header < 0) break;
+                final int kind = header & 0x07;
+                if (kind == LogEncoder.KIND_DEFINE) {
+                    dictionary.add(readString(in));
+                    continue;
+                }
+                if (kind == LogEncoder.KIND_CONTROL) {
+                    final int control = header >>> 3;
+                    if (control == LogEncoder.CONTROL_HEAD) {
+                        out.write(readString(in));
+                    } else if (control == LogEncoder.CONTROL_RESET) {
+                        dictionary.clear();
+                        time = readVarLong(in);
+                    } else {
+                        throw new IOException("unknown control of binary log: " + control);
+                    }
+                    continue;
+                }
+                int thread = header >>> 3;
+                if (thread == LogEncoder.THREAD_INLINE) thread = (int) readVarLong(in);
+                final long zigzag = readVarLong(in);
+                time += (zigzag >>> 1) ^ -(zigzag & 1);
+                final String tag = lookup(dictionary, (int) readVarLong(in));
+                final int site = (int) readVarLong(in);
+                final String body = readString(in);
+                out.write(sdf.format(new Date(time)));
+                out.write(T[kind]);
+                out.write('/');
+                out.write(tag);
+                if (site != 0) {
+                    out.write(" [");
+                    out.write(thread == 0 ? "" : lookup(dictionary, thread - 1));
+                    out.write(", ");
+                    out.write(lookup(dictionary, site - 1));
+                    out.write("]: ");
+                } else {
+                    out.write(": ");
+                }
+                out.write(body);
+                out.write(LINE_SEP);
+            }
+        } catch (EOFException e) {
+            // The last record was cut off when the process died, the rest is fine.
+        }
+    }
+
+    private static String lookup(final List<String> dictionary, final int id)
+            throws IOException {
+        if (id < 0 || id >= dictionary.size()) {
+            throw new IOException("undefined id of binary log: " + id);
+        }
+        return dictionary.get(id);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint of binary log");
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final long len = readVarLong(in);
+        if (len < 0 || len > Integer.MAX_VALUE) throw new IOException("malformed string");
+        final byte[] bytes = new byte[(int) len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
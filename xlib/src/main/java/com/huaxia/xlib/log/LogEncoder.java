@@ -0,0 +1,191 @@
+package com.huaxia.xlib.log;
+
+import java.util.HashMap;
+
+/**
+ * 日志二进制格式的编码器。
+ * <p>文件以 "XLOG"、版本号和打开时的毫秒时间开头，之后每条都以一个头字节开始：低 3 位
+ * 是级别，高 5 位是线程在字典中的序号加一（放不下时为 31，后跟 varint）。时间记成与上一
+ * 条之差的 zigzag varint，tag、线程名和调用位置只在第一次出现时写一次定义，之后只写序号。
+ * 追加到已有的文件或字典太大时，写一个重置，重新开始字典和时间基准。
+ * 用 {@link LogDecoder} 还原成文本。</p>
+ *
+ * @author xzy
+ */
+final class LogEncoder {
+
+    static final byte[] MAGIC = new byte[]{'X', 'L', 'O', 'G'};
+    static final int VERSION = 1;
+
+    /**
+     * The low 3 bits of the header byte, 0 to 5 are the levels from V to A.
+     */
+    static final int KIND_DEFINE = 6;
+    static final int KIND_CONTROL = 7;
+    static final int CONTROL_HEAD = 0;
+    static final int CONTROL_RESET = 1;
+    static final int THREAD_INLINE = 31;
+
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+
+    private final HashMap<String, Integer> mDictionary = new HashMap<>();
+    private byte[] mBuf = new byte[16 * 1024];
+    private int mLen;
+    private long mLastTime;
+
+    /**
+     * Start a new file, the dictionary and the time base restart.
+     *
+     * @param time The time of file.
+     * @param head The head of file, such as the info of device.
+     */
+    void startFile(final long time, final String head) {
+        mDictionary.clear();
+        mLastTime = time;
+        ensure(MAGIC.length + 1 + 10);
+        System.arraycopy(MAGIC, 0, mBuf, mLen, MAGIC.length);
+        mLen += MAGIC.length;
+        mBuf[mLen++] = VERSION;
+        writeVarLong(time);
+        if (head != null) {
+            writeByte(CONTROL_HEAD << 3 | KIND_CONTROL);
+            writeString(head);
+        }
+    }
+
+    /**
+     * Encode a record.
+     *
+     * @param level      The level from 0 (V) to 5 (A).
+     * @param time       The time of record.
+     * @param tag        The tag.
+     * @param threadName The name of thread, null if the head is off.
+     * @param site       The call site, null if the head is off.
+     * @param body       The body.
+     */
+    void encode(final int level, final long time, final String tag,
+                final String threadName, final String site, final String body) {
+        if (mDictionary.size() > MAX_DICTIONARY_SIZE) resume(mLastTime);
+        final int tagId = intern(tag);
+        final int threadId = threadName == null ? -1 : intern(threadName);
+        final int siteId = site == null ? -1 : intern(site);
+        final int thread = threadId + 1;
+        writeByte((Math.min(thread, THREAD_INLINE) << 3) | level);
+        if (thread >= THREAD_INLINE) writeVarLong(thread);
+        final long delta = time - mLastTime;
+        mLastTime = time;
+        writeVarLong((delta << 1) ^ (delta >> 63));
+        writeVarLong(tagId);
+        writeVarLong(siteId + 1);
+        writeString(body);
+    }
+
+    /**
+     * Restart the dictionary and the time base in the middle of a file.
+     *
+     * @param time The new time base.
+     */
+    void resume(final long time) {
+        mDictionary.clear();
+        mLastTime = time;
+        writeByte(CONTROL_RESET << 3 | KIND_CONTROL);
+        writeVarLong(time);
+    }
+
+    int size() {
+        return mLen;
+    }
+
+    byte[] buffer() {
+        return mBuf;
+    }
+
+    void reset() {
+        mLen = 0;
+    }
+
+    private int intern(final String value) {
+        final String key = value == null ? "" : value;
+        Integer id = mDictionary.get(key);
+        if (id == null) {
+            id = mDictionary.size();
+            mDictionary.put(key, id);
+            writeByte(KIND_DEFINE);
+            writeString(key);
+        }
+        return id;
+    }
+
+    private void writeByte(final int b) {
+        ensure(1);
+        mBuf[mLen++] = (byte) b;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            mBuf[mLen++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mBuf[mLen++] = (byte) value;
+    }
+
+    /**
+     * Write the varint length and the UTF-8 bytes of the string, without a byte array.
+     */
+    private void writeString(final String s) {
+        final int len = s.length();
+        int utfLen = 0;
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                utfLen++;
+            } else if (c < 0x800) {
+                utfLen += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utfLen += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utfLen++;
+            } else {
+                utfLen += 3;
+            }
+        }
+        writeVarLong(utfLen);
+        ensure(utfLen);
+        final byte[] buf = mBuf;
+        int pos = mLen;
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | c >> 6);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | cp >> 18);
+                buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // a lone surrogate is written as '?' like String.getBytes
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | c >> 12);
+                buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        mLen = pos;
+    }
+
+    private void ensure(final int more) {
+        if (mLen + more <= mBuf.length) return;
+        final byte[] buf = new byte[Math.max(mBuf.length * 2, mLen + more)];
+        System.arraycopy(mBuf, 0, buf, 0, mLen);
+        mBuf = buf;
+    }
+}
@@ -0,0 +1,570 @@
+package com.huaxia.xlib.log;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import com.huaxia.xlib.common.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 日志的异步追加器。
+ * <p>只处理要写文件的记录，控制台输出由 {@link LogUtils} 在调用线程完成。调用线程把记录
+ * 填进预先分配好的环形缓冲区的槽位，不创建任何 Runnable；还没格式化的记录由唯一的后台线程
+ * 交给 {@link LogUtils} 解析调用位置并格式化，再成批编码后通过一直打开的
+ * {@link FileChannel} 一次写入，并按日期和大小切换文件，二进制格式由 {@link LogEncoder} 编码，旧文件交给 {@link LogRetention}
+ * 清理。缓冲区满时按
+ * {@link LogUtils.Config#setFileBackpressure(int)} 处理。</p>
+ *
+ * @author xzy
+ */
+final class LogFileAppender {
+
+    private static final String TAG = "LogUtils";
+    private static final String LINE_SEP = System.getProperty("line.separator");
+    private static final char[] T = new char[]{'V', 'D', 'I', 'W', 'E', 'A'};
+    private static final String BINARY_EXTENSION = ".bin";
+    private static final long DAY_MILLIS = 86400000L;
+    private static final int FLUSH_CHARS = 32 * 1024;
+    private static final long IDLE_PARK_NANOS = 500_000_000L;
+
+    private final LogUtils.Config mConfig;
+    private final LogRetention mRetention;
+    private final Record[] mSlots;
+    private final int mMask;
+    /**
+     * Next sequence to claim by producers, and next sequence to take by the consumer or a
+     * producer dropping the oldest record.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private volatile boolean mConsumerParked;
+    private volatile Thread mConsumer;
+
+    // The following are only touched by the consumer thread.
+    private final StringBuilder mText = new StringBuilder(FLUSH_CHARS * 2);
+    private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer mBytes = ByteBuffer.allocate(FLUSH_CHARS * 4);
+    private final LogEncoder mBinary = new LogEncoder();
+    private final TimeZone mTimeZone = TimeZone.getDefault();
+    private final SimpleDateFormat mDateFormat =
+            new SimpleDateFormat("yyyy_MM_dd", Locale.getDefault());
+    private long mDay = Long.MIN_VALUE;
+    private String mDate;
+    private String mFilePath;
+    private FileChannel mChannel;
+    private boolean mFileBinary;
+    private long mFileSize;
+
+    LogFileAppender(final LogUtils.Config config, final int capacity, final Executor executor) {
+        mConfig = config;
+        mRetention = new LogRetention(config, executor);
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mSlots = new Record[size];
+        mMask = size - 1;
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new Record(i);
+        }
+    }
+
+    /**
+     * Return the count of records dropped because the buffer was full.
+     *
+     * @return the count of records dropped
+     */
+    long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Append the record to write to file, its tag and head are resolved later on the
+     * consumer.
+     *
+     * @param type       The type of record, the level and the format.
+     * @param tag        The tag of record.
+     * @param contents   The contents to format on the consumer, null if msg is given.
+     * @param msg        The formatted message, null to format the contents.
+     * @param callSite   The throwable created at the call site, null if not needed.
+     * @param threadName The name of calling thread, null if not needed.
+     */
+    void append(final int type, final String tag, final Object[] contents, final String msg,
+                final Throwable callSite, final String threadName) {
+        enqueue(type, tag, contents, callSite, threadName, null, null, msg);
+    }
+
+    /**
+     * Append the record to write to file, already formatted for console.
+     *
+     * @param type       The type of record, the level and the format.
+     * @param tag        The tag of record.
+     * @param threadName The name of calling thread, null if not needed.
+     * @param head       The head of file.
+     * @param site       The call site, null if not needed.
+     * @param msg        The formatted message.
+     */
+    void appendFormatted(final int type, final String tag, final String threadName,
+                         final String head, final String site, final String msg) {
+        enqueue(type, tag, null, null, threadName, head, site, msg);
+    }
+
+    private void enqueue(final int type, final String tag, final Object[] contents,
+                         final Throwable callSite, final String threadName,
+                         final String head, final String site, final String msg) {
+        final long time = System.currentTimeMillis();
+        final int level = type & 0x0f;
+        int spins = 0;
+        while (!offer(type, time, tag, contents, callSite, threadName, head, site, msg)) {
+            switch (mConfig.getFileBackpressure()) {
+                case LogUtils.BACKPRESSURE_DROP_OLDEST:
+                    if (poll(null)) mDroppedCount.incrementAndGet();
+                    break;
+                case LogUtils.BACKPRESSURE_DROP_BY_LEVEL:
+                    if (level < mConfig.getFileDropLevel()) {
+                        mDroppedCount.incrementAndGet();
+                        return;
+                    }
+                    // fall through, the records worth keeping wait like BLOCK
+                default:
+                    wakeConsumer();
+                    if (++spins < 64) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(100_000L);
+                    }
+                    break;
+            }
+        }
+        if (mConsumerParked) wakeConsumer();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // ring buffer
+    ///////////////////////////////////////////////////////////////////////////
+
+    private boolean offer(final int type, final long time, final String tag,
+                          final Object[] contents, final Throwable callSite,
+                          final String threadName, final String head, final String site,
+                          final String msg) {
+        long pos = mTail.get();
+        Record slot;
+        while (true) {
+            slot = mSlots[(int) pos & mMask];
+            final long dif = slot.sequence - pos;
+            if (dif == 0) {
+                if (mTail.compareAndSet(pos, pos + 1)) break;
+                pos = mTail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = mTail.get();
+            }
+        }
+        slot.type = type;
+        slot.time = time;
+        slot.tag = tag;
+        slot.contents = contents;
+        slot.callSite = callSite;
+        slot.threadName = threadName;
+        slot.head = head;
+        slot.site = site;
+        slot.msg = msg;
+        // publish, the volatile write orders the fields before it
+        slot.sequence = pos + 1;
+        ensureConsumer();
+        return true;
+    }
+
+    /**
+     * Take the eldest record into {@code out}, or just drop it if {@code out} is null.
+     *
+     * @return {@code true} if a record was taken
+     */
+    private boolean poll(final Record out) {
+        long pos = mHead.get();
+        Record slot;
+        while (true) {
+            slot = mSlots[(int) pos & mMask];
+            final long dif = slot.sequence - (pos + 1);
+            if (dif == 0) {
+                if (mHead.compareAndSet(pos, pos + 1)) break;
+                pos = mHead.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = mHead.get();
+            }
+        }
+        if (out != null) {
+            out.type = slot.type;
+            out.time = slot.time;
+            out.tag = slot.tag;
+            out.contents = slot.contents;
+            out.callSite = slot.callSite;
+            out.threadName = slot.threadName;
+            out.head = slot.head;
+            out.site = slot.site;
+            out.msg = slot.msg;
+        }
+        slot.clear();
+        slot.sequence = pos + mMask + 1;
+        return true;
+    }
+
+    private void ensureConsumer() {
+        if (mConsumer != null) return;
+        synchronized (this) {
+            if (mConsumer != null) return;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    consume();
+                }
+            }, "log-appender");
+            thread.setDaemon(true);
+            thread.start();
+            mConsumer = thread;
+        }
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = mConsumer;
+        if (consumer != null) LockSupport.unpark(consumer);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // consumer
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void consume() {
+        final Record record = new Record(0);
+        while (true) {
+            int count = 0;
+            while (poll(record)) {
+                try {
+                    if (record.head == null) LogUtils.format(record);
+                    write(record);
+                } catch (RuntimeException e) {
+                    // A formatter or supplier of the caller threw, the consumer goes on.
+                    Log.e(TAG, "log failed!", e);
+                }
+                record.clear();
+                // keep a batch bounded so a flood can't grow the text without limit
+                if (++count >= mSlots.length || mText.length() >= FLUSH_CHARS
+                        || mBinary.size() >= FLUSH_CHARS) {
+                    flush();
+                    count = 0;
+                }
+            }
+            flush();
+            mConsumerParked = true;
+            if (mHead.get() == mTail.get()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            mConsumerParked = false;
+        }
+    }
+
+    private void write(final Record record) {
+        final long local = record.time + mTimeZone.getOffset(record.time);
+        final long day = Math.floorDiv(local, DAY_MILLIS);
+        if (day != mDay) {
+            flush();
+            mDay = day;
+            mDate = mDateFormat.format(new Date(record.time));
+            closeFile();
+        }
+        final LogUtils.IFileWriter fileWriter = mConfig.getFileWriter();
+        final boolean binary =
+                fileWriter == null && mConfig.getFileFormat() == LogUtils.FILE_FORMAT_BINARY;
+        final String path = getFilePath(binary);
+        if (!path.equals(mFilePath)) {
+            flush();
+            closeFile();
+            if (!openFile(path, fileWriter, binary, record.time)) return;
+        }
+        if (fileWriter != null) {
+            fileWriter.write(path, formatLine(record, (int) (local - day * DAY_MILLIS)));
+            return;
+        }
+        if (binary) {
+            mBinary.encode((record.type & 0x0f) - LogUtils.V, record.time, record.tag,
+                    record.site == null ? null : record.threadName, record.site, record.msg);
+            return;
+        }
+        appendTime(mText, (int) (local - day * DAY_MILLIS));
+        mText.append(T[(record.type & 0x0f) - LogUtils.V])
+                .append('/')
+                .append(record.tag)
+                .append(record.head)
+                .append(record.msg)
+                .append(LINE_SEP);
+    }
+
+    private static String formatLine(final Record record, final int millisOfDay) {
+        StringBuilder sb = new StringBuilder();
+        appendTime(sb, millisOfDay);
+        return sb.append(T[(record.type & 0x0f) - LogUtils.V])
+                .append('/')
+                .append(record.tag)
+                .append(record.head)
+                .append(record.msg)
+                .append(LINE_SEP)
+                .toString();
+    }
+
+    /**
+     * Append "HH:mm:ss.SSS ", the same as the SimpleDateFormat used before.
+     */
+    private static void appendTime(final StringBuilder sb, final int millisOfDay) {
+        final int hour = millisOfDay / 3600000;
+        final int minute = millisOfDay / 60000 % 60;
+        final int second = millisOfDay / 1000 % 60;
+        final int millis = millisOfDay % 1000;
+        sb.append((char) ('0' + hour / 10)).append((char) ('0' + hour % 10)).append(':')
+                .append((char) ('0' + minute / 10)).append((char) ('0' + minute % 10))
+                .append(':')
+                .append((char) ('0' + second / 10)).append((char) ('0' + second % 10))
+                .append('.')
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10))
+                .append(' ');
+    }
+
+    private void flush() {
+        if (mText.length() == 0 && mBinary.size() == 0) return;
+        if (mChannel == null) {
+            mText.setLength(0);
+            mBinary.reset();
+            return;
+        }
+        final long start = mFileSize;
+        try {
+            if (mBinary.size() > 0) {
+                writeBytes(ByteBuffer.wrap(mBinary.buffer(), 0, mBinary.size()));
+            } else {
+                final CharBuffer chars = CharBuffer.wrap(mText);
+                mEncoder.reset();
+                while (true) {
+                    final CoderResult result = mEncoder.encode(chars, mBytes, true);
+                    if (result.isUnderflow()) {
+                        mEncoder.flush(mBytes);
+                        mBytes.flip();
+                        writeBytes(mBytes);
+                        break;
+                    }
+                    mBytes.flip();
+                    writeBytes(mBytes);
+                }
+            }
+            final long maxSize = mConfig.getFileMaxSize();
+            if (maxSize > 0 && mFileSize >= maxSize) rollFile();
+        } catch (IOException e) {
+            Log.e(TAG, "log to " + mFilePath + " failed!", e);
+            rollBack(start);
+            closeFile();
+        } finally {
+            mText.setLength(0);
+            mBytes.clear();
+            mBinary.reset();
+        }
+    }
+
+    /**
+     * Cut the file back to where the failed batch began, so a torn record doesn't break
+     * {@link LogDecoder} on the records behind it.
+     */
+    private void rollBack(final long position) {
+        try {
+            mChannel.truncate(position);
+            mChannel.position(position);
+            mFileSize = position;
+        } catch (IOException e) {
+            Log.e(TAG, "roll back " + mFilePath + " failed!", e);
+        }
+    }
+
+    private void writeBytes(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            mFileSize += mChannel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // files
+    ///////////////////////////////////////////////////////////////////////////
+
+    private String getFilePath(final boolean binary) {
+        return mConfig.getDir() + mConfig.getFilePrefix() + "_" + mDate + "_"
+                + mConfig.getProcessName() + getExtension(binary);
+    }
+
+    private String getExtension(final boolean binary) {
+        return binary ? BINARY_EXTENSION : mConfig.getFileExtension();
+    }
+
+    /**
+     * Open the file to append, or only create it if the records go to {@code fileWriter}.
+     */
+    private boolean openFile(final String path, final LogUtils.IFileWriter fileWriter,
+                             final boolean binary, final long time) {
+        final File file = new File(path);
+        final File dir = file.getParentFile();
+        if (dir == null || !(dir.exists() ? dir.isDirectory() : dir.mkdirs())) {
+            Log.e(TAG, "create " + path + " failed!");
+            return false;
+        }
+        final boolean isNew = !file.exists();
+        if (fileWriter != null) {
+            try {
+                if (isNew && file.createNewFile()) fileWriter.write(path, getDeviceInfo(mDate));
+            } catch (IOException e) {
+                Log.e(TAG, "create " + path + " failed!", e);
+                return false;
+            }
+            mFilePath = path;
+            mRetention.onOpened(path);
+            return true;
+        }
+        try {
+            mChannel = new RandomAccessFile(file, "rw").getChannel();
+            mFileSize = mChannel.size();
+            mChannel.position(mFileSize);
+        } catch (IOException e) {
+            Log.e(TAG, "create " + path + " failed!", e);
+            return false;
+        }
+        mFilePath = path;
+        mFileBinary = binary;
+        mRetention.onOpened(path);
+        if (binary) {
+            if (mFileSize == 0) {
+                mBinary.startFile(time, getDeviceInfo(mDate));
+            } else {
+                // appended by another run, the dictionary and the time base restart
+                mBinary.resume(time);
+            }
+        } else if (mFileSize == 0) {
+            mText.append(getDeviceInfo(mDate));
+        }
+        return true;
+    }
+
+    private void closeFile() {
+        final String path = mFilePath;
+        releaseFile();
+        if (path != null) mRetention.onClosed(path);
+    }
+
+    private void releaseFile() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mChannel = null;
+        }
+        mFilePath = null;
+    }
+
+    /**
+     * Rename the full file to the first free "_1", "_2"... name, the next record opens a
+     * new file at the original name.
+     */
+    private void rollFile() {
+        final String path = mFilePath;
+        releaseFile();
+        final String ext = getExtension(mFileBinary);
+        final String base = path.substring(0, path.length() - ext.length());
+        for (int i = 1; ; i++) {
+            final File rolled = new File(base + "_" + i + ext);
+            // the rolled one may have been compressed by the retention
+            if (rolled.exists() || new File(rolled.getPath() + ".gz").exists()) continue;
+            if (new File(path).renameTo(rolled)) {
+                mRetention.onClosed(rolled.getPath());
+            } else {
+                Log.e(TAG, "roll " + path + " failed!");
+                mRetention.onClosed(path);
+            }
+            return;
+        }
+    }
+
+    private static String getDeviceInfo(final String date) {
+        String versionName = "";
+        int versionCode = 0;
+        try {
+            PackageInfo pi = Utils.getApp()
+                    .getPackageManager()
+                    .getPackageInfo(Utils.getApp().getPackageName(), 0);
+            if (pi != null) {
+                versionName = pi.versionName;
+                versionCode = pi.versionCode;
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+        return "************* Log Head ****************" +
+                "\nDate of Log        : " + date +
+                "\nDevice Manufacturer: " + Build.MANUFACTURER +
+                "\nDevice Model       : " + Build.MODEL +
+                "\nAndroid Version    : " + Build.VERSION.RELEASE +
+                "\nAndroid SDK        : " + Build.VERSION.SDK_INT +
+                "\nApp VersionName    : " + versionName +
+                "\nApp VersionCode    : " + versionCode +
+                "\n************* Log Head ****************\n\n";
+    }
+
+    /**
+     * A record in a slot of the ring, its fields are published by the volatile
+     * {@link #sequence}. Unless the caller formatted it already,
+     * {@link LogUtils#format(Record)} fills {@link #tag}, {@link #head}, {@link #site} and
+     * {@link #msg} if not given on the consumer.
+     */
+    static final class Record {
+        volatile long sequence;
+        int type;
+        long time;
+        String tag;
+        String head;
+        String site;
+        Object[] contents;
+        Throwable callSite;
+        String threadName;
+        String msg;
+
+        Record(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void clear() {
+            tag = null;
+            head = null;
+            site = null;
+            contents = null;
+            callSite = null;
+            threadName = null;
+            msg = null;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.huaxia.xlib.log;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志文件的保留管理。
+ * <p>在内存里记着日志目录下的每个文件（段），只在第一次或目录、前缀变了时扫描一次目录，
+ * 之后由 {@link LogFileAppender} 在打开和关闭文件时通知。清理在后台一次做完：删掉超过
+ * {@link LogUtils.Config#setSaveDays(int)} 的，按需用 gzip 压缩已关闭的，再从最旧的删起直到
+ * 总大小不超过 {@link LogUtils.Config#setFileTotalMaxSize(long)}。多次通知只排一次清理。</p>
+ *
+ * @author xzy
+ */
+final class LogRetention {
+
+    private static final String TAG = "LogUtils";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final long DAY_MILLIS = 86400000L;
+
+    private final LogUtils.Config mConfig;
+    private final Executor mExecutor;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<String> mClosedPaths = new ConcurrentLinkedQueue<>();
+    private volatile String mActivePath;
+
+    // The following are only touched by the pass.
+    private final HashMap<String, Segment> mSegments = new HashMap<>();
+    private String mDir;
+    private String mPrefix;
+    private Pattern mPattern;
+
+    LogRetention(final LogUtils.Config config, final Executor executor) {
+        mConfig = config;
+        mExecutor = executor;
+    }
+
+    /**
+     * The file is opened to write, it is kept until closed.
+     *
+     * @param path The path of file.
+     */
+    void onOpened(final String path) {
+        mActivePath = path;
+        schedule();
+    }
+
+    /**
+     * The file is closed and won't be written anymore.
+     *
+     * @param path The path of file.
+     */
+    void onClosed(final String path) {
+        if (path.equals(mActivePath)) mActivePath = null;
+        mClosedPaths.add(path);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!mScheduled.compareAndSet(false, true)) return;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mScheduled.set(false);
+                try {
+                    clean();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "clean logs failed!", e);
+                }
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // pass
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void clean() {
+        final int saveDays = mConfig.getSaveDays();
+        final long totalMaxSize = mConfig.getFileTotalMaxSize();
+        final boolean compress = mConfig.isFileCompress();
+        if (saveDays <= 0 && totalMaxSize <= 0 && !compress) {
+            mClosedPaths.clear();
+            return;
+        }
+        final String dir = mConfig.getDir();
+        final String prefix = mConfig.getFilePrefix();
+        if (!dir.equals(mDir) || !prefix.equals(mPrefix)) scan(dir, prefix);
+        String path;
+        while ((path = mClosedPaths.poll()) != null) {
+            final File file = new File(path);
+            if (!dir.equals(file.getParent() + File.separator)) continue;
+            final Segment segment = newSegment(file);
+            if (segment == null || !file.isFile()) continue;
+            segment.closed = true;
+            mSegments.put(file.getName(), segment);
+        }
+        final String active = mActivePath;
+        final String activeName = active == null ? null : new File(active).getName();
+        if (activeName != null && !mSegments.containsKey(activeName)) {
+            final File file = new File(active);
+            final Segment segment = newSegment(file);
+            if (segment != null && dir.equals(file.getParent() + File.separator)) {
+                mSegments.put(activeName, segment);
+            }
+        }
+        final long today = Math.floorDiv(System.currentTimeMillis()
+                + TimeZone.getDefault().getOffset(System.currentTimeMillis()), DAY_MILLIS);
+
+        final List<Segment> segments = new ArrayList<>(mSegments.values());
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment o1, Segment o2) {
+                if (o1.day != o2.day) return o1.day < o2.day ? -1 : 1;
+                return Long.compare(o1.file.lastModified(), o2.file.lastModified());
+            }
+        });
+        long totalSize = 0;
+        for (Iterator<Segment> it = segments.iterator(); it.hasNext(); ) {
+            final Segment segment = it.next();
+            final boolean isActive = segment.file.getName().equals(activeName);
+            if (!isActive && saveDays > 0 && segment.day <= today - saveDays) {
+                delete(segment);
+                it.remove();
+                continue;
+            }
+            if (!isActive && compress && !segment.compressed
+                    && (segment.closed || segment.day < today)) {
+                compress(segment);
+            }
+            // the active one keeps growing, so take its size from the file every time
+            totalSize += isActive ? segment.file.length() : segment.size;
+        }
+        if (totalMaxSize <= 0) return;
+        for (Segment segment : segments) {
+            if (totalSize <= totalMaxSize) break;
+            if (segment.file.getName().equals(activeName)) continue;
+            if (!segment.closed && segment.day >= today) continue;
+            totalSize -= segment.size;
+            delete(segment);
+        }
+    }
+
+    private void scan(final String dir, final String prefix) {
+        mSegments.clear();
+        mDir = dir;
+        mPrefix = prefix;
+        mPattern = Pattern.compile("^" + Pattern.quote(prefix)
+                + "_([0-9]{4})_([0-9]{2})_([0-9]{2})_.*$");
+        final File[] files = new File(dir).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_EXTENSION)) {
+                // left by a compression the process didn't finish
+                if (mPattern.matcher(file.getName()).matches()) file.delete();
+                continue;
+            }
+            final Segment segment = newSegment(file);
+            if (segment != null && file.isFile()) mSegments.put(file.getName(), segment);
+        }
+    }
+
+    private Segment newSegment(final File file) {
+        final Matcher matcher = mPattern.matcher(file.getName());
+        if (!matcher.matches()) return null;
+        final Segment segment = new Segment(file, epochDay(
+                Integer.parseInt(matcher.group(1)),
+                Integer.parseInt(matcher.group(2)),
+                Integer.parseInt(matcher.group(3))));
+        segment.size = file.length();
+        segment.compressed = file.getName().endsWith(GZIP_EXTENSION);
+        return segment;
+    }
+
+    private void delete(final Segment segment) {
+        mSegments.remove(segment.file.getName());
+        if (!segment.file.delete() && segment.file.exists()) {
+            Log.e(TAG, "delete " + segment.file + " failed!");
+        }
+    }
+
+    private void compress(final Segment segment) {
+        final File file = segment.file;
+        final File gz = new File(file.getPath() + GZIP_EXTENSION);
+        final File temp = new File(gz.getPath() + TEMP_EXTENSION);
+        final byte[] buffer = new byte[8192];
+        try (InputStream is = new FileInputStream(file);
+             OutputStream os = new GZIPOutputStream(new FileOutputStream(temp), 8192)) {
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "compress " + file + " failed!", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(gz)) {
+            Log.e(TAG, "compress " + file + " failed!");
+            temp.delete();
+            return;
+        }
+        file.delete();
+        mSegments.remove(file.getName());
+        segment.file = gz;
+        segment.size = gz.length();
+        segment.compressed = true;
+        segment.closed = true;
+        mSegments.put(gz.getName(), segment);
+    }
+
+    /**
+     * Return the days since 1970-01-01 of the date, without a calendar.
+     */
+    private static long epochDay(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = Math.floorDiv(y, 400);
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static final class Segment {
+        File file;
+        final long day;
+        long size;
+        boolean compressed;
+        boolean closed;
+
+        Segment(File file, long day) {
+            this.file = file;
+            this.day = day;
+        }
+    }
+}
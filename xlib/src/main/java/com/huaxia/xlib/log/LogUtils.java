@@ -4,8 +4,6 @@ import android.annotation.SuppressLint;
 import android.content.ClipData;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
 import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
@@ -27,33 +25,23 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.FilenameFilter;
-import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
-import java.util.Formatter;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
@@ -84,6 +72,23 @@ public final class LogUtils {
     public @interface TYPE {
     }
 
+    public static final int BACKPRESSURE_BLOCK = 0;
+    public static final int BACKPRESSURE_DROP_OLDEST = 1;
+    public static final int BACKPRESSURE_DROP_BY_LEVEL = 2;
+
+    @IntDef({BACKPRESSURE_BLOCK, BACKPRESSURE_DROP_OLDEST, BACKPRESSURE_DROP_BY_LEVEL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Backpressure {
+    }
+
+    public static final int FILE_FORMAT_TEXT = 0;
+    public static final int FILE_FORMAT_BINARY = 1;
+
+    @IntDef({FILE_FORMAT_TEXT, FILE_FORMAT_BINARY})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface FileFormat {
+    }
+
     private static final char[] T = new char[]{'V', 'D', 'I', 'W', 'E', 'A'};
 
     private static final int FILE = 0x10;
@@ -110,7 +115,7 @@ public final class LogUtils {
     private static final String PLACEHOLDER = " ";
     private static final Config CONFIG = new Config();
 
-    private static SimpleDateFormat simpleDateFormat;
+    private static volatile LogFileAppender sFileAppender;
 
     private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
 
@@ -132,6 +137,14 @@ public final class LogUtils {
         log(V, tag, contents);
     }
 
+    public static void vLazy(final Supplier<?> supplier) {
+        if (isLoggable(V)) log(V, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void vTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(V)) log(V, tag, supplier);
+    }
+
     public static void d(final Object... contents) {
         log(D, CONFIG.getGlobalTag(), contents);
     }
@@ -140,6 +153,14 @@ public final class LogUtils {
         log(D, tag, contents);
     }
 
+    public static void dLazy(final Supplier<?> supplier) {
+        if (isLoggable(D)) log(D, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void dTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(D)) log(D, tag, supplier);
+    }
+
     public static void i(final Object... contents) {
         log(I, CONFIG.getGlobalTag(), contents);
     }
@@ -148,6 +169,14 @@ public final class LogUtils {
         log(I, tag, contents);
     }
 
+    public static void iLazy(final Supplier<?> supplier) {
+        if (isLoggable(I)) log(I, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void iTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(I)) log(I, tag, supplier);
+    }
+
     public static void w(final Object... contents) {
         log(W, CONFIG.getGlobalTag(), contents);
     }
@@ -156,6 +185,14 @@ public final class LogUtils {
         log(W, tag, contents);
     }
 
+    public static void wLazy(final Supplier<?> supplier) {
+        if (isLoggable(W)) log(W, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void wTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(W)) log(W, tag, supplier);
+    }
+
     public static void e(final Object... contents) {
         log(E, CONFIG.getGlobalTag(), contents);
     }
@@ -164,6 +201,14 @@ public final class LogUtils {
         log(E, tag, contents);
     }
 
+    public static void eLazy(final Supplier<?> supplier) {
+        if (isLoggable(E)) log(E, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void eTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(E)) log(E, tag, supplier);
+    }
+
     public static void a(final Object... contents) {
         log(A, CONFIG.getGlobalTag(), contents);
     }
@@ -172,6 +217,14 @@ public final class LogUtils {
         log(A, tag, contents);
     }
 
+    public static void aLazy(final Supplier<?> supplier) {
+        if (isLoggable(A)) log(A, CONFIG.getGlobalTag(), supplier);
+    }
+
+    public static void aTagLazy(final String tag, final Supplier<?> supplier) {
+        if (isLoggable(A)) log(A, tag, supplier);
+    }
+
     public static void file(final Object content) {
         log(FILE | D, CONFIG.getGlobalTag(), content);
     }
@@ -220,41 +273,93 @@ public final class LogUtils {
         log(XML | type, tag, content);
     }
 
+    /**
+     * Return whether a log of the type would be printed to console or written to file.
+     *
+     * @param type The type of log.
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public static boolean isLoggable(@TYPE final int type) {
+        return CONFIG.isLogSwitch()
+                && ((CONFIG.isLog2ConsoleSwitch() && type >= CONFIG.mConsoleFilter)
+                || (CONFIG.isLog2FileSwitch() && type >= CONFIG.mFileFilter));
+    }
+
+    /**
+     * Log the contents.
+     * <p>Console output is printed on the calling thread, so it's not lost if the process
+     * dies right after. A log only to file formats the contents on the calling thread too,
+     * a single {@link Supplier} of {@code vLazy} and the like is got later on the thread of
+     * log along with the tag and the head.</p>
+     *
+     * @param type     The type of log.
+     * @param tag      The tag of log.
+     * @param contents The contents, a {@link Supplier} is got only if the log is output.
+     */
     public static void log(final int type, final String tag, final Object... contents) {
         if (!CONFIG.isLogSwitch()) return;
         final int type_low = type & 0x0f, type_high = type & 0xf0;
-        if (CONFIG.isLog2ConsoleSwitch() || CONFIG.isLog2FileSwitch() || type_high == FILE) {
-            if (type_low < CONFIG.mConsoleFilter && type_low < CONFIG.mFileFilter) return;
-            final TagHead tagHead = processTagAndHead(tag);
-            final String body = processBody(type_high, contents);
-            if (CONFIG.isLog2ConsoleSwitch() && type_high != FILE && type_low >= CONFIG.mConsoleFilter) {
-                print2Console(type_low, tagHead.tag, tagHead.consoleHead, body);
-            }
-            if ((CONFIG.isLog2FileSwitch() || type_high == FILE) && type_low >= CONFIG.mFileFilter) {
-                EXECUTOR.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        print2File(type_low, tagHead.tag, tagHead.fileHead + body);
-                    }
-                });
+        final boolean console = CONFIG.isLog2ConsoleSwitch() && type_high != FILE
+                && type_low >= CONFIG.mConsoleFilter;
+        final boolean file = (CONFIG.isLog2FileSwitch() || type_high == FILE)
+                && type_low >= CONFIG.mFileFilter;
+        if (!console && !file) return;
+        Throwable callSite = null;
+        String threadName = null;
+        if (CONFIG.mTagIsSpace || CONFIG.isLogHeadSwitch()) {
+            // ART only records the native frames here, they are turned into elements
+            // on the thread of log by getStackTrace.
+            callSite = new Throwable();
+            if (CONFIG.isLogHeadSwitch()) threadName = Thread.currentThread().getName();
+        }
+        if (!console) {
+            // the contents may change once we return, only a supplier is left for later
+            if (contents != null && contents.length == 1 && contents[0] instanceof Supplier) {
+                getFileAppender().append(type, tag, contents, null, callSite, threadName);
+            } else {
+                getFileAppender().append(type, tag, null, processBody(type_high, contents),
+                        callSite, threadName);
             }
+            return;
         }
+        final TagHead tagHead = processTagAndHead(tag, callSite, threadName);
+        final String body = processBody(type_high, contents);
+        print2Console(type_low, tagHead.tag, tagHead.consoleHead, body);
+        if (file) {
+            getFileAppender().appendFormatted(type, tagHead.tag, threadName,
+                    tagHead.fileHead, tagHead.site, body);
+        }
+    }
+
+    /**
+     * Fill the tag, head, site and msg if not yet of the record to write to file, on the
+     * thread of log.
+     */
+    static void format(final LogFileAppender.Record record) {
+        final TagHead tagHead =
+                processTagAndHead(record.tag, record.callSite, record.threadName);
+        record.tag = tagHead.tag;
+        record.head = tagHead.fileHead;
+        record.site = tagHead.site;
+        if (record.msg == null) record.msg = processBody(record.type & 0xf0, record.contents);
     }
 
-    private static TagHead processTagAndHead(String tag) {
-        if (!CONFIG.mTagIsSpace && !CONFIG.isLogHeadSwitch()) {
+    private static TagHead processTagAndHead(String tag,
+                                             final Throwable callSite,
+                                             final String tName) {
+        if (callSite == null) {
             tag = CONFIG.getGlobalTag();
         } else {
-            final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-            final int stackIndex = 3 + CONFIG.getStackOffset();
+            final StackTraceElement[] stackTrace = callSite.getStackTrace();
+            final int stackIndex = 2 + CONFIG.getStackOffset();
             if (stackIndex >= stackTrace.length) {
-                StackTraceElement targetElement = stackTrace[3];
+                StackTraceElement targetElement = stackTrace[2];
                 final String fileName = getFileName(targetElement);
                 if (CONFIG.mTagIsSpace && isSpace(tag)) {
                     int index = fileName.indexOf('.');// Use proguard may not find '.'.
                     tag = index == -1 ? fileName : fileName.substring(0, index);
                 }
-                return new TagHead(tag, null, ": ");
+                return new TagHead(tag, null, ": ", null);
             }
             StackTraceElement targetElement = stackTrace[stackIndex];
             final String fileName = getFileName(targetElement);
@@ -262,19 +367,13 @@ public final class LogUtils {
                 int index = fileName.indexOf('.');// Use proguard may not find '.'.
                 tag = index == -1 ? fileName : fileName.substring(0, index);
             }
-            if (CONFIG.isLogHeadSwitch()) {
-                String tName = Thread.currentThread().getName();
-                final String head = new Formatter()
-                        .format("%s, %s.%s(%s:%d)",
-                                tName,
-                                targetElement.getClassName(),
-                                targetElement.getMethodName(),
-                                fileName,
-                                targetElement.getLineNumber())
-                        .toString();
+            if (tName != null) {
+                final String site =
+                        appendElement(new StringBuilder(), targetElement, fileName).toString();
+                final String head = tName + ", " + site;
                 final String fileHead = " [" + head + "]: ";
                 if (CONFIG.getStackDeep() <= 1) {
-                    return new TagHead(tag, new String[]{head}, fileHead);
+                    return new TagHead(tag, new String[]{head}, fileHead, site);
                 } else {
                     final String[] consoleHead =
                             new String[Math.min(
@@ -282,24 +381,35 @@ public final class LogUtils {
                                     stackTrace.length - stackIndex
                             )];
                     consoleHead[0] = head;
-                    int spaceLen = tName.length() + 2;
-                    String space = new Formatter().format("%" + spaceLen + "s", "").toString();
+                    final int spaceLen = tName.length() + 2;
+                    final StringBuilder sb = new StringBuilder();
                     for (int i = 1, len = consoleHead.length; i < len; ++i) {
                         targetElement = stackTrace[i + stackIndex];
-                        consoleHead[i] = new Formatter()
-                                .format("%s%s.%s(%s:%d)",
-                                        space,
-                                        targetElement.getClassName(),
-                                        targetElement.getMethodName(),
-                                        getFileName(targetElement),
-                                        targetElement.getLineNumber())
-                                .toString();
+                        sb.setLength(0);
+                        for (int j = 0; j < spaceLen; j++) {
+                            sb.append(' ');
+                        }
+                        consoleHead[i] = appendElement(sb, targetElement,
+                                getFileName(targetElement)).toString();
                     }
-                    return new TagHead(tag, consoleHead, fileHead);
+                    return new TagHead(tag, consoleHead, fileHead, site);
                 }
             }
         }
-        return new TagHead(tag, null, ": ");
+        return new TagHead(tag, null, ": ", null);
+    }
+
+    private static StringBuilder appendElement(final StringBuilder sb,
+                                               final StackTraceElement element,
+                                               final String fileName) {
+        return sb.append(element.getClassName())
+                .append('.')
+                .append(element.getMethodName())
+                .append('(')
+                .append(fileName)
+                .append(':')
+                .append(element.getLineNumber())
+                .append(')');
     }
 
     private static String getFileName(final StackTraceElement targetElement) {
@@ -343,6 +453,7 @@ public final class LogUtils {
     }
 
     private static String formatObject(int type, Object object) {
+        if (object instanceof Supplier) object = ((Supplier<?>) object).get();
         if (object == null) return NULL;
         if (type == JSON) return LogFormatter.object2String(object, JSON);
         if (type == XML) return LogFormatter.object2String(object, XML);
@@ -350,6 +461,7 @@ public final class LogUtils {
     }
 
     private static String formatObject(Object object) {
+        if (object instanceof Supplier) object = ((Supplier<?>) object).get();
         if (object == null) return NULL;
         if (!I_FORMATTER_MAP.isEmpty()) {
             IFormatter iFormatter = I_FORMATTER_MAP.get(getClassFromObject(object));
@@ -483,125 +595,28 @@ public final class LogUtils {
         }
     }
 
-    private static void print2File(final int type, final String tag, final String msg) {
-        String format = getSdf().format(new Date());
-        String date = format.substring(0, 10);
-        String time = format.substring(11);
-        final String fullPath =
-                CONFIG.getDir() + CONFIG.getFilePrefix() + "_"
-                        + date + "_" +
-                        CONFIG.getProcessName() + CONFIG.getFileExtension();
-        if (!createOrExistsFile(fullPath, date)) {
-            Log.e("LogUtils", "create " + fullPath + " failed!");
-            return;
-        }
-        final String content = time +
-                T[type - V] +
-                "/" +
-                tag +
-                msg +
-                LINE_SEP;
-        input2File(content, fullPath);
-    }
-
-    private static SimpleDateFormat getSdf() {
-        if (simpleDateFormat == null) {
-            simpleDateFormat = new SimpleDateFormat("yyyy_MM_dd HH:mm:ss.SSS ", Locale.getDefault());
-        }
-        return simpleDateFormat;
-    }
-
-    private static boolean createOrExistsFile(final String filePath, final String date) {
-        File file = new File(filePath);
-        if (file.exists()) return file.isFile();
-        if (!createOrExistsDir(file.getParentFile())) return false;
-        try {
-            deleteDueLogs(filePath, date);
-            boolean isCreate = file.createNewFile();
-            if (isCreate) {
-                printDeviceInfo(filePath, date);
-            }
-            return isCreate;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    private static void deleteDueLogs(final String filePath, final String date) {
-        if (CONFIG.getSaveDays() <= 0) return;
-        File file = new File(filePath);
-        File parentFile = file.getParentFile();
-        File[] files = Objects.requireNonNull(parentFile).listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                return name.matches("^" + CONFIG.getFilePrefix()
-                        + "_[0-9]{4}_[0-9]{2}_[0-9]{2}_.*$");
-            }
-        });
-        if (files == null || files.length <= 0) return;
-        final SimpleDateFormat sdf = new SimpleDateFormat("yyyy_MM_dd", Locale.getDefault());
-        try {
-            long dueMillis = Objects.requireNonNull(sdf.parse(date)).getTime()
-                    - CONFIG.getSaveDays() * 86400000L;
-            for (final File aFile : files) {
-                String name = aFile.getName();
-                int l = name.length();
-                String logDay = findDate(name);
-                if (Objects.requireNonNull(sdf.parse(logDay)).getTime() <= dueMillis) {
-                    EXECUTOR.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            boolean delete = aFile.delete();
-                            if (!delete) {
-                                Log.e("LogUtils", "delete " + aFile + " failed!");
-                            }
-                        }
-                    });
+    private static LogFileAppender getFileAppender() {
+        LogFileAppender appender = sFileAppender;
+        if (appender == null) {
+            synchronized (LogUtils.class) {
+                appender = sFileAppender;
+                if (appender == null) {
+                    appender = new LogFileAppender(CONFIG, CONFIG.getFileQueueCapacity(), EXECUTOR);
+                    sFileAppender = appender;
                 }
             }
-        } catch (ParseException e) {
-            e.printStackTrace();
         }
+        return appender;
     }
 
-    private static String findDate(String str) {
-        Pattern pattern = Pattern.compile("[0-9]{4}_[0-9]{2}_[0-9]{2}");
-        Matcher matcher = pattern.matcher(str);
-        if (matcher.find()) {
-            return matcher.group();
-        }
-        return "";
-    }
-
-    private static void printDeviceInfo(final String filePath, final String date) {
-        String versionName = "";
-        int versionCode = 0;
-        try {
-            PackageInfo pi = Utils.getApp()
-                    .getPackageManager()
-                    .getPackageInfo(Utils.getApp().getPackageName(), 0);
-            if (pi != null) {
-                versionName = pi.versionName;
-                versionCode = pi.versionCode;
-            }
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        final String head = "************* Log Head ****************" +
-                "\nDate of Log        : " + date +
-                "\nDevice Manufacturer: " + Build.MANUFACTURER +
-                "\nDevice Model       : " + Build.MODEL +
-                "\nAndroid Version    : " + Build.VERSION.RELEASE +
-                "\nAndroid SDK        : " + Build.VERSION.SDK_INT +
-                "\nApp VersionName    : " + versionName +
-                "\nApp VersionCode    : " + versionCode +
-                "\n************* Log Head ****************\n\n";
-        input2File(head, filePath);
-    }
-
-    private static boolean createOrExistsDir(final File file) {
-        return file != null && (file.exists() ? file.isDirectory() : file.mkdirs());
+    /**
+     * Return the count of logs dropped because the queue of file was full.
+     *
+     * @return the count of logs dropped
+     */
+    public static long getFileDroppedCount() {
+        LogFileAppender appender = sFileAppender;
+        return appender == null ? 0 : appender.getDroppedCount();
     }
 
     private static boolean isSpace(final String s) {
@@ -614,29 +629,6 @@ public final class LogUtils {
         return true;
     }
 
-    private static void input2File(final String input, final String filePath) {
-        if (CONFIG.mFileWriter == null) {
-            BufferedWriter bw = null;
-            try {
-                bw = new BufferedWriter(new FileWriter(filePath, true));
-                bw.write(input);
-            } catch (IOException e) {
-                e.printStackTrace();
-                Log.e("LogUtils", "log to " + filePath + " failed!");
-            } finally {
-                try {
-                    if (bw != null) {
-                        bw.close();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        } else {
-            CONFIG.mFileWriter.write(filePath, input);
-        }
-    }
-
     public static final class Config {
         private String mDefaultDir;// The default storage directory of log.
         private String mDir;       // The storage directory of log.
@@ -657,6 +649,13 @@ public final class LogUtils {
         private int mSaveDays = -1;    // The save days of log.
         private String mProcessName = Utils.getCurrentProcessName();
         private IFileWriter mFileWriter;
+        private long mFileMaxSize = 0;  // The max size of a log file, 0 is unlimited.
+        private int mFileQueueCapacity = 1024;  // The capacity of the queue of file.
+        private int mFileBackpressure = BACKPRESSURE_BLOCK;  // When the queue of file is full.
+        private int mFileDropLevel = W;     // The level under which logs drop when full.
+        private int mFileFormat = FILE_FORMAT_TEXT;  // The format of log file.
+        private long mFileTotalMaxSize = 0;  // The max size of all log files, 0 is unlimited.
+        private boolean mFileCompress = false;  // Compress the closed log files by gzip.
 
         private Config() {
             if (mDefaultDir != null) return;
@@ -782,6 +781,92 @@ public final class LogUtils {
             return this;
         }
 
+        /**
+         * Set the max size of a log file, the full file is renamed with the suffix "_1",
+         * "_2"... and the log goes on in a new one.
+         *
+         * @param fileMaxSize The max size in bytes, 0 is unlimited.
+         * @return the config
+         */
+        public final Config setFileMaxSize(@IntRange(from = 0) final long fileMaxSize) {
+            mFileMaxSize = fileMaxSize;
+            return this;
+        }
+
+        /**
+         * Set the capacity of the queue between the logging threads and the thread of log,
+         * rounded up to a power of two. It takes effect only before the first log.
+         *
+         * @param fileQueueCapacity The capacity of the queue.
+         * @return the config
+         */
+        public final Config setFileQueueCapacity(@IntRange(from = 2) final int fileQueueCapacity) {
+            mFileQueueCapacity = fileQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Set what to do when the queue of file is full.
+         *
+         * @param fileBackpressure The backpressure, one of {@link #BACKPRESSURE_BLOCK},
+         *                         {@link #BACKPRESSURE_DROP_OLDEST} and
+         *                         {@link #BACKPRESSURE_DROP_BY_LEVEL}.
+         * @return the config
+         */
+        public final Config setFileBackpressure(@Backpressure final int fileBackpressure) {
+            mFileBackpressure = fileBackpressure;
+            return this;
+        }
+
+        /**
+         * Set the level under which logs are dropped when the queue of file is full, the
+         * others wait, for {@link #BACKPRESSURE_DROP_BY_LEVEL} only.
+         *
+         * @param fileDropLevel The level.
+         * @return the config
+         */
+        public final Config setFileDropLevel(@TYPE final int fileDropLevel) {
+            mFileDropLevel = fileDropLevel;
+            return this;
+        }
+
+        /**
+         * Set the format of log file. The binary file is named with the extension ".bin"
+         * and decoded to the same text by {@link LogDecoder}, it is ignored if a
+         * {@link IFileWriter} is set.
+         *
+         * @param fileFormat The format, {@link #FILE_FORMAT_TEXT} or {@link #FILE_FORMAT_BINARY}.
+         * @return the config
+         */
+        public final Config setFileFormat(@FileFormat final int fileFormat) {
+            mFileFormat = fileFormat;
+            return this;
+        }
+
+        /**
+         * Set the max size of all the log files, the eldest closed files are deleted when
+         * the total size is exceeded.
+         *
+         * @param fileTotalMaxSize The max size in bytes, 0 is unlimited.
+         * @return the config
+         */
+        public final Config setFileTotalMaxSize(@IntRange(from = 0) final long fileTotalMaxSize) {
+            mFileTotalMaxSize = fileTotalMaxSize;
+            return this;
+        }
+
+        /**
+         * Set whether to compress the closed log files by gzip, the compressed one is named
+         * with the extension ".gz" appended.
+         *
+         * @param fileCompress True to compress.
+         * @return the config
+         */
+        public final Config setFileCompress(final boolean fileCompress) {
+            mFileCompress = fileCompress;
+            return this;
+        }
+
         public final String getProcessName() {
             if (mProcessName == null) return "";
             return mProcessName.replace(":", "_");
@@ -852,6 +937,38 @@ public final class LogUtils {
             return mSaveDays;
         }
 
+        public final long getFileMaxSize() {
+            return mFileMaxSize;
+        }
+
+        public final int getFileQueueCapacity() {
+            return mFileQueueCapacity;
+        }
+
+        public final int getFileBackpressure() {
+            return mFileBackpressure;
+        }
+
+        public final int getFileDropLevel() {
+            return mFileDropLevel;
+        }
+
+        public final int getFileFormat() {
+            return mFileFormat;
+        }
+
+        public final long getFileTotalMaxSize() {
+            return mFileTotalMaxSize;
+        }
+
+        public final boolean isFileCompress() {
+            return mFileCompress;
+        }
+
+        final IFileWriter getFileWriter() {
+            return mFileWriter;
+        }
+
         @Override
         public String toString() {
             return "process: " + getProcessName()
@@ -869,6 +986,13 @@ public final class LogUtils {
                     + LINE_SEP + "stackDeep: " + getStackDeep()
                     + LINE_SEP + "stackOffset: " + getStackOffset()
                     + LINE_SEP + "saveDays: " + getSaveDays()
+                    + LINE_SEP + "fileMaxSize: " + getFileMaxSize()
+                    + LINE_SEP + "fileQueueCapacity: " + getFileQueueCapacity()
+                    + LINE_SEP + "fileBackpressure: " + getFileBackpressure()
+                    + LINE_SEP + "fileDropLevel: " + T[getFileDropLevel() - V]
+                    + LINE_SEP + "fileFormat: " + getFileFormat()
+                    + LINE_SEP + "fileTotalMaxSize: " + getFileTotalMaxSize()
+                    + LINE_SEP + "fileCompress: " + isFileCompress()
                     + LINE_SEP + "formatter: " + I_FORMATTER_MAP;
         }
     }
@@ -885,11 +1009,13 @@ public final class LogUtils {
         String tag;
         String[] consoleHead;
         String fileHead;
+        String site;
 
-        TagHead(String tag, String[] consoleHead, String fileHead) {
+        TagHead(String tag, String[] consoleHead, String fileHead, String site) {
             this.tag = tag;
             this.consoleHead = consoleHead;
             this.fileHead = fileHead;
+            this.site = site;
         }
     }
 
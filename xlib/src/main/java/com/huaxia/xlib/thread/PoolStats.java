@@ -0,0 +1,369 @@
+package com.huaxia.xlib.thread;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.huaxia.xlib.common.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程池统计。
+ * <p>{@link ThreadUtils} 创建的每个线程池各有一份，任务在加入时记下时间，开始时记排队耗时，
+ * 结束时记执行耗时和结果（完成、失败或取消），耗时记在 {@link LatencyHistogram} 里，所以能
+ * 分清慢在排队还是慢在执行；另外按任务类名记下最慢的一次。{@link #snapshot()} 得到某一时刻的只读
+ * 快照，{@link #setLogInterval(long)} 定时把有变化的线程池的快照打到 logcat。</p>
+ *
+ * @author xzy
+ */
+public final class PoolStats {
+
+    private static final String TAG = "PoolStats";
+    private static final int MAX_NAMES = 256;
+    private static final int SLOWEST_COUNT = 5;
+
+    private static final Map<String, PoolStats> STATS_MAP = new ConcurrentHashMap<>();
+    private static TimingWheel.Timeout sLogTimeout;
+
+    private final String mName;
+    private final Source mSource;
+    private final AtomicInteger mRunningCount = new AtomicInteger();
+    private final LongAdder mSubmittedCount = new LongAdder();
+    private final LongAdder mCompletedCount = new LongAdder();
+    private final LongAdder mFailedCount = new LongAdder();
+    private final LongAdder mCancelledCount = new LongAdder();
+    private final LongAdder mRejectedCount = new LongAdder();
+    private final LatencyHistogram mWaitLatency = new LatencyHistogram();
+    private final LatencyHistogram mRunLatency = new LatencyHistogram();
+    private final ConcurrentHashMap<String, AtomicLong> mSlowest = new ConcurrentHashMap<>();
+    private long mLoggedCount;
+
+    PoolStats(final String name, final Source source) {
+        mName = name;
+        mSource = source;
+        STATS_MAP.put(name, this);
+    }
+
+    /**
+     * Return the snapshot of stats of every pool created, by pool name.
+     *
+     * @return the snapshot of stats of every pool created
+     */
+    public static Map<String, Snapshot> snapshotAll() {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        for (PoolStats stats : STATS_MAP.values()) {
+            snapshots.put(stats.mName, stats.snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Log the snapshot of every pool periodically, one line per pool, the pools without
+     * any task since the last time are skipped.
+     *
+     * @param intervalMillis The interval in millis, 0 or negative to stop logging.
+     */
+    public static synchronized void setLogInterval(final long intervalMillis) {
+        if (sLogTimeout != null) {
+            sLogTimeout.cancel();
+            sLogTimeout = null;
+        }
+        if (intervalMillis <= 0) return;
+        sLogTimeout = ThreadUtils.TIMER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (PoolStats stats : STATS_MAP.values()) {
+                    final Snapshot snapshot = stats.snapshot();
+                    final long count = snapshot.submittedCount + snapshot.rejectedCount;
+                    if (count == stats.mLoggedCount) continue;
+                    stats.mLoggedCount = count;
+                    Log.i(TAG, snapshot.toString());
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the snapshot of stats.
+     *
+     * @return the snapshot of stats
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    void recordSubmit() {
+        mSubmittedCount.increment();
+    }
+
+    void recordRejected() {
+        mRejectedCount.increment();
+    }
+
+    void recordStart(final long waitNanos) {
+        mRunningCount.incrementAndGet();
+        mWaitLatency.record(waitNanos);
+    }
+
+    /**
+     * Record the end of a run.
+     *
+     * @param name      The name of task, the class name.
+     * @param runNanos  The nanos of run.
+     * @param failed    The task threw.
+     * @param cancelled The task was cancelled, interrupted or timed out.
+     */
+    void recordFinish(final String name, final long runNanos,
+                      final boolean failed, final boolean cancelled) {
+        mRunningCount.decrementAndGet();
+        mRunLatency.record(runNanos);
+        if (failed) {
+            mFailedCount.increment();
+        } else if (cancelled) {
+            mCancelledCount.increment();
+        } else {
+            mCompletedCount.increment();
+        }
+        AtomicLong max = mSlowest.get(name);
+        if (max == null) {
+            if (mSlowest.size() >= MAX_NAMES) return;
+            max = new AtomicLong();
+            final AtomicLong prev = mSlowest.putIfAbsent(name, max);
+            if (prev != null) max = prev;
+        }
+        long old;
+        while (runNanos > (old = max.get())) {
+            if (max.compareAndSet(old, runNanos)) break;
+        }
+    }
+
+    int getRunningCount() {
+        return mRunningCount.get();
+    }
+
+    /**
+     * What the stats of a pool read from the pool itself, rather than count on the way.
+     */
+    interface Source {
+
+        int getPoolSize();
+
+        int getQueueSize();
+    }
+
+    /**
+     * 某一时刻的线程池统计。
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final int poolSize;
+        private final int activeCount;
+        private final int queueSize;
+        private final long submittedCount;
+        private final long completedCount;
+        private final long failedCount;
+        private final long cancelledCount;
+        private final long rejectedCount;
+        private final LatencyHistogram.Snapshot waitLatency;
+        private final LatencyHistogram.Snapshot runLatency;
+        private final Map<String, Long> slowest;
+
+        private Snapshot(final PoolStats stats) {
+            name = stats.mName;
+            activeCount = stats.mRunningCount.get();
+            poolSize = Math.max(activeCount, stats.mSource.getPoolSize());
+            queueSize = stats.mSource.getQueueSize();
+            submittedCount = stats.mSubmittedCount.sum();
+            completedCount = stats.mCompletedCount.sum();
+            failedCount = stats.mFailedCount.sum();
+            cancelledCount = stats.mCancelledCount.sum();
+            rejectedCount = stats.mRejectedCount.sum();
+            waitLatency = stats.mWaitLatency.snapshot();
+            runLatency = stats.mRunLatency.snapshot();
+            final List<Map.Entry<String, AtomicLong>> entries =
+                    new ArrayList<>(stats.mSlowest.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong>>() {
+                @Override
+                public int compare(Map.Entry<String, AtomicLong> o1,
+                                   Map.Entry<String, AtomicLong> o2) {
+                    return Long.compare(o2.getValue().get(), o1.getValue().get());
+                }
+            });
+            final Map<String, Long> top = new LinkedHashMap<>();
+            for (int i = 0; i < entries.size() && i < SLOWEST_COUNT; i++) {
+                top.put(entries.get(i).getKey(), entries.get(i).getValue().get());
+            }
+            slowest = Collections.unmodifiableMap(top);
+        }
+
+        /**
+         * Return the name of pool.
+         *
+         * @return the name of pool
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Return the count of threads in the pool.
+         *
+         * @return the count of threads in the pool
+         */
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        /**
+         * Return the count of threads running a task.
+         *
+         * @return the count of threads running a task
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * Return the count of threads waiting for a task.
+         *
+         * @return the count of threads waiting for a task
+         */
+        public int getIdleCount() {
+            return poolSize - activeCount;
+        }
+
+        /**
+         * Return the count of tasks waiting in the queue.
+         *
+         * @return the count of tasks waiting in the queue
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * Return the count of tasks executed in the pool, rejected ones included.
+         *
+         * @return the count of tasks executed in the pool, rejected ones included
+         */
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        /**
+         * Return the count of tasks which finished normally.
+         *
+         * @return the count of tasks which finished normally
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * Return the count of tasks which threw.
+         *
+         * @return the count of tasks which threw
+         */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * Return the count of tasks cancelled, interrupted or timed out.
+         *
+         * @return the count of tasks cancelled, interrupted or timed out
+         */
+        public long getCancelledCount() {
+            return cancelledCount;
+        }
+
+        /**
+         * Return the count of tasks rejected by the pool.
+         *
+         * @return the count of tasks rejected by the pool
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * Return the mean nanos from executed to started.
+         *
+         * @return the mean nanos from executed to started
+         */
+        public long getWaitNanosMean() {
+            return waitLatency.getMean();
+        }
+
+        /**
+         * Return the upper bound of nanos within which {@code percentile} of the tasks
+         * started after executed.
+         *
+         * @param percentile The percentile from 0 to 1, such as 0.99.
+         * @return the upper bound of nanos, precise to a power of two
+         */
+        public long getWaitNanos(final double percentile) {
+            return waitLatency.getPercentile(percentile);
+        }
+
+        /**
+         * Return the mean nanos from started to finished.
+         *
+         * @return the mean nanos from started to finished
+         */
+        public long getRunNanosMean() {
+            return runLatency.getMean();
+        }
+
+        /**
+         * Return the upper bound of nanos within which {@code percentile} of the tasks
+         * finished after started.
+         *
+         * @param percentile The percentile from 0 to 1, such as 0.99.
+         * @return the upper bound of nanos, precise to a power of two
+         */
+        public long getRunNanos(final double percentile) {
+            return runLatency.getPercentile(percentile);
+        }
+
+        /**
+         * Return the slowest run of the slowest tasks, by class name of task.
+         *
+         * @return the nanos of the slowest run by class name, slowest first
+         */
+        public Map<String, Long> getSlowest() {
+            return slowest;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Long> entry : slowest.entrySet()) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(entry.getKey()).append('=').append(entry.getValue() / 1000000)
+                        .append("ms");
+            }
+            return String.format(Locale.US, "%s threads=%d/%d queue=%d submitted=%d "
+                            + "completed=%d failed=%d cancelled=%d rejected=%d "
+                            + "wait_p50=%dus wait_p99=%dus run_p50=%dus run_p99=%dus "
+                            + "slowest=[%s]",
+                    name, activeCount, poolSize, queueSize, submittedCount,
+                    completedCount, failedCount, cancelledCount, rejectedCount,
+                    getWaitNanos(0.5) / 1000, getWaitNanos(0.99) / 1000,
+                    getRunNanos(0.5) / 1000, getRunNanos(0.99) / 1000, sb);
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package com.huaxia.xlib.thread;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 可组合的异步结果。
+ * <p>基于 {@link CompletableFuture}，任务以 {@link ThreadUtils.Task} 的形式跑在
+ * {@link ThreadUtils} 的线程池上，所以同样有统计、队列策略和取消。支持
+ * {@link #thenApply(Function)}、{@link #allOf(List)}、{@link #anyOf(List)} 和
+ * {@link #timeout(long, TimeUnit)}。取消是结构化的：取消一个结果会中断它的任务，由它派生出
+ * 的结果随之取消；取消一个 {@link Scope} 会取消在其中开始的所有结果。结果通过
+ * {@link #observe(Callback)} 交给可配置的 {@link Executor}，默认是主线程。</p>
+ *
+ * @author xzy
+ */
+public final class TaskFuture<T> {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final CompletableFuture<T> mFuture = new CompletableFuture<>();
+    private volatile ThreadUtils.Task<?> mTask;
+
+    private TaskFuture() {
+    }
+
+    /**
+     * Return the future of the callable run on the IO pool.
+     *
+     * @param callable The callable.
+     * @param <T>      The type of result.
+     * @return the future of result
+     */
+    public static <T> TaskFuture<T> supplyOnIo(@NonNull final Callable<T> callable) {
+        return supply(ThreadUtils.getIoPool(), callable);
+    }
+
+    /**
+     * Return the future of the callable run on the cpu pool.
+     *
+     * @param callable The callable.
+     * @param <T>      The type of result.
+     * @return the future of result
+     */
+    public static <T> TaskFuture<T> supplyOnCpu(@NonNull final Callable<T> callable) {
+        return supply(ThreadUtils.getCpuPool(), callable);
+    }
+
+    /**
+     * Return the future of the callable run on the pool.
+     *
+     * @param pool     The pool, one of ThreadUtils's pools usually.
+     * @param callable The callable.
+     * @param <T>      The type of result.
+     * @return the future of result
+     */
+    public static <T> TaskFuture<T> supply(@NonNull final ExecutorService pool,
+                                           @NonNull final Callable<T> callable) {
+        final TaskFuture<T> future = new TaskFuture<>();
+        future.run(pool, callable);
+        return future;
+    }
+
+    /**
+     * Return the future completed with the value.
+     *
+     * @param value The value.
+     * @param <T>   The type of value.
+     * @return the future completed
+     */
+    public static <T> TaskFuture<T> completed(final T value) {
+        final TaskFuture<T> future = new TaskFuture<>();
+        future.mFuture.complete(value);
+        return future;
+    }
+
+    /**
+     * Return the future following the {@link CompletableFuture}, cancelling it cancels the
+     * {@link CompletableFuture} too.
+     *
+     * @param completableFuture The {@link CompletableFuture}.
+     * @param <T>               The type of result.
+     * @return the future following it
+     */
+    public static <T> TaskFuture<T> from(@NonNull final CompletableFuture<T> completableFuture) {
+        final TaskFuture<T> future = new TaskFuture<>();
+        completableFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable throwable) {
+                future.settle(value, throwable);
+            }
+        });
+        future.mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable throwable) {
+                if (future.mFuture.isCancelled()) completableFuture.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Return the future of all the results in order, it fails as soon as any of them fails
+     * and then the others are cancelled.
+     *
+     * @param futures The futures.
+     * @param <T>     The type of results.
+     * @return the future of all the results
+     */
+    public static <T> TaskFuture<List<T>> allOf(
+            @NonNull final List<? extends TaskFuture<? extends T>> futures) {
+        final TaskFuture<List<T>> all = new TaskFuture<>();
+        final int size = futures.size();
+        final Object[] results = new Object[size];
+        final AtomicInteger remaining = new AtomicInteger(size);
+        if (size == 0) all.mFuture.complete(Collections.<T>emptyList());
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            final TaskFuture<? extends T> future = futures.get(i);
+            future.mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+                @Override
+                public void accept(T value, Throwable throwable) {
+                    if (throwable != null) {
+                        if (all.settle(null, throwable)) cancelAll(futures);
+                        return;
+                    }
+                    results[index] = value;
+                    if (remaining.decrementAndGet() == 0) {
+                        final List<T> list = new ArrayList<>(size);
+                        for (Object result : results) {
+                            //noinspection unchecked
+                            list.add((T) result);
+                        }
+                        all.mFuture.complete(Collections.unmodifiableList(list));
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Return the future of the first result, the others are cancelled then.
+     *
+     * @param futures The futures.
+     * @param <T>     The type of results.
+     * @return the future of the first result
+     */
+    public static <T> TaskFuture<T> anyOf(
+            @NonNull final List<? extends TaskFuture<? extends T>> futures) {
+        final TaskFuture<T> any = new TaskFuture<>();
+        for (final TaskFuture<? extends T> future : futures) {
+            future.mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+                @Override
+                public void accept(T value, Throwable throwable) {
+                    if (any.settle(value, throwable)) cancelAll(futures);
+                }
+            });
+        }
+        return any;
+    }
+
+    /**
+     * Return a new scope, cancelling it cancels every future started in it.
+     *
+     * @return a new scope
+     */
+    public static Scope newScope() {
+        return new Scope();
+    }
+
+    /**
+     * Return the future of the function applied to the result, on the thread completing it.
+     * The function should be quick.
+     *
+     * @param fn  The function.
+     * @param <R> The type of new result.
+     * @return the future of new result
+     */
+    public <R> TaskFuture<R> thenApply(@NonNull final Function<? super T, ? extends R> fn) {
+        return thenApply(null, fn);
+    }
+
+    /**
+     * Return the future of the function applied to the result on the IO pool.
+     *
+     * @param fn  The function.
+     * @param <R> The type of new result.
+     * @return the future of new result
+     */
+    public <R> TaskFuture<R> thenApplyOnIo(@NonNull final Function<? super T, ? extends R> fn) {
+        return thenApply(ThreadUtils.getIoPool(), fn);
+    }
+
+    /**
+     * Return the future of the function applied to the result on the cpu pool.
+     *
+     * @param fn  The function.
+     * @param <R> The type of new result.
+     * @return the future of new result
+     */
+    public <R> TaskFuture<R> thenApplyOnCpu(@NonNull final Function<? super T, ? extends R> fn) {
+        return thenApply(ThreadUtils.getCpuPool(), fn);
+    }
+
+    /**
+     * Return the future of the function applied to the result on the pool.
+     *
+     * @param pool The pool, null to apply on the thread completing the result.
+     * @param fn   The function.
+     * @param <R>  The type of new result.
+     * @return the future of new result
+     */
+    public <R> TaskFuture<R> thenApply(final ExecutorService pool,
+                                       @NonNull final Function<? super T, ? extends R> fn) {
+        final TaskFuture<R> next = new TaskFuture<>();
+        // a cancelled or failed result is passed on, so are the ones derived from next
+        mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T value, Throwable throwable) {
+                if (throwable != null) {
+                    next.settle(null, throwable);
+                } else if (pool == null) {
+                    try {
+                        next.mFuture.complete(fn.apply(value));
+                    } catch (Throwable t) {
+                        next.mFuture.completeExceptionally(t);
+                    }
+                } else {
+                    next.run(pool, new Callable<R>() {
+                        @Override
+                        public R call() {
+                            return fn.apply(value);
+                        }
+                    });
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Return the future of the future which the function returns for the result.
+     *
+     * @param fn  The function.
+     * @param <R> The type of new result.
+     * @return the future of new result
+     */
+    public <R> TaskFuture<R> thenCompose(
+            @NonNull final Function<? super T, ? extends TaskFuture<R>> fn) {
+        final TaskFuture<R> next = new TaskFuture<>();
+        mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable throwable) {
+                if (throwable != null) {
+                    next.settle(null, throwable);
+                    return;
+                }
+                final TaskFuture<R> inner;
+                try {
+                    inner = fn.apply(value);
+                } catch (Throwable t) {
+                    next.mFuture.completeExceptionally(t);
+                    return;
+                }
+                inner.mFuture.whenComplete(new BiConsumer<R, Throwable>() {
+                    @Override
+                    public void accept(R r, Throwable t) {
+                        next.settle(r, t);
+                    }
+                });
+                if (next.mFuture.isCancelled()) inner.cancel();
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Fail the future with {@link TimeoutException} if not completed in time, then its task
+     * is cancelled and the futures derived from it fail too.
+     *
+     * @param timeout The timeout.
+     * @param unit    The unit of timeout.
+     * @return this future
+     */
+    public TaskFuture<T> timeout(final long timeout, @NonNull final TimeUnit unit) {
+        if (mFuture.isDone()) return this;
+        final TimingWheel.Timeout timer = ThreadUtils.TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (mFuture.isDone()) return;
+                // off the thread of timer, the derived ones run on the thread completing it
+                ThreadUtils.getCachedPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mFuture.completeExceptionally(new TimeoutException())) cancelTask();
+                    }
+                });
+            }
+        }, timeout, unit);
+        mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable throwable) {
+                timer.cancel();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Deliver the result to the callback on the deliver of ThreadUtils, the main thread by
+     * default.
+     *
+     * @param callback The callback.
+     * @return this future
+     */
+    public TaskFuture<T> observe(@NonNull final Callback<? super T> callback) {
+        return observe(ThreadUtils.getGlobalDeliver(), callback);
+    }
+
+    /**
+     * Deliver the result to the callback on the deliver.
+     *
+     * @param deliver  The deliver.
+     * @param callback The callback.
+     * @return this future
+     */
+    public TaskFuture<T> observe(@NonNull final Executor deliver,
+                                 @NonNull final Callback<? super T> callback) {
+        mFuture.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(final T value, final Throwable throwable) {
+                deliver.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (throwable == null) {
+                            callback.onSuccess(value);
+                            return;
+                        }
+                        final Throwable cause = unwrap(throwable);
+                        if (cause instanceof CancellationException) {
+                            callback.onCancel();
+                        } else {
+                            callback.onFail(cause);
+                        }
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Cancel the future, interrupt its task and cancel the futures derived from it.
+     *
+     * @return {@code true}: cancelled<br>{@code false}: completed before
+     */
+    public boolean cancel() {
+        final boolean cancelled = mFuture.cancel(true);
+        cancelTask();
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return mFuture.isDone();
+    }
+
+    public boolean isCancelled() {
+        return mFuture.isCancelled();
+    }
+
+    /**
+     * Wait for the result, don't call it on the main thread.
+     *
+     * @return the result
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws ExecutionException    if the task failed
+     * @throws CancellationException if cancelled
+     */
+    public T get() throws InterruptedException, ExecutionException {
+        return mFuture.get();
+    }
+
+    /**
+     * Wait for the result in time, don't call it on the main thread.
+     *
+     * @param timeout The timeout.
+     * @param unit    The unit of timeout.
+     * @return the result
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws ExecutionException    if the task failed
+     * @throws TimeoutException      if timed out, the future goes on
+     * @throws CancellationException if cancelled
+     */
+    public T get(final long timeout, @NonNull final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return mFuture.get(timeout, unit);
+    }
+
+    /**
+     * Return the {@link CompletableFuture} of result, completing or cancelling it affects
+     * this future, but not its task.
+     *
+     * @return the {@link CompletableFuture} of result
+     */
+    public CompletableFuture<T> toCompletableFuture() {
+        return mFuture;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // inner
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void run(final ExecutorService pool, final Callable<T> callable) {
+        final ThreadUtils.Task<T> task = new ThreadUtils.Task<T>() {
+            @Override
+            public T doInBackground() throws Throwable {
+                try {
+                    return callable.call();
+                } catch (InterruptedException e) {
+                    // Task drops an interruption it didn't cause, a cancel goes to onCancel
+                    if (!isCanceled()) mFuture.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                mFuture.complete(result);
+            }
+
+            @Override
+            public void onCancel() {
+                // the task is cancelled already, only the future is left
+                mFuture.cancel(false);
+            }
+
+            @Override
+            public void onFail(Throwable t) {
+                mFuture.completeExceptionally(t);
+            }
+
+            @Override
+            String getStatsName() {
+                return callable.getClass().getName();
+            }
+        };
+        // complete on the thread of pool, the callbacks are delivered by observe
+        task.setDeliver(DIRECT);
+        mTask = task;
+        if (mFuture.isDone()) return;
+        ThreadUtils.executeByCustom(pool, task);
+        // cancelled before the task was kept
+        if (mFuture.isCancelled()) task.cancel();
+    }
+
+    private boolean settle(final T value, final Throwable throwable) {
+        if (throwable == null) return mFuture.complete(value);
+        final Throwable cause = unwrap(throwable);
+        if (cause instanceof CancellationException) return cancel();
+        return mFuture.completeExceptionally(cause);
+    }
+
+    private void cancelTask() {
+        final ThreadUtils.Task<?> task = mTask;
+        if (task != null) task.cancel();
+    }
+
+    private static void cancelAll(final List<? extends TaskFuture<?>> futures) {
+        for (TaskFuture<?> future : futures) {
+            future.cancel();
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException
+                || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * The callback of result, delivered by {@link #observe(Executor, Callback)}.
+     */
+    public interface Callback<T> {
+
+        void onSuccess(T result);
+
+        void onCancel();
+
+        void onFail(Throwable t);
+    }
+
+    /**
+     * 结构化取消的范围。
+     * <p>在范围里开始的结果都挂在范围上，取消范围就取消它们和它们派生出的结果，也取消子
+     * 范围；取消之后再开始的结果立即被取消。</p>
+     */
+    public static final class Scope {
+        private final ConcurrentLinkedQueue<Object> mMembers = new ConcurrentLinkedQueue<>();
+        private volatile boolean mCancelled;
+
+        private Scope() {
+        }
+
+        /**
+         * Return a child scope, cancelled with this scope.
+         *
+         * @return a child scope
+         */
+        public Scope newScope() {
+            final Scope child = new Scope();
+            add(child);
+            return child;
+        }
+
+        public <T> TaskFuture<T> supplyOnIo(@NonNull final Callable<T> callable) {
+            return supply(ThreadUtils.getIoPool(), callable);
+        }
+
+        public <T> TaskFuture<T> supplyOnCpu(@NonNull final Callable<T> callable) {
+            return supply(ThreadUtils.getCpuPool(), callable);
+        }
+
+        public <T> TaskFuture<T> supply(@NonNull final ExecutorService pool,
+                                        @NonNull final Callable<T> callable) {
+            final TaskFuture<T> future = new TaskFuture<>();
+            add(future);
+            if (!future.isCancelled()) future.run(pool, callable);
+            return future;
+        }
+
+        /**
+         * Cancel every future started in the scope and the child scopes.
+         */
+        public void cancel() {
+            mCancelled = true;
+            Object member;
+            while ((member = mMembers.poll()) != null) {
+                cancel(member);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private void add(final Object member) {
+            mMembers.add(member);
+            if (member instanceof TaskFuture) {
+                ((TaskFuture<?>) member).mFuture.whenComplete(
+                        new BiConsumer<Object, Throwable>() {
+                            @Override
+                            public void accept(Object value, Throwable throwable) {
+                                mMembers.remove(member);
+                            }
+                        });
+            }
+            // cancelled in the meantime
+            if (mCancelled && mMembers.remove(member)) cancel(member);
+        }
+
+        private static void cancel(final Object member) {
+            if (member instanceof TaskFuture) {
+                ((TaskFuture<?>) member).cancel();
+            } else {
+                ((Scope) member).cancel();
+            }
+        }
+    }
+}
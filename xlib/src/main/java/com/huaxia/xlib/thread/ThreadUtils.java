@@ -5,17 +5,24 @@ import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.CallSuper;
+import androidx.annotation.IntDef;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 
-import java.util.HashMap;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
@@ -23,6 +30,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 线程相关的工具类。
@@ -34,13 +42,27 @@ import java.util.concurrent.atomic.AtomicLong;
 @SuppressWarnings("all")
 public final class ThreadUtils {
 
-    private static final Map<Integer, Map<Integer, ExecutorService>> TYPE_PRIORITY_POOLS
-            = new HashMap<>();
+    public static final int POOL_FIXED  = 0;
+    public static final int POOL_SINGLE = -1;
+    public static final int POOL_CACHED = -2;
+    public static final int POOL_IO     = -4;
+    public static final int POOL_CPU    = -8;
+
+    @IntDef({POOL_FIXED, POOL_SINGLE, POOL_CACHED, POOL_IO, POOL_CPU})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Pool {
+    }
+
+    private static final Map<Integer, AtomicReferenceArray<ExecutorService>> TYPE_PRIORITY_POOLS
+            = new ConcurrentHashMap<>();
 
     private static final Map<Task, TaskInfo> TASK_TASKINFO_MAP = new ConcurrentHashMap<>();
 
-    private static final int   CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final Timer TIMER     = new Timer();
+    private static final Map<Integer, QueueOptions> POOL_QUEUE_OPTIONS = new ConcurrentHashMap<>();
+
+    private static final int         CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    static final         TimingWheel TIMER     =
+            new TimingWheel(10, TimeUnit.MILLISECONDS, 512, "ThreadUtils-timer");
 
     private static final byte TYPE_SINGLE = -1;
     private static final byte TYPE_CACHED = -2;
@@ -49,6 +71,9 @@ public final class ThreadUtils {
 
     private static Executor sDeliver;
 
+    private static volatile PoolType sIoPoolType  = PoolType.THREAD_POOL;
+    private static volatile PoolType sCpuPoolType = PoolType.THREAD_POOL;
+
     /**
      * Return whether the thread is the main thread.
      *
@@ -174,6 +199,47 @@ public final class ThreadUtils {
         return getPoolByTypeAndPriority(TYPE_CPU, priority);
     }
 
+    /**
+     * Return a new thread pool that reuses a fixed number of threads operating off an
+     * unbounded queue of its own.
+     * <p>Unlike {@link #getFixedPool(int)} the pool is not shared and
+     * {@link #setQueueOptions(int, int, RejectPolicy)} doesn't apply, but it has its
+     * {@link #getPoolStats(ExecutorService)} under the name.</p>
+     *
+     * @param name The name of pool, also the prefix of its threads.
+     * @param size The size of thread in the pool.
+     * @return a new fixed thread pool
+     */
+    public static ExecutorService newFixedPool(@NonNull final String name,
+                                               @IntRange(from = 1) final int size) {
+        return new ThreadPoolExecutor4Util(name, size, size,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue4Util(false, Integer.MAX_VALUE),
+                new UtilsThreadFactory(name, Thread.NORM_PRIORITY),
+                QueueOptions.DEFAULT.policy
+        );
+    }
+
+    /**
+     * Return a new pool of the type of its own.
+     *
+     * @param name     The name of pool, also the prefix of its threads.
+     * @param size     The size of thread in the pool, the parallelism of
+     *                 {@link PoolType#WORK_STEALING}, unbounded for
+     *                 {@link PoolType#VIRTUAL_THREAD}.
+     * @param poolType The type of pool, {@link PoolType#VIRTUAL_THREAD} falls back to
+     *                 {@link PoolType#THREAD_POOL} where virtual threads are not available.
+     * @return a new pool
+     * @see #newFixedPool(String, int)
+     */
+    public static ExecutorService newFixedPool(@NonNull final String name,
+                                               @IntRange(from = 1) final int size,
+                                               @NonNull final PoolType poolType) {
+        final ExecutorService pool = createPool(poolType, size, name, Thread.NORM_PRIORITY);
+        if (pool != null) return pool;
+        return newFixedPool(name, size);
+    }
+
     /**
      * Executes the given task in a fixed thread pool.
      *
@@ -880,7 +946,7 @@ public final class ThreadUtils {
      * @param executorService The pool.
      */
     public static void cancel(ExecutorService executorService) {
-        if (executorService instanceof ThreadPoolExecutor4Util) {
+        if (executorService instanceof Pool4Util) {
             for (Map.Entry<Task, TaskInfo> taskTaskInfoEntry : TASK_TASKINFO_MAP.entrySet()) {
                 if (taskTaskInfoEntry.getValue().mService == executorService) {
                     cancel(taskTaskInfoEntry.getKey());
@@ -891,6 +957,100 @@ public final class ThreadUtils {
         }
     }
 
+    /**
+     * Return the count of tasks waiting in the queue of pool, the producers may throttle by it.
+     *
+     * @param executorService The pool of ThreadUtils.
+     * @return the count of tasks waiting, -1 if the pool is not ThreadUtils's pool
+     */
+    public static int getQueueSize(final ExecutorService executorService) {
+        if (executorService instanceof Pool4Util) {
+            return ((Pool4Util) executorService).getQueueSize();
+        }
+        return -1;
+    }
+
+    /**
+     * Return the count of tasks the queue of pool can take before the {@link RejectPolicy}.
+     *
+     * @param executorService The pool of ThreadUtils.
+     * @return the count of tasks more, {@link Integer#MAX_VALUE} if unbounded, -1 if the pool
+     * is not ThreadUtils's pool
+     */
+    public static int getQueueRemainingCapacity(final ExecutorService executorService) {
+        if (executorService instanceof ThreadPoolExecutor4Util) {
+            return ((ThreadPoolExecutor4Util) executorService).getQueue().remainingCapacity();
+        }
+        if (executorService instanceof Pool4Util) return Integer.MAX_VALUE;
+        return -1;
+    }
+
+    /**
+     * Return the stats of pool, such as the latency of waiting and running.
+     *
+     * @param executorService The pool of ThreadUtils.
+     * @return the stats of pool, null if the pool is not ThreadUtils's pool
+     */
+    public static PoolStats getPoolStats(final ExecutorService executorService) {
+        if (executorService instanceof Pool4Util) {
+            return ((Pool4Util) executorService).getStats();
+        }
+        return null;
+    }
+
+    /**
+     * Set the capacity of queue and the policy when it is full, it takes effect on the pools
+     * not created yet. The capacity bounds the pools of {@link PoolType#THREAD_POOL} only.
+     *
+     * @param pool     The pool, all the fixed pools share {@link #POOL_FIXED}.
+     * @param capacity The capacity of queue, {@link Integer#MAX_VALUE} by default.
+     * @param policy   The policy when the threads are all busy and the queue is full.
+     */
+    public static void setQueueOptions(@Pool final int pool,
+                                       @IntRange(from = 1) final int capacity,
+                                       @NonNull final RejectPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+        POOL_QUEUE_OPTIONS.put(pool, new QueueOptions(capacity, policy));
+    }
+
+    /**
+     * Set the type of IO pool, it takes effect on the IO pools not created yet.
+     *
+     * @param poolType The type of pool, {@link PoolType#VIRTUAL_THREAD} falls back to
+     *                 {@link PoolType#THREAD_POOL} where virtual threads are not available.
+     */
+    public static void setIoPoolType(@NonNull final PoolType poolType) {
+        sIoPoolType = poolType;
+    }
+
+    /**
+     * Return the type of IO pool.
+     *
+     * @return the type of IO pool
+     */
+    public static PoolType getIoPoolType() {
+        return sIoPoolType;
+    }
+
+    /**
+     * Set the type of cpu pool, it takes effect on the cpu pools not created yet.
+     *
+     * @param poolType The type of pool, {@link PoolType#VIRTUAL_THREAD} falls back to
+     *                 {@link PoolType#THREAD_POOL} where virtual threads are not available.
+     */
+    public static void setCpuPoolType(@NonNull final PoolType poolType) {
+        sCpuPoolType = poolType;
+    }
+
+    /**
+     * Return whether the virtual threads are available, never on Android.
+     *
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VirtualThreadPool4Util.FACTORY_BUILDER != null;
+    }
+
     /**
      * Set the deliver.
      *
@@ -921,38 +1081,35 @@ public final class ThreadUtils {
 
     private static <T> void execute(final ExecutorService pool, final Task<T> task,
                                     long delay, final long period, final TimeUnit unit) {
-        TaskInfo taskInfo;
-        synchronized (TASK_TASKINFO_MAP) {
-            if (TASK_TASKINFO_MAP.get(task) != null) {
-                Log.e("ThreadUtils", "Task can only be executed once.");
-                return;
-            }
-            taskInfo = new TaskInfo(pool);
-            TASK_TASKINFO_MAP.put(task, taskInfo);
+        final TaskInfo taskInfo = new TaskInfo(pool);
+        // the entry is released once the task is done, a done task stays done
+        if (task.isDone() || TASK_TASKINFO_MAP.putIfAbsent(task, taskInfo) != null) {
+            Log.e("ThreadUtils", "Task can only be executed once.");
+            return;
         }
         if (period == 0) {
             if (delay == 0) {
                 pool.execute(task);
             } else {
-                TimerTask timerTask = new TimerTask() {
+                taskInfo.mTimeout = TIMER.schedule(new Runnable() {
                     @Override
                     public void run() {
                         pool.execute(task);
                     }
-                };
-                taskInfo.mTimerTask = timerTask;
-                TIMER.schedule(timerTask, unit.toMillis(delay));
+                }, delay, unit);
+                // cancelled before the timeout was kept
+                if (task.isDone()) taskInfo.mTimeout.cancel();
             }
         } else {
             task.setSchedule(true);
-            TimerTask timerTask = new TimerTask() {
+            taskInfo.mTimeout = TIMER.scheduleAtFixedRate(new Runnable() {
                 @Override
                 public void run() {
                     pool.execute(task);
                 }
-            };
-            taskInfo.mTimerTask = timerTask;
-            TIMER.scheduleAtFixedRate(timerTask, unit.toMillis(delay), unit.toMillis(period));
+            }, delay, period, unit);
+            // cancelled by the first run before the timeout was kept
+            if (task.isDone()) taskInfo.mTimeout.cancel();
         }
     }
 
@@ -961,70 +1118,223 @@ public final class ThreadUtils {
     }
 
     private static ExecutorService getPoolByTypeAndPriority(final int type, final int priority) {
+        if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+            throw new IllegalArgumentException("priority out of range: " + priority);
+        }
+        // lock-free once the pool exists
+        AtomicReferenceArray<ExecutorService> priorityPools = TYPE_PRIORITY_POOLS.get(type);
+        if (priorityPools != null) {
+            final ExecutorService pool = priorityPools.get(priority);
+            if (pool != null) return pool;
+        }
         synchronized (TYPE_PRIORITY_POOLS) {
-            ExecutorService pool;
-            Map<Integer, ExecutorService> priorityPools = TYPE_PRIORITY_POOLS.get(type);
+            priorityPools = TYPE_PRIORITY_POOLS.get(type);
             if (priorityPools == null) {
-                priorityPools = new ConcurrentHashMap<>();
-                pool = ThreadPoolExecutor4Util.createPool(type, priority);
-                priorityPools.put(priority, pool);
+                priorityPools = new AtomicReferenceArray<>(Thread.MAX_PRIORITY + 1);
                 TYPE_PRIORITY_POOLS.put(type, priorityPools);
-            } else {
-                pool = priorityPools.get(priority);
-                if (pool == null) {
-                    pool = ThreadPoolExecutor4Util.createPool(type, priority);
-                    priorityPools.put(priority, pool);
-                }
+            }
+            ExecutorService pool = priorityPools.get(priority);
+            if (pool == null) {
+                pool = createPool(type, priority);
+                priorityPools.set(priority, pool);
             }
             return pool;
         }
     }
 
-    static final class ThreadPoolExecutor4Util extends ThreadPoolExecutor {
+    private static ExecutorService createPool(final int type, final int priority) {
+        final PoolType poolType;
+        final int parallelism;
+        switch (type) {
+            case TYPE_IO:
+                poolType = sIoPoolType;
+                parallelism = 2 * CPU_COUNT + 1;
+                break;
+            case TYPE_CPU:
+                poolType = sCpuPoolType;
+                parallelism = CPU_COUNT + 1;
+                break;
+            default:
+                return ThreadPoolExecutor4Util.createPool(type, priority);
+        }
+        final ExecutorService pool = createPool(poolType, parallelism,
+                type == TYPE_IO ? "io" : "cpu", priority);
+        if (pool != null) return pool;
+        return ThreadPoolExecutor4Util.createPool(type, priority);
+    }
+
+    /**
+     * Return a new pool of the type, null for {@link PoolType#THREAD_POOL} or if the type is
+     * not available.
+     */
+    private static ExecutorService createPool(final PoolType poolType,
+                                              final int parallelism,
+                                              final String name,
+                                              final int priority) {
+        if (poolType == PoolType.WORK_STEALING) {
+            return new ForkJoinPool4Util(parallelism, name, priority);
+        }
+        if (poolType == PoolType.VIRTUAL_THREAD) {
+            ExecutorService pool = VirtualThreadPool4Util.create(name, priority);
+            if (pool != null) return pool;
+            Log.w("ThreadUtils", "Virtual threads are not available, use the thread pool.");
+        }
+        return null;
+    }
+
+    /**
+     * The type of pool backing the IO or the cpu pool.
+     */
+    public enum PoolType {
+        /**
+         * A {@link ThreadPoolExecutor} with threads of fixed count, the default.
+         */
+        THREAD_POOL,
+        /**
+         * A {@link ForkJoinPool} of work-stealing in FIFO mode, fit for many short tasks
+         * and tasks forking others.
+         */
+        WORK_STEALING,
+        /**
+         * A new virtual thread per task, fit for blocking IO, only on JVMs with virtual
+         * threads.
+         */
+        VIRTUAL_THREAD
+    }
+
+    private static String getPoolName(final int type, final int priority) {
+        final String name;
+        switch (type) {
+            case TYPE_SINGLE:
+                name = "single";
+                break;
+            case TYPE_CACHED:
+                name = "cached";
+                break;
+            case TYPE_IO:
+                name = "io";
+                break;
+            case TYPE_CPU:
+                name = "cpu";
+                break;
+            default:
+                name = "fixed(" + type + ")";
+                break;
+        }
+        return name + "-p" + priority;
+    }
+
+    /**
+     * The pools created by ThreadUtils, which its tasks can be cancelled by pool.
+     */
+    private interface Pool4Util extends PoolStats.Source {
+
+        PoolStats getStats();
+    }
+
+    /**
+     * Wrap a task to record its time of waiting and running in the stats of pool.
+     */
+    private static final class TimedRunnable implements Runnable {
+        private final Runnable  command;
+        private final PoolStats stats;
+        private final long      executeNanos;
+
+        TimedRunnable(Runnable command, PoolStats stats) {
+            this.command = command;
+            this.stats = stats;
+            this.executeNanos = System.nanoTime();
+        }
+
+        static Runnable unwrap(final Runnable command) {
+            return command instanceof TimedRunnable ? ((TimedRunnable) command).command : command;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            stats.recordStart(start - executeNanos);
+            boolean failed = true;
+            try {
+                command.run();
+                failed = false;
+            } finally {
+                boolean cancelled = false;
+                String name = null;
+                if (command instanceof Task) {
+                    // Task catches what doInBackground throws
+                    final int state = ((Task) command).state.get();
+                    failed = state == Task.EXCEPTIONAL;
+                    cancelled = state >= Task.CANCELLED;
+                    name = ((Task) command).getStatsName();
+                }
+                if (name == null) name = command.getClass().getName();
+                stats.recordFinish(name, System.nanoTime() - start, failed, cancelled);
+            }
+        }
+    }
+
+    static final class ThreadPoolExecutor4Util extends ThreadPoolExecutor implements Pool4Util {
 
         private static ExecutorService createPool(final int type, final int priority) {
+            QueueOptions options = POOL_QUEUE_OPTIONS.get(type > 0 ? POOL_FIXED : type);
+            if (options == null) options = QueueOptions.DEFAULT;
+            final int capacity = options.capacity;
+            final RejectPolicy policy = options.policy;
             switch (type) {
                 case TYPE_SINGLE:
-                    return new ThreadPoolExecutor4Util(1, 1,
+                    return new ThreadPoolExecutor4Util(getPoolName(type, priority), 1, 1,
                             0L, TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("single", priority)
+                            new LinkedBlockingQueue4Util(false, capacity),
+                            new UtilsThreadFactory("single", priority),
+                            policy
                     );
                 case TYPE_CACHED:
-                    return new ThreadPoolExecutor4Util(0, 128,
+                    return new ThreadPoolExecutor4Util(getPoolName(type, priority), 0, 128,
                             60L, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(true),
-                            new UtilsThreadFactory("cached", priority)
+                            new LinkedBlockingQueue4Util(true, capacity),
+                            new UtilsThreadFactory("cached", priority),
+                            policy
                     );
                 case TYPE_IO:
-                    return new ThreadPoolExecutor4Util(2 * CPU_COUNT + 1, 2 * CPU_COUNT + 1,
+                    return new ThreadPoolExecutor4Util(getPoolName(type, priority),
+                            2 * CPU_COUNT + 1, 2 * CPU_COUNT + 1,
                             30, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("io", priority)
+                            new LinkedBlockingQueue4Util(false, capacity),
+                            new UtilsThreadFactory("io", priority),
+                            policy
                     );
                 case TYPE_CPU:
-                    return new ThreadPoolExecutor4Util(CPU_COUNT + 1, 2 * CPU_COUNT + 1,
+                    return new ThreadPoolExecutor4Util(getPoolName(type, priority),
+                            CPU_COUNT + 1, 2 * CPU_COUNT + 1,
                             30, TimeUnit.SECONDS,
-                            new LinkedBlockingQueue4Util(true),
-                            new UtilsThreadFactory("cpu", priority)
+                            new LinkedBlockingQueue4Util(true, capacity),
+                            new UtilsThreadFactory("cpu", priority),
+                            policy
                     );
                 default:
-                    return new ThreadPoolExecutor4Util(type, type,
+                    return new ThreadPoolExecutor4Util(getPoolName(type, priority), type, type,
                             0L, TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue4Util(),
-                            new UtilsThreadFactory("fixed(" + type + ")", priority)
+                            new LinkedBlockingQueue4Util(false, capacity),
+                            new UtilsThreadFactory("fixed(" + type + ")", priority),
+                            policy
                     );
             }
         }
 
         private final AtomicInteger mSubmittedCount = new AtomicInteger();
 
-        private LinkedBlockingQueue4Util mWorkQueue;
+        private final RejectPolicy mPolicy;
+
+        private final PoolStats mStats;
+
+        private final LinkedBlockingQueue4Util mWorkQueue;
 
-        ThreadPoolExecutor4Util(int corePoolSize, int maximumPoolSize,
+        ThreadPoolExecutor4Util(String name, int corePoolSize, int maximumPoolSize,
                                 long keepAliveTime, TimeUnit unit,
                                 LinkedBlockingQueue4Util workQueue,
-                                ThreadFactory threadFactory) {
+                                ThreadFactory threadFactory,
+                                RejectPolicy policy) {
             super(corePoolSize, maximumPoolSize,
                     keepAliveTime, unit,
                     workQueue,
@@ -1032,6 +1342,18 @@ public final class ThreadUtils {
             );
             workQueue.mPool = this;
             mWorkQueue = workQueue;
+            mPolicy = policy;
+            mStats = new PoolStats(name, this);
+        }
+
+        @Override
+        public PoolStats getStats() {
+            return mStats;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return getQueue().size();
         }
 
         private int getSubmittedCount() {
@@ -1044,19 +1366,346 @@ public final class ThreadUtils {
             super.afterExecute(r, t);
         }
 
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            // hand back the tasks as they were executed, not the timing wrappers
+            final List<Runnable> tasks = super.shutdownNow();
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.set(i, TimedRunnable.unwrap(tasks.get(i)));
+            }
+            return tasks;
+        }
+
         @Override
         public void execute(@NonNull Runnable command) {
             if (this.isShutdown()) return;
+            // retried by a policy, such as dropOldest
+            if (!(command instanceof TimedRunnable)) {
+                mStats.recordSubmit();
+                command = new TimedRunnable(command, mStats);
+            }
             mSubmittedCount.incrementAndGet();
             try {
                 super.execute(command);
+                return;
             } catch (RejectedExecutionException ignore) {
-                Log.e("ThreadUtils", "This will not happen!");
-                mWorkQueue.offer(command);
+                // a thread was refused as the others were just added, queue it if there's room
+                if (!isShutdown() && mWorkQueue.offerToQueue(command)) return;
+                // the threads are all busy and the queue is full
+                mSubmittedCount.decrementAndGet();
             } catch (Throwable t) {
                 mSubmittedCount.decrementAndGet();
+                return;
+            }
+            if (!isShutdown()) mPolicy.reject(command, this);
+        }
+    }
+
+    private static final class QueueOptions {
+        private static final QueueOptions DEFAULT =
+                new QueueOptions(Integer.MAX_VALUE, RejectPolicy.failFast(null));
+
+        private final int          capacity;
+        private final RejectPolicy policy;
+
+        QueueOptions(int capacity, RejectPolicy policy) {
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * What to do with a task when the threads of pool are all busy and its queue is full.
+     * A rejected {@link Task} is cancelled, a rejected run of a periodic task is skipped.
+     */
+    public abstract static class RejectPolicy {
+
+        /**
+         * Run the task on the thread which executes it, which slows the producer down. It is
+         * dropped on the thread of timer, which runs the delayed and periodic tasks.
+         *
+         * @return the policy
+         */
+        public static RejectPolicy callerRuns() {
+            return new RejectPolicy() {
+                @Override
+                void reject(Runnable command, ThreadPoolExecutor4Util pool) {
+                    if (TIMER.isWorkerThread()) {
+                        drop(command, pool, null);
+                        return;
+                    }
+                    command.run();
+                }
+            };
+        }
+
+        /**
+         * Block the thread which executes the task until the queue has room, then drop the
+         * task if timed out. Don't use it for the pools fed on the main thread. It doesn't
+         * block on the thread of timer.
+         *
+         * @param timeout The timeout.
+         * @param unit    The unit of timeout.
+         * @return the policy
+         */
+        public static RejectPolicy block(final long timeout, @NonNull final TimeUnit unit) {
+            return new RejectPolicy() {
+                @Override
+                void reject(Runnable command, ThreadPoolExecutor4Util pool) {
+                    boolean offered = false;
+                    if (!TIMER.isWorkerThread()) {
+                        try {
+                            offered = pool.getQueue().offer(command, timeout, unit);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if (offered) {
+                        pool.mSubmittedCount.incrementAndGet();
+                    } else {
+                        drop(command, pool, null);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Drop the oldest task waiting in the queue for the task.
+         *
+         * @return the policy
+         */
+        public static RejectPolicy dropOldest() {
+            return new RejectPolicy() {
+                @Override
+                void reject(Runnable command, ThreadPoolExecutor4Util pool) {
+                    final Runnable oldest = pool.getQueue().poll();
+                    if (oldest != null) {
+                        pool.mSubmittedCount.decrementAndGet();
+                        drop(oldest, pool, null);
+                    }
+                    pool.execute(command);
+                }
+            };
+        }
+
+        /**
+         * Drop the task at once, the default. A {@link Runnable} executed on the pool directly
+         * gets a {@link RejectedExecutionException} after the listener.
+         *
+         * @param listener The listener, may be null.
+         * @return the policy
+         */
+        public static RejectPolicy failFast(final OnRejectedListener listener) {
+            return new RejectPolicy() {
+                @Override
+                void reject(Runnable command, ThreadPoolExecutor4Util pool) {
+                    drop(command, pool, listener);
+                    if (!(TimedRunnable.unwrap(command) instanceof Task)) {
+                        throw new RejectedExecutionException("The queue of pool is full.");
+                    }
+                }
+            };
+        }
+
+        abstract void reject(Runnable command, ThreadPoolExecutor4Util pool);
+
+        private static void drop(Runnable command, final ThreadPoolExecutor4Util pool,
+                                 final OnRejectedListener listener) {
+            pool.mStats.recordRejected();
+            command = TimedRunnable.unwrap(command);
+            if (command instanceof Task) {
+                final Task task = (Task) command;
+                if (!task.isSchedule) task.cancel(false);
+            } else if (listener == null) {
+                Log.e("ThreadUtils", "The queue of pool is full, drop " + command);
+            }
+            if (listener != null) listener.onRejected(command, pool);
+        }
+
+        public interface OnRejectedListener {
+            void onRejected(Runnable command, ExecutorService pool);
+        }
+    }
+
+    private static final class ForkJoinPool4Util extends ForkJoinPool implements Pool4Util {
+
+        private final PoolStats mStats;
+
+        ForkJoinPool4Util(final int parallelism, final String prefix, final int priority) {
+            super(parallelism, new ForkJoinThreadFactory4Util(prefix, priority), null, true);
+            mStats = new PoolStats(prefix + "-p" + priority, this);
+        }
+
+        @Override
+        public void execute(@NonNull Runnable task) {
+            mStats.recordSubmit();
+            super.execute(new TimedRunnable(task, mStats));
+        }
+
+        // ForkJoinPool submits without execute, route them through it to be timed
+
+        @Override
+        public <T> ForkJoinTask<T> submit(@NonNull Callable<T> task) {
+            return submit(ForkJoinTask.adapt(task));
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(@NonNull Runnable task, T result) {
+            return submit(ForkJoinTask.adapt(task, result));
+        }
+
+        @Override
+        public ForkJoinTask<?> submit(@NonNull Runnable task) {
+            return submit(ForkJoinTask.adapt(task));
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(@NonNull final ForkJoinTask<T> task) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    // the result or the exception goes to the task, skipped if cancelled
+                    task.quietlyInvoke();
+                }
+            });
+            return task;
+        }
+
+        @Override
+        public PoolStats getStats() {
+            return mStats;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return (int) Math.min(Integer.MAX_VALUE,
+                    getQueuedSubmissionCount() + getQueuedTaskCount());
+        }
+    }
+
+    private static final class ForkJoinThreadFactory4Util
+            implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+        private final        AtomicLong    threadNumber = new AtomicLong();
+        private final        String        namePrefix;
+        private final        int           priority;
+
+        ForkJoinThreadFactory4Util(String prefix, int priority) {
+            namePrefix = prefix + "-fj-pool-" +
+                    POOL_NUMBER.getAndIncrement() +
+                    "-thread-";
+            this.priority = priority;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {
+            };
+            t.setName(namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(priority);
+            return t;
+        }
+    }
+
+    /**
+     * A virtual thread per task, created by reflection as Android has no virtual threads.
+     */
+    private static final class VirtualThreadPool4Util extends AbstractExecutorService
+            implements Pool4Util {
+
+        private static final Method FACTORY_BUILDER;
+
+        static {
+            Method method = null;
+            try {
+                method = Thread.class.getMethod("ofVirtual");
+                // a preview of JDK 19 and 20 throws here
+                method.invoke(null);
+            } catch (Throwable ignore) {
+                method = null;
+            }
+            FACTORY_BUILDER = method;
+        }
+
+        private final ExecutorService mDelegate;
+
+        private final PoolStats mStats;
+
+        private VirtualThreadPool4Util(ExecutorService delegate, String name) {
+            mDelegate = delegate;
+            mStats = new PoolStats(name, this);
+        }
+
+        static ExecutorService create(final String prefix, final int priority) {
+            if (FACTORY_BUILDER == null) return null;
+            try {
+                // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+                Object builder = FACTORY_BUILDER.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, prefix + "-virtual-thread-", 0L);
+                ThreadFactory factory =
+                        (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+                ExecutorService delegate = (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, factory);
+                return new VirtualThreadPool4Util(delegate, prefix + "-p" + priority);
+            } catch (Throwable t) {
+                Log.w("ThreadUtils", "Create virtual thread pool failed.", t);
+                return null;
             }
         }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mStats.recordSubmit();
+            mDelegate.execute(new TimedRunnable(command, mStats));
+        }
+
+        @Override
+        public PoolStats getStats() {
+            return mStats;
+        }
+
+        @Override
+        public int getPoolSize() {
+            // a virtual thread per running task
+            return mStats.getRunningCount();
+        }
+
+        @Override
+        public int getQueueSize() {
+            return 0;
+        }
+
+        @Override
+        public void shutdown() {
+            mDelegate.shutdown();
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            return mDelegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return mDelegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return mDelegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException {
+            return mDelegate.awaitTermination(timeout, unit);
+        }
     }
 
     private static final class LinkedBlockingQueue4Util extends LinkedBlockingQueue<Runnable> {
@@ -1065,22 +1714,14 @@ public final class ThreadUtils {
 
         private int mCapacity = Integer.MAX_VALUE;
 
-        LinkedBlockingQueue4Util() {
-            super();
-        }
-
-        LinkedBlockingQueue4Util(boolean isAddSubThreadFirstThenAddQueue) {
-            super();
+        LinkedBlockingQueue4Util(boolean isAddSubThreadFirstThenAddQueue, int capacity) {
+            // offer fails beyond the capacity, then the pool rejects by its policy
+            super(capacity);
             if (isAddSubThreadFirstThenAddQueue) {
                 mCapacity = 0;
             }
         }
 
-        LinkedBlockingQueue4Util(int capacity) {
-            super();
-            mCapacity = capacity;
-        }
-
         @Override
         public boolean offer(@NonNull Runnable runnable) {
             if (mCapacity <= size() &&
@@ -1090,6 +1731,10 @@ public final class ThreadUtils {
             }
             return super.offer(runnable);
         }
+
+        boolean offerToQueue(@NonNull Runnable runnable) {
+            return super.offer(runnable);
+        }
     }
 
     private static final class UtilsThreadFactory extends AtomicLong
@@ -1165,7 +1810,7 @@ public final class ThreadUtils {
         private volatile boolean isSchedule;
         private volatile Thread  runner;
 
-        private Timer mTimer;
+        private volatile TimingWheel.Timeout mTimeout;
 
         private Executor deliver;
 
@@ -1202,6 +1847,7 @@ public final class ThreadUtils {
                     });
                 } else {
                     if (!state.compareAndSet(RUNNING, COMPLETING)) return;
+                    unregister();
                     getDeliver().execute(new Runnable() {
                         @Override
                         public void run() {
@@ -1214,6 +1860,7 @@ public final class ThreadUtils {
                 state.compareAndSet(CANCELLED, INTERRUPTED);
             } catch (final Throwable throwable) {
                 if (!state.compareAndSet(RUNNING, EXCEPTIONAL)) return;
+                unregister();
                 getDeliver().execute(new Runnable() {
                     @Override
                     public void run() {
@@ -1233,6 +1880,7 @@ public final class ThreadUtils {
                 if (state.get() > RUNNING) return;
                 state.set(CANCELLED);
             }
+            unregister();
             if (mayInterruptIfRunning) {
                 if (runner != null) {
                     runner.interrupt();
@@ -1274,16 +1922,29 @@ public final class ThreadUtils {
         }
 
         public void setTimeout(final long timeoutMillis, final OnTimeoutListener listener) {
-            mTimer = new Timer();
-            mTimer.schedule(new TimerTask() {
+            if (mTimeout != null) mTimeout.cancel();
+            mTimeout = TIMER.schedule(new Runnable() {
                 @Override
                 public void run() {
-                    if (!isDone() && listener != null) {
-                        timeout();
-                        listener.onTimeout();
-                    }
+                    if (isDone() || listener == null) return;
+                    // off the thread of timer, the listener may be slow
+                    getPoolByTypeAndPriority(TYPE_CACHED).execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isDone()) return;
+                            timeout();
+                            listener.onTimeout();
+                        }
+                    });
                 }
-            }, timeoutMillis);
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Return the name of task in {@link PoolStats}, the class name by default.
+         */
+        String getStatsName() {
+            return getClass().getName();
         }
 
         private void setSchedule(boolean isSchedule) {
@@ -1297,12 +1958,23 @@ public final class ThreadUtils {
             return deliver;
         }
 
+        /**
+         * Release the entry of task and stop its schedule as soon as it is done, rather than
+         * wait for {@link #onDone()} on the deliver.
+         */
+        private void unregister() {
+            TaskInfo taskInfo = TASK_TASKINFO_MAP.remove(this);
+            if (taskInfo != null && taskInfo.mTimeout != null) {
+                taskInfo.mTimeout.cancel();
+            }
+        }
+
         @CallSuper
         protected void onDone() {
-            TASK_TASKINFO_MAP.remove(this);
-            if (mTimer != null) {
-                mTimer.cancel();
-                mTimer = null;
+            unregister();
+            if (mTimeout != null) {
+                mTimeout.cancel();
+                mTimeout = null;
             }
         }
 
@@ -1311,7 +1983,7 @@ public final class ThreadUtils {
         }
     }
 
-    private static Executor getGlobalDeliver() {
+    static Executor getGlobalDeliver() {
         if (sDeliver == null) {
             sDeliver = new Executor() {
                 private final Handler mHandler = new Handler(Looper.getMainLooper());
@@ -1326,8 +1998,8 @@ public final class ThreadUtils {
     }
 
     private static class TaskInfo {
-        private TimerTask       mTimerTask;
-        private ExecutorService mService;
+        private volatile TimingWheel.Timeout mTimeout;
+        private ExecutorService              mService;
 
         private TaskInfo(ExecutorService service) {
             mService = service;
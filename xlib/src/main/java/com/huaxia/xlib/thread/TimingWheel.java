@@ -0,0 +1,298 @@
+package com.huaxia.xlib.thread;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器。
+ * <p>所有定时任务共用一个守护线程，按刻度转动轮子，到期的任务在这个线程上执行，所以任务
+ * 应该很快，耗时的工作要转交给线程池。加入和取消都是 O(1)：先放进无锁队列，下一个刻度再
+ * 挂到对应的格子上；超过一圈的用剩余圈数表示。没有定时任务时线程挂起，不空转。</p>
+ *
+ * @author xzy
+ */
+final class TimingWheel {
+
+    private static final String TAG = "ThreadUtils";
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long mTickNanos;
+    private final Bucket[] mWheel;
+    private final int mMask;
+    private final String mName;
+    private final ConcurrentLinkedQueue<Timeout> mPending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> mCancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong mPendingCount = new AtomicLong();
+    private final AtomicInteger mIdle = new AtomicInteger();
+    private volatile Thread mWorker;
+    private long mStartNanos;
+    private long mTick;
+
+    TimingWheel(final long tick, final TimeUnit unit, final int wheelSize, final String name) {
+        mTickNanos = Math.max(1, unit.toNanos(tick));
+        final int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        mWheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            mWheel[i] = new Bucket();
+        }
+        mMask = size - 1;
+        mName = name;
+    }
+
+    /**
+     * Run the task once after the delay on the thread of wheel.
+     *
+     * @param task  The task, it should be quick.
+     * @param delay The delay.
+     * @param unit  The unit of delay.
+     * @return the timeout to cancel
+     */
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        return schedule(task, delay, 0, unit);
+    }
+
+    /**
+     * Run the task after the delay and then at the fixed rate on the thread of wheel. The
+     * missed runs are caught up like {@link java.util.Timer#scheduleAtFixedRate}.
+     *
+     * @param task   The task, it should be quick.
+     * @param delay  The delay.
+     * @param period The period.
+     * @param unit   The unit of delay and period.
+     * @return the timeout to cancel
+     */
+    Timeout scheduleAtFixedRate(final Runnable task, final long delay, final long period,
+                                final TimeUnit unit) {
+        if (period <= 0) throw new IllegalArgumentException("period <= 0");
+        return schedule(task, delay, period, unit);
+    }
+
+    /**
+     * Return the count of timeouts not expired or cancelled yet.
+     *
+     * @return the count of timeouts pending
+     */
+    long getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    /**
+     * Return whether the current thread is the thread of wheel.
+     *
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    boolean isWorkerThread() {
+        return Thread.currentThread() == mWorker;
+    }
+
+    private Timeout schedule(final Runnable task, final long delay, final long period,
+                             final TimeUnit unit) {
+        if (task == null) throw new NullPointerException("task is null");
+        start();
+        final Timeout timeout = new Timeout(this, task,
+                System.nanoTime() - mStartNanos + Math.max(0, unit.toNanos(delay)),
+                unit.toNanos(period));
+        mPendingCount.incrementAndGet();
+        mPending.add(timeout);
+        if (mIdle.get() == 1) LockSupport.unpark(mWorker);
+        return timeout;
+    }
+
+    private void start() {
+        if (mWorker != null) return;
+        synchronized (this) {
+            if (mWorker != null) return;
+            mStartNanos = System.nanoTime();
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, mName);
+            worker.setDaemon(true);
+            mWorker = worker;
+            worker.start();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // worker
+    ///////////////////////////////////////////////////////////////////////////
+
+    private void work() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            if (mPendingCount.get() == 0) idle();
+            final long deadline = waitForNextTick();
+            processCancelled();
+            transferPending();
+            mWheel[(int) (mTick & mMask)].expire(deadline);
+            mTick++;
+        }
+    }
+
+    /**
+     * Park until a timeout is scheduled, then go on from the current tick, nothing was in
+     * the wheel in the meantime.
+     */
+    private void idle() {
+        mIdle.set(1);
+        while (mPendingCount.get() == 0) {
+            LockSupport.park(this);
+        }
+        mIdle.set(0);
+        mTick = Math.max(mTick, (System.nanoTime() - mStartNanos) / mTickNanos);
+    }
+
+    private long waitForNextTick() {
+        final long deadline = mTickNanos * (mTick + 1);
+        while (true) {
+            final long sleepNanos = deadline - (System.nanoTime() - mStartNanos);
+            if (sleepNanos <= 0) return deadline;
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = mCancelled.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            final Timeout timeout = mPending.poll();
+            if (timeout == null) return;
+            if (timeout.state.get() == Timeout.CANCELLED) continue;
+            place(timeout);
+        }
+    }
+
+    private void place(final Timeout timeout) {
+        final long calculated = timeout.deadline / mTickNanos;
+        timeout.remainingRounds = (calculated - mTick) / mWheel.length;
+        final long ticks = Math.max(calculated, mTick);
+        mWheel[(int) (ticks & mMask)].add(timeout);
+    }
+
+    private void fire(final Timeout timeout) {
+        if (timeout.period > 0) {
+            // a task of the same tick may have cancelled it
+            if (timeout.state.get() != Timeout.INIT) return;
+        } else if (timeout.state.compareAndSet(Timeout.INIT, Timeout.EXPIRED)) {
+            mPendingCount.decrementAndGet();
+        } else {
+            return;
+        }
+        try {
+            timeout.task.run();
+        } catch (Throwable t) {
+            Log.w(TAG, "A timed task threw.", t);
+        }
+        if (timeout.period > 0 && timeout.state.get() == Timeout.INIT) {
+            timeout.deadline += timeout.period;
+            place(timeout);
+        }
+    }
+
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(final Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(final long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        fire(timeout);
+                    } else {
+                        // placed in a wrong bucket, can't happen but don't lose it
+                        place(timeout);
+                    }
+                } else if (timeout.state.get() == Timeout.CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(final Timeout timeout) {
+            final Timeout next = timeout.next;
+            if (timeout.prev != null) timeout.prev.next = next;
+            if (next != null) next.prev = timeout.prev;
+            if (timeout == head) head = next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * A task scheduled in the wheel.
+     */
+    static final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long period;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        // The following are only touched by the worker.
+        private long deadline;
+        private long remainingRounds;
+        private Timeout prev;
+        private Timeout next;
+        private Bucket bucket;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline, long period) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Cancel the timeout, a periodic one stops after the current run.
+         *
+         * @return {@code true}: cancelled<br>{@code false}: expired or cancelled before
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) return false;
+            wheel.mPendingCount.decrementAndGet();
+            wheel.mCancelled.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
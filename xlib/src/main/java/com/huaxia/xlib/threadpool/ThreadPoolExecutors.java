@@ -21,9 +21,10 @@ import android.os.Looper;
 
 import androidx.annotation.NonNull;
 
+import com.huaxia.xlib.thread.ThreadUtils;
+
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 
 /**
@@ -60,8 +61,11 @@ public class ThreadPoolExecutors {
     }
 
     private ThreadPoolExecutors() {
-        this(Executors.newSingleThreadExecutor(), Executors.newFixedThreadPool(Runtime.getRuntime()
-                        .availableProcessors()),
+        // pools of its own, so disk io doesn't queue behind other tasks, yet show in PoolStats;
+        // network io blocks like the IO pool, so it is of the type set for that
+        this(ThreadUtils.newFixedPool("disk-io", 1),
+                ThreadUtils.newFixedPool("network-io", Runtime.getRuntime()
+                        .availableProcessors(), ThreadUtils.getIoPoolType()),
                 new MainThreadExecutor());
     }
 
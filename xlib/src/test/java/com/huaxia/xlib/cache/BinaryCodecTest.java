@@ -0,0 +1,179 @@
+package com.huaxia.xlib.cache;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link BinaryCodec} 的往返测试。
+ *
+ * @author xzy
+ */
+public class BinaryCodecTest {
+
+    private final BinaryCodec mCodec = new BinaryCodec();
+
+    @Test
+    public void roundTrip_primitivesAndStrings() {
+        final Object[] values = new Object[]{
+                true, false, (byte) -7, (short) 300, 'x', 0, -1, Integer.MIN_VALUE,
+                Integer.MAX_VALUE, 0L, Long.MIN_VALUE, Long.MAX_VALUE, 1.5f, Float.NaN,
+                -0.0d, Double.MAX_VALUE, "", "ascii", "中文和 emoji 😀"
+        };
+        for (Object value : values) {
+            assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test
+    public void roundTrip_arrays() {
+        final byte[] bytes = new byte[]{0, 1, -1, 127, -128};
+        final int[] ints = new int[]{0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        final long[] longs = new long[]{0, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+        assertArrayEquals(bytes, (byte[]) roundTrip(bytes));
+        assertArrayEquals(ints, (int[]) roundTrip(ints));
+        assertArrayEquals(longs, (long[]) roundTrip(longs));
+        assertArrayEquals(new byte[0], (byte[]) roundTrip(new byte[0]));
+    }
+
+    @Test
+    public void roundTrip_collectionsKeepTypeAndOrder() {
+        final ArrayList<Object> list = new ArrayList<>(Arrays.<Object>asList(1, "a", null, 2L));
+        final HashMap<String, Object> map = new HashMap<>();
+        map.put("list", list);
+        map.put("null", null);
+        final LinkedHashMap<String, Integer> linkedMap = new LinkedHashMap<>();
+        linkedMap.put("z", 1);
+        linkedMap.put("a", 2);
+        final LinkedHashSet<String> linkedSet = new LinkedHashSet<>(Arrays.asList("z", "a"));
+        final HashSet<Integer> set = new HashSet<>(Arrays.asList(3, 1, 2));
+        map.put("linkedMap", linkedMap);
+        map.put("linkedSet", linkedSet);
+        map.put("set", set);
+
+        final Object decoded = roundTrip(map);
+        assertEquals(HashMap.class, decoded.getClass());
+        assertEquals(map, decoded);
+        final Map<?, ?> decodedMap = (Map<?, ?>) decoded;
+        assertEquals(ArrayList.class, decodedMap.get("list").getClass());
+        assertEquals(HashSet.class, decodedMap.get("set").getClass());
+        assertEquals(Arrays.asList("z", "a"),
+                new ArrayList<>(((Map<?, ?>) decodedMap.get("linkedMap")).keySet()));
+        assertEquals(Arrays.asList("z", "a"),
+                new ArrayList<Object>((LinkedHashSet<?>) decodedMap.get("linkedSet")));
+    }
+
+    @Test
+    public void roundTrip_registeredCodec() {
+        mCodec.register(Point.class, new CacheCodec<Point>() {
+            @Override
+            public byte[] encode(@NonNull Point value) {
+                return ByteBuffer.allocate(8).putInt(value.x).putInt(value.y).array();
+            }
+
+            @Override
+            public Point decode(@NonNull byte[] bytes) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                return new Point(buffer.getInt(), buffer.getInt());
+            }
+        });
+        final List<Point> points = new ArrayList<>(Arrays.asList(new Point(1, 2),
+                new Point(-3, 4)));
+        assertEquals(points, roundTrip(points));
+    }
+
+    @Test
+    public void roundTrip_otherSerializableFallsBackToJava() {
+        final TreeMap<String, Integer> tree = new TreeMap<>();
+        tree.put("b", 2);
+        tree.put("a", 1);
+        final Object decoded = roundTrip(tree);
+        assertEquals(TreeMap.class, decoded.getClass());
+        assertEquals(tree, decoded);
+    }
+
+    @Test
+    public void decode_readsObjectOutputStream() throws IOException {
+        final ArrayList<String> list = new ArrayList<>(Arrays.asList("legacy", "data"));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(list);
+        oos.close();
+        assertEquals(list, mCodec.decode(baos.toByteArray()));
+    }
+
+    @Test
+    public void decode_brokenBytesReturnsNull() {
+        final byte[] bytes = mCodec.encode("some string");
+        assertNotNull(bytes);
+        assertNull(mCodec.decode(Arrays.copyOf(bytes, bytes.length / 2)));
+        assertNull(mCodec.decode(new byte[]{1, 2, 3}));
+        assertNull(mCodec.decode(new byte[0]));
+    }
+
+    @Test
+    public void encode_cycleReturnsNull() {
+        final ArrayList<Object> list = new ArrayList<>();
+        final HashMap<String, Object> map = new HashMap<>();
+        map.put("list", list);
+        list.add(map);
+        assertNull(mCodec.encode(list));
+        // the same object twice, but not inside itself
+        final ArrayList<Object> shared = new ArrayList<>(Arrays.<Object>asList(1, 2));
+        final List<Object> twice = new ArrayList<>(Arrays.<Object>asList(shared, shared));
+        assertEquals(twice, roundTrip(twice));
+    }
+
+    @Test
+    public void encode_notSerializableReturnsNull() {
+        assertNull(mCodec.encode(new Object()));
+        assertNull(mCodec.encode(new ArrayList<>(Arrays.asList(new Object()))));
+    }
+
+    private Object roundTrip(final Object value) {
+        final byte[] bytes = mCodec.encode(value);
+        assertNotNull("encode " + value, bytes);
+        return mCodec.decode(bytes);
+    }
+
+    private static final class Point {
+        final int x;
+        final int y;
+
+        Point(final int x, final int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point)) return false;
+            final Point point = (Point) o;
+            return x == point.x && y == point.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
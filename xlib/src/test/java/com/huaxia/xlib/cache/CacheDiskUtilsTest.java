@@ -0,0 +1,149 @@
+package com.huaxia.xlib.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CacheDiskUtils} 按文件存储时的 LRU 淘汰和索引快照测试。
+ *
+ * @author xzy
+ */
+public class CacheDiskUtilsTest {
+
+    private static final long MAX_SIZE  = 64 * 1024 * 1024;
+    private static final int  MAX_COUNT = 10;
+    private static final String INDEX_NAME = "cdi_index";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void put_overCountTrimsLeastRecentlyUsed() throws IOException {
+        final CacheDiskUtils cache =
+                CacheDiskUtils.getInstance(mFolder.newFolder(), MAX_SIZE, MAX_COUNT);
+        for (int i = 0; i < MAX_COUNT; i++) {
+            cache.put("k" + i, value(i));
+        }
+        assertNotNull(cache.getBytes("k0"));
+        cache.put("k" + MAX_COUNT, value(MAX_COUNT));
+
+        // trimmed to the low water mark, a tenth below the limit
+        assertEquals(MAX_COUNT - 1, cache.getCacheCount());
+        assertEquals(2, cache.getStats().getEvictionCount());
+        assertArrayEquals(value(0), cache.getBytes("k0"));
+        assertNull(cache.getBytes("k1"));
+        assertNull(cache.getBytes("k2"));
+        for (int i = 3; i <= MAX_COUNT; i++) {
+            assertArrayEquals(value(i), cache.getBytes("k" + i));
+        }
+    }
+
+    @Test
+    public void indexSnapshot_keepsEntriesAndAccessOrder() throws Exception {
+        final File dir = mFolder.newFolder();
+        final CacheDiskUtils cache = CacheDiskUtils.getInstance(dir, MAX_SIZE, MAX_COUNT);
+        for (int i = 0; i < MAX_COUNT; i++) {
+            cache.put("k" + i, value(i));
+        }
+        // the access goes out with the snapshot saved after the last put
+        assertNotNull(cache.getBytes("k0"));
+        final File copy = copyAfterIndexSaved(dir);
+
+        // a directory is open once per process, so the snapshot is read from the copy
+        final CacheDiskUtils reopened = CacheDiskUtils.getInstance(copy, MAX_SIZE, MAX_COUNT);
+        assertEquals(MAX_COUNT, reopened.getCacheCount());
+        assertEquals(cache.getCacheSize(), reopened.getCacheSize());
+        reopened.put("k" + MAX_COUNT, value(MAX_COUNT));
+        assertArrayEquals(value(0), reopened.getBytes("k0"));
+        assertNull(reopened.getBytes("k1"));
+        assertNull(reopened.getBytes("k2"));
+    }
+
+    @Test
+    public void indexSnapshot_dropsFileDeletedBehindCache() throws Exception {
+        final File dir = mFolder.newFolder();
+        final CacheDiskUtils cache = CacheDiskUtils.getInstance(dir, MAX_SIZE, MAX_COUNT);
+        for (int i = 0; i < MAX_COUNT; i++) {
+            cache.put("k" + i, value(i));
+        }
+        final File copy = copyAfterIndexSaved(dir);
+        assertTrue(deleteOneEntry(copy));
+
+        final CacheDiskUtils reopened = CacheDiskUtils.getInstance(copy, MAX_SIZE, MAX_COUNT);
+        // loaded from the snapshot, which can't know about the file deleted
+        assertEquals(MAX_COUNT, reopened.getCacheCount());
+        int missing = 0;
+        for (int i = 0; i < MAX_COUNT; i++) {
+            final byte[] bytes = reopened.getBytes("k" + i);
+            if (bytes == null) {
+                missing++;
+            } else {
+                assertArrayEquals(value(i), bytes);
+            }
+        }
+        assertEquals(1, missing);
+        assertEquals(MAX_COUNT - 1, reopened.getCacheCount());
+        // the entries are all of the same size
+        assertEquals(cache.getCacheSize() / MAX_COUNT * (MAX_COUNT - 1),
+                reopened.getCacheSize());
+    }
+
+    private File copyAfterIndexSaved(final File dir) throws Exception {
+        final File index = new File(dir, INDEX_NAME);
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!index.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue("index not saved", index.exists());
+        final File copy = mFolder.newFolder();
+        copyDir(dir, copy);
+        return copy;
+    }
+
+    private static void copyDir(final File from, final File to) throws IOException {
+        final File[] files = from.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            final File target = new File(to, file.getName());
+            if (file.isDirectory()) {
+                assertTrue(target.mkdirs());
+                copyDir(file, target);
+            } else {
+                Files.copy(file.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    private static boolean deleteOneEntry(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) return false;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (deleteOneEntry(file)) return true;
+            } else if (!file.getName().equals(INDEX_NAME)) {
+                return file.delete();
+            }
+        }
+        return false;
+    }
+
+    private static byte[] value(final int i) {
+        final byte[] bytes = new byte[100];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = (byte) (i + j);
+        }
+        return bytes;
+    }
+}
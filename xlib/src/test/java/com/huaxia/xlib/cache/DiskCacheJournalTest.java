@@ -0,0 +1,178 @@
+package com.huaxia.xlib.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DiskCacheJournal} 的重放和压缩测试。
+ *
+ * @author xzy
+ */
+public class DiskCacheJournalTest {
+
+    private static final long SIZE_LIMIT  = 64 * 1024 * 1024;
+    private static final int  COUNT_LIMIT = 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void replay_restoresPutsAndRemoves() throws IOException {
+        final File dir = mFolder.newFolder();
+        final DiskCacheJournal journal = open(dir);
+        journal.put("a", bytes("h"), bytes("1"));
+        journal.put("b", bytes("h"), bytes("2"));
+        journal.put("a", bytes("h"), bytes("3"));
+        journal.put("c", bytes("h"), bytes("4"));
+        journal.remove("c");
+
+        final DiskCacheJournal replayed = open(dir);
+        assertEquals(2, replayed.getCacheCount());
+        assertEquals(journal.getCacheSize(), replayed.getCacheSize());
+        assertArrayEquals(bytes("h3"), read(replayed, "a"));
+        assertArrayEquals(bytes("h2"), read(replayed, "b"));
+        assertNull(replayed.get("c"));
+    }
+
+    @Test
+    public void replay_truncatesTornTail() throws IOException {
+        final File dir = mFolder.newFolder();
+        final DiskCacheJournal journal = open(dir);
+        journal.put("a", bytes("h"), bytes("1"));
+        journal.put("b", bytes("h"), bytes("2"));
+        final File file = new File(dir, DiskCacheJournal.JOURNAL_NAME);
+        final long length = file.length();
+        // a record cut off by a crash: the header of a put without its key and value
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{1, 0, 0, 0, 1, 0, 0, 0, 8, 0});
+        }
+
+        final DiskCacheJournal replayed = open(dir);
+        assertEquals(length, file.length());
+        assertEquals(2, replayed.getCacheCount());
+        replayed.put("c", bytes("h"), bytes("3"));
+
+        final DiskCacheJournal again = open(dir);
+        assertEquals(3, again.getCacheCount());
+        assertArrayEquals(bytes("h3"), read(again, "c"));
+    }
+
+    @Test
+    public void replay_dropsCorruptRecordAndAfter() throws IOException {
+        final File dir = mFolder.newFolder();
+        final DiskCacheJournal journal = open(dir);
+        journal.put("a", bytes("h"), bytes("1"));
+        final File file = new File(dir, DiskCacheJournal.JOURNAL_NAME);
+        final long length = file.length();
+        journal.put("b", bytes("h"), bytes("2"));
+        journal.put("c", bytes("h"), bytes("3"));
+        // flip the last byte of the value of "b", its checksum no longer matches
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long pos = length + 13 + 1 + 1;
+            raf.seek(pos);
+            final int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0xFF);
+        }
+
+        final DiskCacheJournal replayed = open(dir);
+        assertEquals(length, file.length());
+        assertEquals(1, replayed.getCacheCount());
+        assertArrayEquals(bytes("h1"), read(replayed, "a"));
+        assertNull(replayed.get("b"));
+        assertNull(replayed.get("c"));
+    }
+
+    @Test
+    public void put_overLimitEvictsEldest() throws IOException {
+        final DiskCacheJournal journal = new DiskCacheJournal(mFolder.newFolder(),
+                SIZE_LIMIT, 10, CacheDiskUtils.Durability.perWrite());
+        for (int i = 0; i < 10; i++) {
+            journal.put("k" + i, bytes("h"), bytes("v" + i));
+        }
+        assertNotNull(journal.get("k0"));
+        journal.put("k10", bytes("h"), bytes("v10"));
+
+        // trimmed to the low water mark, the least recently used go first
+        assertEquals(9, journal.getCacheCount());
+        assertEquals(2, journal.getEvictionCount());
+        assertNotNull(journal.get("k0"));
+        assertNull(journal.get("k1"));
+        assertNull(journal.get("k2"));
+        assertNotNull(journal.get("k10"));
+    }
+
+    @Test
+    public void compact_shrinksFileAndKeepsEntries() throws Exception {
+        final File dir = mFolder.newFolder();
+        final DiskCacheJournal journal = open(dir);
+        final byte[] value = new byte[100 * 1024];
+        Arrays.fill(value, (byte) 7);
+        journal.put("keep", bytes("h"), bytes("kept"));
+        // the 12th put leaves over 1 MB of garbage, the first time compaction is due
+        for (int i = 0; i < 12; i++) {
+            value[0] = (byte) i;
+            journal.put("big", bytes("h"), value);
+        }
+        final File file = new File(dir, DiskCacheJournal.JOURNAL_NAME);
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (file.length() > 2 * value.length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue("not compacted: " + file.length(), file.length() <= 2 * value.length);
+
+        // the old entries read from the new file
+        assertArrayEquals(bytes("hkept"), read(journal, "keep"));
+        final byte[] big = read(journal, "big");
+        assertEquals(1 + value.length, big.length);
+        assertEquals(11, big[1]);
+
+        final DiskCacheJournal replayed = open(dir);
+        assertEquals(2, replayed.getCacheCount());
+        assertArrayEquals(bytes("hkept"), read(replayed, "keep"));
+        assertArrayEquals(big, read(replayed, "big"));
+    }
+
+    @Test
+    public void clear_removesAll() throws IOException {
+        final File dir = mFolder.newFolder();
+        final DiskCacheJournal journal = open(dir);
+        journal.put("a", bytes("h"), bytes("1"));
+        assertTrue(journal.clear());
+        assertEquals(0, journal.getCacheCount());
+        assertEquals(0, journal.getCacheSize());
+        assertEquals(0, open(dir).getCacheCount());
+    }
+
+    private static DiskCacheJournal open(final File dir) throws IOException {
+        return new DiskCacheJournal(dir, SIZE_LIMIT, COUNT_LIMIT,
+                CacheDiskUtils.Durability.perWrite());
+    }
+
+    private static byte[] read(final DiskCacheJournal journal, final String key) {
+        final ByteBuffer buffer = journal.get(key);
+        assertNotNull(key, buffer);
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] bytes(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package com.huaxia.xlib.encrypt;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link AesGcmEngine} 的往返、篡改和截断测试。
+ *
+ * @author xzy
+ */
+public class AesGcmEngineTest {
+
+    private static final int HEADER_SIZE  = 32;
+    private static final int TAG_SIZE     = 16;
+    private static final int SEGMENT_SIZE = 1024;
+
+    private final AesGcmEngine mEngine = AesGcmEngine.create(key(16, 1), SEGMENT_SIZE);
+
+    @Test
+    public void roundTrip_segmentBoundaries() throws GeneralSecurityException {
+        final int[] sizes = new int[]{0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1,
+                3 * SEGMENT_SIZE + 17};
+        for (int size : sizes) {
+            final byte[] data = data(size);
+            final byte[] sealed = mEngine.encrypt(data);
+            // the last segment is shorter than a full one, empty if the data fills them all
+            final int segments = size / SEGMENT_SIZE + 1;
+            assertEquals(HEADER_SIZE + size + segments * TAG_SIZE, sealed.length);
+            assertArrayEquals(data, mEngine.decrypt(sealed));
+        }
+    }
+
+    @Test
+    public void roundTrip_allKeySizesAndStreams() throws Exception {
+        for (int keySize : new int[]{16, 24, 32}) {
+            final AesGcmEngine engine = AesGcmEngine.create(key(keySize, 2));
+            final byte[] data = data(200 * 1024 + 5);
+            final ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            engine.encrypt(new ByteArrayInputStream(data), sealed);
+            final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            engine.decrypt(new ByteArrayInputStream(sealed.toByteArray()), plain);
+            assertArrayEquals(data, plain.toByteArray());
+        }
+    }
+
+    @Test
+    public void encrypt_isRandomized() throws GeneralSecurityException {
+        final byte[] data = data(100);
+        assertFalse(Arrays.equals(mEngine.encrypt(data), mEngine.encrypt(data)));
+    }
+
+    @Test
+    public void decrypt_rejectsEveryFlippedByte() throws GeneralSecurityException {
+        final byte[] sealed = mEngine.encrypt(data(2 * SEGMENT_SIZE + 100));
+        // every byte of the header is authenticated, so are the ciphertext and the tags
+        for (int i = 0; i < sealed.length; i += i < HEADER_SIZE ? 1 : 97) {
+            final byte[] tampered = sealed.clone();
+            tampered[i] ^= 0x01;
+            assertRejected("byte " + i, tampered);
+        }
+        final byte[] lastTag = sealed.clone();
+        lastTag[lastTag.length - 1] ^= (byte) 0x80;
+        assertRejected("last byte", lastTag);
+    }
+
+    @Test
+    public void decrypt_rejectsTruncation() throws GeneralSecurityException {
+        final byte[] sealed = mEngine.encrypt(data(2 * SEGMENT_SIZE + 100));
+        final int sealedSegment = SEGMENT_SIZE + TAG_SIZE;
+        final int[] lengths = new int[]{
+                0, HEADER_SIZE - 1, HEADER_SIZE, HEADER_SIZE + TAG_SIZE - 1,
+                // whole segments left, the last one taken for the final one fails
+                HEADER_SIZE + sealedSegment, HEADER_SIZE + 2 * sealedSegment,
+                sealed.length - 1
+        };
+        for (int length : lengths) {
+            assertRejected("length " + length, Arrays.copyOf(sealed, length));
+        }
+    }
+
+    @Test
+    public void decrypt_rejectsAppendedAndReorderedData() throws GeneralSecurityException {
+        final byte[] sealed = mEngine.encrypt(data(2 * SEGMENT_SIZE + 100));
+        assertRejected("appended", Arrays.copyOf(sealed, sealed.length + 1));
+
+        final int sealedSegment = SEGMENT_SIZE + TAG_SIZE;
+        final byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, HEADER_SIZE, swapped, HEADER_SIZE + sealedSegment,
+                sealedSegment);
+        System.arraycopy(sealed, HEADER_SIZE + sealedSegment, swapped, HEADER_SIZE,
+                sealedSegment);
+        assertRejected("swapped", swapped);
+    }
+
+    @Test
+    public void decrypt_rejectsOtherKey() throws GeneralSecurityException {
+        final byte[] sealed = mEngine.encrypt(data(100));
+        try {
+            AesGcmEngine.create(key(16, 3), SEGMENT_SIZE).decrypt(sealed);
+            fail();
+        } catch (GeneralSecurityException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void create_rejectsBadArguments() {
+        try {
+            AesGcmEngine.create(new byte[15]);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            AesGcmEngine.create(new byte[16], 1023);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private void assertRejected(final String message, final byte[] sealed) {
+        try {
+            mEngine.decrypt(sealed);
+            fail(message + " was accepted");
+        } catch (GeneralSecurityException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] key(final int size, final long seed) {
+        final byte[] key = new byte[size];
+        new Random(seed).nextBytes(key);
+        return key;
+    }
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,126 @@
+package com.huaxia.xlib.encrypt;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link RsaEngine} 按填充方式分组的测试。
+ * <p>恰好一个分组大小的数据只占一个输出分组，多一个字节就是两个，说明分组既没有算小，
+ * 也没有超过填充方式允许的上限（超过时加密会失败）。</p>
+ *
+ * @author xzy
+ */
+public class RsaEngineTest {
+
+    private static KeyPair sKeyPair1024;
+    private static KeyPair sKeyPair2048;
+
+    @After
+    public void tearDown() {
+        RsaEngine.setParallelThreshold(32);
+    }
+
+    @Test
+    public void pkcs1_blockIsModulusMinus11() throws GeneralSecurityException {
+        assertBlockSize(create(1024, "RSA/ECB/PKCS1Padding"), 128 - 11);
+    }
+
+    @Test
+    public void oaep_blockDependsOnHash() throws GeneralSecurityException {
+        assertBlockSize(create(1024, "RSA/ECB/OAEPWithSHA-1AndMGF1Padding"), 128 - 2 * 20 - 2);
+        assertBlockSize(create(1024, "RSA/ECB/OAEPWithSHA-256AndMGF1Padding"),
+                128 - 2 * 32 - 2);
+        assertBlockSize(create(2048, "RSA/ECB/OAEPWithSHA-512AndMGF1Padding"),
+                256 - 2 * 64 - 2);
+    }
+
+    @Test
+    public void roundTrip_sequentialAndParallel() throws GeneralSecurityException {
+        final RsaEngine engine = create(1024, "RSA/ECB/PKCS1Padding");
+        // 41 blocks, the last one short
+        final byte[] data = data(117 * 40 + 3);
+        for (int threshold : new int[]{0, 2, 32}) {
+            RsaEngine.setParallelThreshold(threshold);
+            final byte[] sealed = engine.encrypt(data);
+            assertNotNull(sealed);
+            assertEquals(41 * 128, sealed.length);
+            assertArrayEquals(data, engine.decrypt(sealed));
+        }
+    }
+
+    @Test
+    public void roundTrip_streams() throws Exception {
+        final RsaEngine engine = create(1024, "RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        for (int size : new int[]{1, 62, 63, 62 * 10}) {
+            final byte[] data = data(size);
+            final ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            engine.encrypt(new ByteArrayInputStream(data), sealed);
+            assertEquals((size + 61) / 62 * 128, sealed.size());
+            final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            engine.decrypt(new ByteArrayInputStream(sealed.toByteArray()), plain);
+            assertArrayEquals(data, plain.toByteArray());
+            // the same blocks as the array method
+            assertArrayEquals(data, engine.decrypt(sealed.toByteArray()));
+        }
+    }
+
+    @Test
+    public void decrypt_brokenDataReturnsNull() throws GeneralSecurityException {
+        final RsaEngine engine = create(1024, "RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        final byte[] sealed = engine.encrypt(data(200));
+        sealed[5] ^= 0x01;
+        assertNull(engine.decrypt(sealed));
+        assertNull(engine.encrypt(new byte[0]));
+        // the engine recovers from the failure
+        assertArrayEquals(data(10), engine.decrypt(engine.encrypt(data(10))));
+    }
+
+    private static void assertBlockSize(final RsaEngine engine, final int block) {
+        final int outBlock = engine.getKeySize() / 8;
+        final byte[] one = engine.encrypt(data(block));
+        assertNotNull(engine.getTransformation(), one);
+        assertEquals(outBlock, one.length);
+        assertArrayEquals(data(block), engine.decrypt(one));
+        final byte[] two = engine.encrypt(data(block + 1));
+        assertNotNull(engine.getTransformation(), two);
+        assertEquals(2 * outBlock, two.length);
+        assertArrayEquals(data(block + 1), engine.decrypt(two));
+    }
+
+    private static RsaEngine create(final int keySize, final String transformation)
+            throws GeneralSecurityException {
+        final KeyPair keyPair = keyPair(keySize);
+        return RsaEngine.create(keyPair.getPublic().getEncoded(),
+                keyPair.getPrivate().getEncoded(), keySize, transformation);
+    }
+
+    private static synchronized KeyPair keyPair(final int keySize)
+            throws GeneralSecurityException {
+        if (keySize == 1024 && sKeyPair1024 != null) return sKeyPair1024;
+        if (keySize == 2048 && sKeyPair2048 != null) return sKeyPair2048;
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(keySize);
+        final KeyPair keyPair = generator.generateKeyPair();
+        if (keySize == 1024) sKeyPair1024 = keyPair;
+        if (keySize == 2048) sKeyPair2048 = keyPair;
+        return keyPair;
+    }
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
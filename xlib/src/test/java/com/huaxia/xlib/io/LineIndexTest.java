@@ -0,0 +1,174 @@
+package com.huaxia.xlib.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用 {@link BufferedReader} 逐行读出的结果校验 {@link LineIndex}。
+ * <p>行数超过 3 个索引步长（1024 行），取的范围跨过步长的边界。</p>
+ *
+ * @author xzy
+ */
+public class LineIndexTest {
+
+    private static final String UTF8 = "UTF-8";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void getLines_matchesBufferedReader() throws IOException {
+        for (String sep : new String[]{"\n", "\r\n"}) {
+            for (boolean lastNewline : new boolean[]{true, false}) {
+                final File file = write(text(3 * 1024 + 100, sep, lastNewline));
+                assertMatches(file, LineIndex.open(file));
+            }
+        }
+    }
+
+    @Test
+    public void getLines_edgeCases() throws IOException {
+        final String[] texts = new String[]{"", "\n", "\n\n\n", "one", "one\n", "a\r\n\r\nb",
+                "中文行\n第二行 ✓\n😀"};
+        for (String text : texts) {
+            final File file = write(text);
+            assertMatches(file, LineIndex.open(file));
+        }
+    }
+
+    @Test
+    public void getLines_rangeOutOfFile() throws IOException {
+        final File file = write(text(10, "\n", true));
+        final LineIndex index = LineIndex.open(file);
+        assertNull(index.getLines(5, 4));
+        assertTrue(index.getLines(11, 20).isEmpty());
+        assertEquals(expected(file).subList(8, 10), index.getLines(9, 100, UTF8));
+        assertEquals(expected(file).subList(0, 2), index.getLines(-5, 2, UTF8));
+    }
+
+    @Test
+    public void countNewlines_countsEveryNewline() throws IOException {
+        assertEquals(0, LineIndex.countNewlines(write("")));
+        assertEquals(3, LineIndex.countNewlines(write("\n\r\n\n")));
+        // newlines at every offset in the words of 8 bytes
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("xxxxxxxxxxxxxxxx", 0, i % 17).append('\n');
+        }
+        assertEquals(100, LineIndex.countNewlines(write(sb.toString())));
+    }
+
+    @Test
+    public void refresh_readsAppendedLines() throws IOException {
+        final File file = write(text(1501, "\n", false));
+        final LineIndex index = LineIndex.open(file);
+        assertEquals(1501, index.getLineCount());
+
+        // the last line is completed by the append
+        append(file, " tail\n" + text(1000, "\n", true));
+        index.refresh();
+        assertMatches(file, index);
+
+        // shorter, built again
+        write(file, text(5, "\n", true));
+        index.refresh();
+        assertMatches(file, index);
+    }
+
+    @Test
+    public void open_persistReusesSavedIndex() throws IOException {
+        final File file = write(text(2500, "\r\n", true));
+        final LineIndex saved = LineIndex.open(file, true);
+        final File indexFile = new File(file.getPath() + ".lidx");
+        assertTrue(indexFile.isFile());
+        final long savedAt = indexFile.lastModified();
+        assertMatches(file, saved);
+
+        final LineIndex loaded = LineIndex.open(file, true);
+        assertEquals(savedAt, indexFile.lastModified());
+        assertMatches(file, loaded);
+
+        // out of date, scanned again
+        append(file, "more\n");
+        assertMatches(file, LineIndex.open(file, true));
+    }
+
+    private void assertMatches(final File file, final LineIndex index) throws IOException {
+        final List<String> expected = expected(file);
+        final int count = expected.size();
+        assertEquals(count, index.getLineCount());
+        if (count == 0) {
+            assertTrue(index.getLines(1, 10, UTF8).isEmpty());
+            return;
+        }
+        assertEquals(expected, index.getLines(1, count, UTF8));
+        for (int st : new int[]{1, 2, 1023, 1024, 1025, 2047, 2048, 2049, count}) {
+            if (st > count) continue;
+            for (int end : new int[]{st, st + 1, st + 1024, count}) {
+                final List<String> lines = index.getLines(st, end, UTF8);
+                assertEquals("lines " + st + ".." + end,
+                        expected.subList(st - 1, Math.min(end, count)), lines);
+            }
+        }
+    }
+
+    private static List<String> expected(final File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static String text(final int lines, final String sep, final boolean lastNewline) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            // lengths vary, so lines start at any offset in the words of 8 bytes, some empty
+            if (i % 50 != 0) {
+                sb.append("line ").append(i);
+                for (int j = 0; j < i % 7; j++) {
+                    sb.append(i % 3 == 0 ? "行" : "x");
+                }
+            }
+            if (i < lines || lastNewline) sb.append(sep);
+        }
+        return sb.toString();
+    }
+
+    private File write(final String text) throws IOException {
+        final File file = mFolder.newFile();
+        write(file, text);
+        return file;
+    }
+
+    private static void write(final File file, final String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void append(final File file, final String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
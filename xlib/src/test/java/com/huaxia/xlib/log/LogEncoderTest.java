@@ -0,0 +1,127 @@
+package com.huaxia.xlib.log;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link LogEncoder} 写出、{@link LogDecoder} 还原的往返测试。
+ *
+ * @author xzy
+ */
+public class LogEncoderTest {
+
+    private static final String   LINE_SEP = System.getProperty("line.separator");
+    private static final TimeZone UTC      = TimeZone.getTimeZone("UTC");
+    private static final long     TIME     = 1700000000123L;
+
+    @Test
+    public void decode_restoresRecords() throws IOException {
+        final LogEncoder encoder = new LogEncoder();
+        final StringBuilder expected = new StringBuilder();
+        encoder.startFile(TIME, "head\n");
+        expected.append("head\n");
+        encoder.encode(1, TIME, "Tag", "main", "Foo.bar(Foo.java:12)", "first");
+        expected.append(line(TIME, 'D', "Tag", "main", "Foo.bar(Foo.java:12)", "first"));
+        // the time may go back, the tag and the site are defined once
+        encoder.encode(5, TIME - 1500, "Tag", "main", "Foo.bar(Foo.java:12)", "中文\nsecond");
+        expected.append(line(TIME - 1500, 'A', "Tag", "main", "Foo.bar(Foo.java:12)",
+                "中文\nsecond"));
+        encoder.encode(0, TIME + 86400000L, "Other", null, null, "");
+        expected.append(line(TIME + 86400000L, 'V', "Other", null, null, ""));
+        encoder.encode(2, TIME, null, null, null, "no tag");
+        expected.append(line(TIME, 'I', "", null, null, "no tag"));
+
+        assertEquals(expected.toString(), decode(bytes(encoder)));
+    }
+
+    @Test
+    public void decode_threadsBeyondHeaderByte() throws IOException {
+        final LogEncoder encoder = new LogEncoder();
+        final StringBuilder expected = new StringBuilder();
+        encoder.startFile(TIME, null);
+        // a thread past the 5 bits of header byte is written inline
+        for (int i = 0; i < 40; i++) {
+            encoder.encode(i % 6, TIME + i, "T", "thread-" + i, "site", "body " + i);
+            expected.append(line(TIME + i, "VDIWEA".charAt(i % 6), "T", "thread-" + i, "site",
+                    "body " + i));
+        }
+        assertEquals(expected.toString(), decode(bytes(encoder)));
+    }
+
+    @Test
+    public void decode_afterResume() throws IOException {
+        final LogEncoder encoder = new LogEncoder();
+        final StringBuilder expected = new StringBuilder();
+        encoder.startFile(TIME, null);
+        encoder.encode(4, TIME, "Tag", "main", "site", "before");
+        expected.append(line(TIME, 'E', "Tag", "main", "site", "before"));
+        final byte[] first = bytes(encoder);
+        encoder.reset();
+
+        // appended by another run, the dictionary and the time base restart
+        encoder.resume(TIME + 5000);
+        encoder.encode(1, TIME + 5000, "Tag", "worker", "site", "after");
+        expected.append(line(TIME + 5000, 'D', "Tag", "worker", "site", "after"));
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(first);
+        file.write(bytes(encoder));
+
+        assertEquals(expected.toString(), decode(file.toByteArray()));
+    }
+
+    @Test
+    public void decode_ignoresCutOffLastRecord() throws IOException {
+        final LogEncoder encoder = new LogEncoder();
+        encoder.startFile(TIME, null);
+        encoder.encode(1, TIME, "Tag", null, null, "kept");
+        final int end = encoder.size();
+        encoder.encode(1, TIME, "Tag", null, null, "cut off");
+        final byte[] bytes = bytes(encoder);
+
+        final String kept = line(TIME, 'D', "Tag", null, null, "kept");
+        for (int len = end; len < bytes.length; len++) {
+            assertEquals(kept, decode(Arrays.copyOf(bytes, len)));
+        }
+    }
+
+    @Test
+    public void decode_rejectsOtherData() {
+        try {
+            decode("not a binary log".getBytes());
+            fail();
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(final LogEncoder encoder) {
+        return Arrays.copyOf(encoder.buffer(), encoder.size());
+    }
+
+    private static String decode(final byte[] bytes) throws IOException {
+        final StringWriter out = new StringWriter();
+        LogDecoder.decode(new ByteArrayInputStream(bytes), out, UTC);
+        return out.toString();
+    }
+
+    private static String line(final long time, final char level, final String tag,
+                               final String thread, final String site, final String body) {
+        final SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS ", Locale.getDefault());
+        sdf.setTimeZone(UTC);
+        final String head = site == null
+                ? ": " : " [" + (thread == null ? "" : thread) + ", " + site + "]: ";
+        return sdf.format(new Date(time)) + level + "/" + tag + head + body + LINE_SEP;
+    }
+}
@@ -0,0 +1,184 @@
+package com.huaxia.xlib.log;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LogFileAppender} 环形缓冲区满时各种背压方式的测试。
+ * <p>写文件的线程卡在 {@link LogUtils.IFileWriter} 里，缓冲区就会被填满。</p>
+ *
+ * @author xzy
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LogFileAppenderTest {
+
+    private static final String LINE_SEP = System.getProperty("line.separator");
+    private static final int    CAPACITY = 4;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StallingWriter mWriter;
+
+    @Before
+    public void setUp() {
+        mWriter = new StallingWriter();
+        LogUtils.getConfig()
+                .setDir(mFolder.getRoot())
+                .setFileWriter(mWriter)
+                .setFileDropLevel(LogUtils.W);
+    }
+
+    @After
+    public void tearDown() {
+        mWriter.release.countDown();
+        LogUtils.getConfig()
+                .setFileWriter(null)
+                .setFileBackpressure(LogUtils.BACKPRESSURE_BLOCK);
+    }
+
+    @Test
+    public void dropOldest_keepsNewest() throws Exception {
+        LogUtils.getConfig().setFileBackpressure(LogUtils.BACKPRESSURE_DROP_OLDEST);
+        final LogFileAppender appender = fill();
+        for (int i = CAPACITY + 1; i < CAPACITY + 4; i++) {
+            append(appender, LogUtils.D, "m" + i);
+        }
+        assertEquals(3, appender.getDroppedCount());
+
+        mWriter.release.countDown();
+        assertEquals(Arrays.asList("m0", "m4", "m5", "m6", "m7"), mWriter.awaitMessages(5));
+    }
+
+    @Test
+    public void dropByLevel_dropsLowAndWaitsHigh() throws Exception {
+        LogUtils.getConfig().setFileBackpressure(LogUtils.BACKPRESSURE_DROP_BY_LEVEL);
+        final LogFileAppender appender = fill();
+        append(appender, LogUtils.I, "info");
+        assertEquals(1, appender.getDroppedCount());
+
+        final Thread producer = appendOnThread(appender, LogUtils.E, "error");
+        producer.join(200);
+        assertTrue("error should wait for room", producer.isAlive());
+
+        mWriter.release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(1, appender.getDroppedCount());
+        assertEquals(Arrays.asList("m0", "m1", "m2", "m3", "m4", "error"),
+                mWriter.awaitMessages(6));
+    }
+
+    @Test
+    public void block_waitsForRoom() throws Exception {
+        LogUtils.getConfig().setFileBackpressure(LogUtils.BACKPRESSURE_BLOCK);
+        final LogFileAppender appender = fill();
+        final Thread producer = appendOnThread(appender, LogUtils.V, "m5");
+        producer.join(200);
+        assertTrue("the producer should wait for room", producer.isAlive());
+
+        mWriter.release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(0, appender.getDroppedCount());
+        assertEquals(Arrays.asList("m0", "m1", "m2", "m3", "m4", "m5"),
+                mWriter.awaitMessages(6));
+    }
+
+    /**
+     * Return the appender whose consumer is stuck on the first record and whose buffer is
+     * full of the next ones.
+     */
+    private LogFileAppender fill() throws InterruptedException {
+        final LogFileAppender appender =
+                new LogFileAppender(LogUtils.getConfig(), CAPACITY, DIRECT);
+        append(appender, LogUtils.D, "m0");
+        assertTrue(mWriter.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= CAPACITY; i++) {
+            append(appender, LogUtils.D, "m" + i);
+        }
+        assertEquals(0, appender.getDroppedCount());
+        return appender;
+    }
+
+    private static void append(final LogFileAppender appender, final int type,
+                               final String msg) {
+        appender.appendFormatted(type, "Tag", null, ": ", null, msg);
+    }
+
+    private static Thread appendOnThread(final LogFileAppender appender, final int type,
+                                         final String msg) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                append(appender, type, msg);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static final class StallingWriter implements LogUtils.IFileWriter {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> contents = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void write(String file, String content) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            contents.add(content);
+        }
+
+        /**
+         * Return the messages of the records written, without the head of file.
+         */
+        List<String> awaitMessages(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < deadline) {
+                final List<String> messages = new ArrayList<>();
+                synchronized (contents) {
+                    for (String content : contents) {
+                        final int start = content.indexOf("/Tag: ");
+                        if (start < 0) continue;
+                        messages.add(content.substring(start + 6,
+                                content.length() - LINE_SEP.length()));
+                    }
+                }
+                if (messages.size() >= count) return messages;
+                Thread.sleep(10);
+            }
+            throw new AssertionError("timed out: " + contents);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.huaxia.xlib.thread;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link ThreadUtils.RejectPolicy} 的测试。
+ * <p>每个用例用一个单线程、队列容量为 1 的固定线程池，线程卡住、队列放满之后再提交。
+ * 固定线程池按优先级缓存，所以每个用例用不同的优先级拿到新的池。</p>
+ *
+ * @author xzy
+ */
+public class RejectPolicyTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final CountDownLatch mStarted = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        ThreadUtils.setQueueOptions(ThreadUtils.POOL_FIXED, Integer.MAX_VALUE,
+                ThreadUtils.RejectPolicy.failFast(null));
+    }
+
+    @Test
+    public void callerRuns_runsOnCallingThread() throws InterruptedException {
+        final ExecutorService pool = fullPool(ThreadUtils.RejectPolicy.callerRuns(), 1);
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.set(Thread.currentThread());
+            }
+        });
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(0, rejectedCount(pool));
+    }
+
+    @Test
+    public void block_waitsForRoom() throws InterruptedException {
+        final ExecutorService pool =
+                fullPool(ThreadUtils.RejectPolicy.block(5, TimeUnit.SECONDS), 2);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.execute(countDown(ran));
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("the producer should wait for room", producer.isAlive());
+
+        mRelease.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, rejectedCount(pool));
+    }
+
+    @Test
+    public void block_dropsAfterTimeout() throws InterruptedException {
+        final ExecutorService pool =
+                fullPool(ThreadUtils.RejectPolicy.block(100, TimeUnit.MILLISECONDS), 3);
+        final CountDownLatch ran = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        pool.execute(countDown(ran));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, rejectedCount(pool));
+
+        mRelease.countDown();
+        assertFalse(ran.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void dropOldest_cancelsQueuedTask() throws InterruptedException {
+        final RecordingTask oldest = new RecordingTask();
+        final ExecutorService pool =
+                fullPool(ThreadUtils.RejectPolicy.dropOldest(), 4, oldest);
+        final CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(countDown(ran));
+        assertEquals(1, oldest.cancelled.get());
+        assertEquals(1, rejectedCount(pool));
+
+        mRelease.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, oldest.ran.get());
+    }
+
+    @Test
+    public void failFast_throwsForRunnableAndCancelsTask() throws InterruptedException {
+        final AtomicInteger rejected = new AtomicInteger();
+        final ExecutorService pool = fullPool(ThreadUtils.RejectPolicy.failFast(
+                new ThreadUtils.RejectPolicy.OnRejectedListener() {
+                    @Override
+                    public void onRejected(Runnable command, ExecutorService pool) {
+                        rejected.incrementAndGet();
+                    }
+                }), 5);
+        try {
+            pool.execute(countDown(new CountDownLatch(1)));
+            fail();
+        } catch (RejectedExecutionException expected) {
+            assertEquals(1, rejected.get());
+        }
+
+        final RecordingTask task = new RecordingTask();
+        ThreadUtils.executeByCustom(pool, task);
+        assertEquals(1, task.cancelled.get());
+        assertEquals(2, rejected.get());
+        assertEquals(2, rejectedCount(pool));
+
+        mRelease.countDown();
+        Thread.sleep(100);
+        assertEquals(0, task.ran.get());
+    }
+
+    /**
+     * Return a pool of one thread stuck on a task and a queue of one, full.
+     */
+    private ExecutorService fullPool(final ThreadUtils.RejectPolicy policy, final int priority)
+            throws InterruptedException {
+        return fullPool(policy, priority, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    private ExecutorService fullPool(final ThreadUtils.RejectPolicy policy, final int priority,
+                                     final Runnable queued) throws InterruptedException {
+        ThreadUtils.setQueueOptions(ThreadUtils.POOL_FIXED, 1, policy);
+        final ExecutorService pool = ThreadUtils.getFixedPool(1, priority);
+        pool.execute(blocker());
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+        pool.execute(queued);
+        assertEquals(1, ThreadUtils.getPoolStats(pool).snapshot().getQueueSize());
+        return pool;
+    }
+
+    private Runnable blocker() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mStarted.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException ignore) {
+                    // the pool is shut down
+                }
+            }
+        };
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private static long rejectedCount(final ExecutorService pool) {
+        return ThreadUtils.getPoolStats(pool).snapshot().getRejectedCount();
+    }
+
+    private static final class RecordingTask extends ThreadUtils.SimpleTask<Object> {
+        final AtomicInteger ran = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+
+        RecordingTask() {
+            setDeliver(DIRECT);
+        }
+
+        @Override
+        public Object doInBackground() {
+            ran.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+        }
+
+        @Override
+        public void onCancel() {
+            cancelled.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.huaxia.xlib.thread;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link TaskFuture} 的组合和取消测试。
+ *
+ * @author xzy
+ */
+public class TaskFutureTest {
+
+    private static final ExecutorService POOL = ThreadUtils.newFixedPool("task-future-test", 2);
+
+    @Test
+    public void thenApply_chainsResults() throws Exception {
+        final TaskFuture<Integer> future = TaskFuture.supply(POOL, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 20;
+            }
+        }).thenApply(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value + 1;
+            }
+        }).thenApply(POOL, new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value * 2;
+            }
+        });
+        assertEquals(42, (int) future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void thenApply_passesFailureOn() throws Exception {
+        final AtomicInteger applied = new AtomicInteger();
+        final TaskFuture<Integer> future = TaskFuture.supply(POOL, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalStateException("failed on purpose");
+            }
+        }).thenApply(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                applied.incrementAndGet();
+                return value;
+            }
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, applied.get());
+    }
+
+    @Test
+    public void cancel_interruptsTaskAndDerived() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final TaskFuture<String> future = TaskFuture.supply(POOL, new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "too late";
+            }
+        });
+        final TaskFuture<Integer> derived = future.thenApply(new Function<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(future.cancel());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertTrue(derived.isCancelled());
+        assertFalse(TaskFuture.completed("done").cancel());
+        try {
+            derived.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancel_beforeStartSkipsTask() throws Exception {
+        final ExecutorService single = ThreadUtils.newFixedPool("task-future-single", 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TaskFuture<Boolean> busy = TaskFuture.supply(single, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws InterruptedException {
+                return release.await(5, TimeUnit.SECONDS);
+            }
+        });
+        final AtomicInteger runs = new AtomicInteger();
+        final TaskFuture<Integer> queued = TaskFuture.supply(single, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return runs.incrementAndGet();
+            }
+        });
+        assertTrue(queued.cancel());
+        release.countDown();
+        assertTrue(busy.get(5, TimeUnit.SECONDS));
+
+        // the pool runs in order, so the queued one had its turn by now
+        TaskFuture.supply(single, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 0;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(0, runs.get());
+        single.shutdown();
+    }
+
+    @Test
+    public void interruptNotByCancel_failsFuture() throws Exception {
+        final TaskFuture<String> future = TaskFuture.supply(POOL, new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                throw new InterruptedException("not by cancel");
+            }
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void timeout_failsAndInterruptsTask() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final TaskFuture<String> future = TaskFuture.supply(POOL, new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "too late";
+            }
+        }).timeout(100, TimeUnit.MILLISECONDS);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void scope_cancelsMembersAndChildren() throws Exception {
+        final TaskFuture.Scope scope = TaskFuture.newScope();
+        final TaskFuture.Scope child = scope.newScope();
+        final CountDownLatch started = new CountDownLatch(2);
+        final Callable<String> sleeper = new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                started.countDown();
+                Thread.sleep(10000);
+                return "too late";
+            }
+        };
+        final TaskFuture<String> member = scope.supply(POOL, sleeper);
+        final TaskFuture<String> childMember = child.supply(POOL, sleeper);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        scope.cancel();
+        assertTrue(member.isCancelled());
+        assertTrue(childMember.isCancelled());
+        // started after the cancel
+        final TaskFuture<String> late = scope.supply(POOL, sleeper);
+        assertTrue(late.isCancelled());
+    }
+}
@@ -0,0 +1,159 @@
+package com.huaxia.xlib.thread;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TimingWheel} 的定时、取消和周期任务测试。
+ *
+ * @author xzy
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void schedule_runsAfterDelay() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64, "wheel-delay");
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong ranAt = new AtomicLong();
+        final AtomicInteger onWorker = new AtomicInteger();
+        final long start = System.nanoTime();
+        final TimingWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ranAt.set(System.nanoTime());
+                if (wheel.isWorkerThread()) onWorker.set(1);
+                latch.countDown();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.getPendingCount());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAt.get() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, onWorker.get());
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+        assertFalse(wheel.isWorkerThread());
+    }
+
+    @Test
+    public void schedule_runsInOrderOfDeadline() throws InterruptedException {
+        // 8 buckets of 10 ms, the later ones wait for more rounds
+        final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 8, "wheel-order");
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(4);
+        for (final int delay : new int[]{250, 50, 170, 100}) {
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(delay);
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(50, 100, 170, 250), order);
+    }
+
+    @Test
+    public void cancel_beforeDeadline() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64, "wheel-cancel");
+        final AtomicInteger runs = new AtomicInteger();
+        final TimingWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+
+        Thread.sleep(300);
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void scheduleAtFixedRate_runsUntilCancelled() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 64, "wheel-rate");
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(5);
+        final TimingWheel.Timeout timeout = wheel.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                latch.countDown();
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, wheel.getPendingCount());
+        assertTrue(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+
+        // a run of the current tick may still be going on
+        Thread.sleep(50);
+        final int cancelledAt = runs.get();
+        Thread.sleep(200);
+        assertEquals(cancelledAt, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void schedule_goesOnAfterTaskThrew() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64, "wheel-throw");
+        final CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("thrown on purpose");
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void schedule_wakesIdleWheel() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64, "wheel-idle");
+        final CountDownLatch first = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                first.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        // the worker parks with nothing pending, a new timeout must not wait for long
+        Thread.sleep(200);
+        final CountDownLatch second = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                second.countDown();
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+}